@@ -0,0 +1,448 @@
+package ConnectFour;
+
+import java.util.Arrays;
+
+/**
+ * Minimax search with Alpha Beta pruning, from the point of view of player_2:
+ * positive scores mean player_2 advantage, negative scores mean player_1
+ * advantage.
+ * An instance holds the state of a single search (move ordering tables, move
+ * buffers, counters) and must only be used by one thread at a time. The
+ * transposition table can be shared by several instances searching in
+ * parallel.
+ * <p>
+ * A position and its mirror image are stored as one entry of the transposition
+ * table, under their canonical hash and the player to move, with the best move
+ * of the canonical side.
+ * At the root of a search, a symmetric board only needs one of every column
+ * and its mirror searched, see {@link #orderRootMoves}.
+ */
+public class AlphaBetaSearch {
+    // A win must outweigh any evaluation, and the depth it is found at, which can
+    // reach the size of the largest board
+    public static final int WIN_SCORE = 10_000;
+    public static final int TIE_SCORE = 0;
+    private static final int MIN_WIN_SCORE = WIN_SCORE - Geometry.MAX_CELL_COUNT;
+    // Either player can start a game, so the same pieces can be reached with
+    // either player to move, and a shared table sees both
+    private static final long MAXIMIZING_KEY = 0x9E3779B97F4A7C15L;
+
+    private final TranspositionTable transpositionTable;
+    private final MoveOrdering moveOrdering;
+    private final Evaluation evaluation;
+    private EndgameDatabase endgameDatabase;
+    private final int[][] moveOrder = new int[Geometry.MAX_CELL_COUNT + 1][Geometry.MAX_COLUMN_COUNT];
+
+    private int searchDepth;
+    private long searchDeadline = Long.MAX_VALUE;
+    private boolean searchAborted;
+    // Set by another thread to abort the search, see abort()
+    private volatile boolean abortRequested;
+
+    private long nodeCount;
+    private long tableHits;
+    private long tableMisses;
+    private long tableCollisions;
+    private final long[] cutoffsByIndex = new long[Geometry.MAX_COLUMN_COUNT];
+
+    /**
+     * Constructs a new search.
+     *
+     * @param transpositionTable Table used to remember searched positions, it can
+     *                           be shared with other searches.
+     * @param moveOrdering       Move ordering owned by this search.
+     * @param evaluation         Scores the positions where the search stops.
+     */
+    public AlphaBetaSearch(TranspositionTable transpositionTable, MoveOrdering moveOrdering,
+            Evaluation evaluation) {
+        this.transpositionTable = transpositionTable;
+        this.moveOrdering = moveOrdering;
+        this.evaluation = evaluation;
+    }
+
+    /**
+     * Sets the limits of the next searches.
+     *
+     * @param maxDepth Depth at which the search stops.
+     * @param deadline {@link System#nanoTime()} after which the search is aborted,
+     *                 or Long.MAX_VALUE.
+     */
+    public void setLimits(int maxDepth, long deadline) {
+        searchDepth = maxDepth;
+        searchDeadline = deadline;
+        searchAborted = false;
+    }
+
+    /**
+     * Looks up the late positions in an endgame database instead of searching
+     * them.
+     *
+     * @param endgameDatabase Database of the board searched, shared by every
+     *                        search, or null to always search.
+     */
+    public void setEndgameDatabase(EndgameDatabase endgameDatabase) {
+        this.endgameDatabase = endgameDatabase;
+    }
+
+    /**
+     * Checks if the last search ran out of time. The score it returned must then
+     * be ignored.
+     *
+     * @return true if the search was aborted.
+     */
+    public boolean isAborted() {
+        return searchAborted;
+    }
+
+    /**
+     * Aborts the running search from another thread, like a deadline would. The
+     * searches stay aborted until the next {@link #newSearch()}.
+     */
+    public void abort() {
+        abortRequested = true;
+    }
+
+    /**
+     * Prepares for the search of a new move, resetting the counters.
+     */
+    public void newSearch() {
+        abortRequested = false;
+        moveOrdering.newSearch();
+        nodeCount = 0;
+        tableHits = 0;
+        tableMisses = 0;
+        tableCollisions = 0;
+        Arrays.fill(cutoffsByIndex, 0);
+    }
+
+    /**
+     * Forgets everything learned, for a new game. The transposition table is left
+     * to its owner.
+     */
+    public void clear() {
+        moveOrdering.clear();
+    }
+
+    /**
+     * Lists the playable columns of a position, best candidates first.
+     *
+     * @param position  Current state of the board.
+     * @param player    Player about to move.
+     * @param firstMove Column to search first, or
+     *                  {@link TranspositionTable#NO_MOVE}.
+     * @param moves     Buffer receiving the columns.
+     * @return The number of columns written to the buffer.
+     */
+    public int orderMoves(Position position, int player, int firstMove, int[] moves) {
+        return moveOrdering.order(position, player, firstMove, moves);
+    }
+
+    /**
+     * Lists the columns to search at the root, best candidates first. On a
+     * symmetric board, the columns right of the center are left out since they
+     * score the same as their mirror, see {@link #addMirroredMoves}.
+     *
+     * @param position  Current state of the board.
+     * @param player    Player about to move.
+     * @param firstMove Column to search first, or
+     *                  {@link TranspositionTable#NO_MOVE}.
+     * @param moves     Buffer receiving the columns.
+     * @return The number of columns written to the buffer.
+     */
+    public int orderRootMoves(Position position, int player, int firstMove, int[] moves) {
+        if (!position.isSymmetric())
+            return moveOrdering.order(position, player, firstMove, moves);
+        if (firstMove != TranspositionTable.NO_MOVE && firstMove > position.mirrorColumn(firstMove))
+            firstMove = position.mirrorColumn(firstMove);
+        int moveCount = moveOrdering.order(position, player, firstMove, moves);
+        int kept = 0;
+        for (int i = 0; i < moveCount; i++) {
+            if (moves[i] <= position.mirrorColumn(moves[i]))
+                moves[kept++] = moves[i];
+        }
+        return kept;
+    }
+
+    /**
+     * Adds back the columns left out by {@link #orderRootMoves}, each with the
+     * score of its mirror. Does nothing if the board isn't symmetric.
+     *
+     * @param position  Current state of the board.
+     * @param moves     Columns searched, receiving the mirrored columns after
+     *                  them.
+     * @param moveCount Number of columns searched.
+     * @param scores    Score of every column, indexed by column.
+     * @return The number of columns, searched and mirrored.
+     */
+    public static int addMirroredMoves(Position position, int[] moves, int moveCount, int[] scores) {
+        if (!position.isSymmetric())
+            return moveCount;
+        int totalCount = moveCount;
+        for (int i = 0; i < moveCount; i++) {
+            int mirror = position.mirrorColumn(moves[i]);
+            if (mirror != moves[i]) {
+                scores[mirror] = scores[moves[i]];
+                moves[totalCount++] = mirror;
+            }
+        }
+        return totalCount;
+    }
+
+    /**
+     * Mimimax algorithm using Alpha Beta Pruning.
+     * Pruning lets us perform less calculations if a better outcome is known.
+     * Before searching, the threats of both players are looked at: an immediate
+     * win or an unstoppable threat of the opponent ends the search, a single one
+     * forces the block, and cells right below an opponent's threat are never
+     * played. Boards that don't fit a single long search every move. Positions
+     * covered by the endgame database are looked up, at any depth.
+     *
+     * @param boardInstance Current state of the board
+     * @param lastColumn    Column of the last piece placed, used to check if it
+     *                      ended the game
+     * @param depth         Current depth of the recursion algorithm (how many moves
+     *                      ahead are we looking?). To help with computation times,
+     *                      the search stops at the depth given to
+     *                      {@link #setLimits(int, long)}.
+     * @param alpha         Alpha value, set to pseudo -inf initially
+     * @param beta          Alpha value, set to pseudo inf initially
+     * @param isMaximizing  Determines if the algorithm is trying to maximize or
+     *                      minimize the score
+     * @return The best score for the current depth.
+     */
+    public int minimaxAlphaBetaPruning(Position boardInstance, int lastColumn, int depth, int alpha, int beta,
+            boolean isMaximizing) {
+        nodeCount++;
+        // Looking at the clock every 1024 nodes is enough to stay within the time limit
+        if ((nodeCount & 1023) == 0 && (abortRequested || System.nanoTime() > searchDeadline))
+            searchAborted = true;
+        if (searchAborted)
+            return 0;
+
+        // The last piece was placed by the player that isn't moving now
+        if (boardInstance.lastMoveWon(lastColumn)) {
+            if (isMaximizing) // Since player_1 is a negative value
+                return -WIN_SCORE + depth;
+            return WIN_SCORE - depth;
+        }
+        if (boardInstance.isFull())
+            return TIE_SCORE;
+        if (endgameDatabase != null && endgameDatabase.covers(boardInstance)) {
+            int outcome = endgameDatabase.lookup(boardInstance,
+                    isMaximizing ? Position.PLAYER_2 : Position.PLAYER_1);
+            if (outcome != EndgameDatabase.NOT_FOUND) {
+                // Only the outcome is stored, a won game ends on a full board at the latest
+                int score = outcome == 0 ? TIE_SCORE
+                        : outcome * (WIN_SCORE - depth - (boardInstance.getGeometry().getCellCount()
+                                - boardInstance.getMoveCount()));
+                return isMaximizing ? score : -score;
+            }
+        }
+        if (depth > searchDepth)
+            return evaluation.evaluate(boardInstance);
+
+        // The threats decide what is left to search, when they don't end it
+        int player = isMaximizing ? Position.PLAYER_2 : Position.PLAYER_1;
+        long allowedCells = MoveOrdering.ALL_CELLS;
+        if (boardInstance.getGeometry().getWordCount() == 1) {
+            long playable = boardInstance.playableCells();
+            if ((boardInstance.winningCells(player) & playable) != 0)
+                return isMaximizing ? WIN_SCORE - (depth + 1) : -WIN_SCORE + (depth + 1);
+            allowedCells = nonLosingCells(boardInstance, player, playable);
+            if (allowedCells == 0)
+                return isMaximizing ? -WIN_SCORE + (depth + 2) : WIN_SCORE - (depth + 2);
+        }
+
+        // Reuse what is known from an earlier visit of the same position
+        int remainingDepth = searchDepth - depth;
+        int ttMove = TranspositionTable.NO_MOVE;
+        boolean mirrored = boardInstance.isMirrored();
+        long key = boardInstance.getCanonicalHash() ^ (isMaximizing ? MAXIMIZING_KEY : 0);
+        long entry = transpositionTable.probe(key);
+        if (entry == TranspositionTable.NOT_FOUND) {
+            tableMisses++;
+        } else if (entry == TranspositionTable.COLLISION) {
+            tableMisses++;
+            tableCollisions++;
+        } else {
+            tableHits++;
+            ttMove = TranspositionTable.move(entry);
+            if (mirrored && ttMove != TranspositionTable.NO_MOVE)
+                ttMove = boardInstance.mirrorColumn(ttMove);
+            if (TranspositionTable.depth(entry) >= remainingDepth) {
+                int score = fromTableScore(TranspositionTable.score(entry), depth);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT)
+                    return score;
+                if (bound == TranspositionTable.LOWER_BOUND)
+                    alpha = Math.max(alpha, score);
+                else
+                    beta = Math.min(beta, score);
+                if (beta <= alpha)
+                    return score;
+            }
+        }
+        int originalAlpha = alpha;
+        int originalBeta = beta;
+
+        int[] moves = moveOrder[depth];
+        int moveCount = moveOrdering.order(boardInstance, player, ttMove, moves, allowedCells);
+        int bestScore, bestMove = TranspositionTable.NO_MOVE;
+        if (isMaximizing) {
+            bestScore = Integer.MIN_VALUE;
+            for (int i = 0; i < moveCount; i++) {
+                int col = moves[i];
+                boardInstance.play(col, Position.PLAYER_2);
+                int score = minimaxAlphaBetaPruning(boardInstance, col, depth + 1, alpha, beta, false);
+                boardInstance.undo(col);
+                if (searchAborted)
+                    return 0;
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestMove = col;
+                }
+
+                alpha = Math.max(alpha, score);
+                if (beta <= alpha) {
+                    moveOrdering.recordCutoff(boardInstance, player, col, remainingDepth);
+                    cutoffsByIndex[i]++;
+                    break;
+                }
+            }
+        } else {
+            bestScore = Integer.MAX_VALUE;
+            for (int i = 0; i < moveCount; i++) {
+                int col = moves[i];
+                boardInstance.play(col, Position.PLAYER_1);
+                int score = minimaxAlphaBetaPruning(boardInstance, col, depth + 1, alpha, beta, true);
+                boardInstance.undo(col);
+                if (searchAborted)
+                    return 0;
+                if (score < bestScore) {
+                    bestScore = score;
+                    bestMove = col;
+                }
+
+                beta = Math.min(beta, score);
+                if (beta <= alpha) {
+                    moveOrdering.recordCutoff(boardInstance, player, col, remainingDepth);
+                    cutoffsByIndex[i]++;
+                    break;
+                }
+            }
+        }
+
+        int bound = TranspositionTable.EXACT;
+        if (bestScore <= originalAlpha)
+            bound = TranspositionTable.UPPER_BOUND;
+        else if (bestScore >= originalBeta)
+            bound = TranspositionTable.LOWER_BOUND;
+        if (mirrored && bestMove != TranspositionTable.NO_MOVE)
+            bestMove = boardInstance.mirrorColumn(bestMove);
+        transpositionTable.store(key, toTableScore(bestScore, depth), remainingDepth, bound, bestMove);
+        return bestScore;
+    }
+
+    /**
+     * Finds the moves that don't let the opponent win right away, for a player
+     * that can't win right away. An opponent's winning cell that is playable must
+     * be blocked, and two of them can't both be; a cell right below one must not
+     * be played, it would hand the cell over.
+     *
+     * @param position Current state of the board, fitting a single long.
+     * @param player   Player about to move.
+     * @param playable Cells where a piece can be dropped.
+     * @return the cells that can be played, none if every move loses
+     */
+    private static long nonLosingCells(Position position, int player, long playable) {
+        long opponentWins = position.winningCells(1 - player);
+        long forced = opponentWins & playable;
+        if (forced != 0) {
+            if ((forced & (forced - 1)) != 0)
+                return 0;
+            playable = forced;
+        }
+        return playable & ~(opponentWins >>> 1);
+    }
+
+    /**
+     * Gets the number of nodes visited since {@link #newSearch()}.
+     *
+     * @return the number of nodes
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Gets the number of transposition table probes that found their position.
+     *
+     * @return the number of hits
+     */
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    /**
+     * Gets the number of transposition table probes that didn't find their
+     * position.
+     *
+     * @return the number of misses
+     */
+    public long getTableMisses() {
+        return tableMisses;
+    }
+
+    /**
+     * Gets the number of misses where the bucket was holding other positions.
+     *
+     * @return the number of collisions
+     */
+    public long getTableCollisions() {
+        return tableCollisions;
+    }
+
+    /**
+     * Gets the number of cutoffs caused by the move searched at a given index,
+     * since {@link #newSearch()}. With a good move ordering, most cutoffs come
+     * from the first move.
+     *
+     * @param moveIndex Index of the move in the search order, from 0.
+     * @return the number of cutoffs
+     */
+    public long getCutoffs(int moveIndex) {
+        return cutoffsByIndex[moveIndex];
+    }
+
+    /**
+     * Converts a score to be stored in the transposition table.
+     * Winning scores depend on how deep in the search the game ended, so they are
+     * stored relative to the position instead of to the root of the search.
+     *
+     * @param score Score returned by the search
+     * @param depth Depth of the position in the search
+     * @return The score to store
+     */
+    private static int toTableScore(int score, int depth) {
+        if (score >= MIN_WIN_SCORE)
+            return score + depth;
+        if (score <= -MIN_WIN_SCORE)
+            return score - depth;
+        return score;
+    }
+
+    /**
+     * Converts a score stored in the transposition table back to a search score.
+     *
+     * @param score Score found in the transposition table
+     * @param depth Depth of the position in the search
+     * @return The search score
+     */
+    private static int fromTableScore(int score, int depth) {
+        if (score >= MIN_WIN_SCORE)
+            return score - depth;
+        if (score <= -MIN_WIN_SCORE)
+            return score + depth;
+        return score;
+    }
+}
@@ -0,0 +1,66 @@
+package ConnectFour;
+
+/**
+ * An engine that picks moves without any console output, for headless games.
+ * A Bot must only be used by one thread at a time, even if it searches with
+ * several threads of its own.
+ */
+public interface Bot {
+    /**
+     * Prepares the Bot for a new game.
+     *
+     * @param seed Seed of the Bot's random decisions during the game.
+     */
+    void newGame(long seed);
+
+    /**
+     * Picks the column to play.
+     *
+     * @param position Current state of the board, left unchanged.
+     * @param player   Player about to move.
+     * @return The column to play.
+     */
+    int chooseMove(Position position, int player);
+
+    /**
+     * Gets the number of nodes searched by the Bot so far, or of playouts for
+     * engines that don't search nodes.
+     *
+     * @return the number of nodes
+     */
+    long getNodeCount();
+
+    /**
+     * Gets the time the Bot spent searching so far.
+     *
+     * @return the time, in nanoseconds
+     */
+    long getSearchNanos();
+
+    /**
+     * Gets the metrics of the Bot's last move, for Bots that search with
+     * minimax.
+     *
+     * @return the metrics, or null if the last move wasn't searched
+     */
+    default SearchMetrics getLastMoveMetrics() {
+        return null;
+    }
+
+    /**
+     * Gets the metrics of every move the Bot searched so far, for Bots that
+     * search with minimax.
+     *
+     * @return the metrics, or null if the Bot doesn't record any
+     */
+    default SearchMetrics getTotalMetrics() {
+        return null;
+    }
+
+    /**
+     * Releases the threads the Bot searches with, if any. The Bot can't be used
+     * anymore.
+     */
+    default void close() {
+    }
+}
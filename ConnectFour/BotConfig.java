@@ -0,0 +1,162 @@
+package ConnectFour;
+
+/**
+ * Settings of a minimax Bot, used to create as many independent
+ * {@link BotPlayer}s as needed, e.g. one per thread of a {@link Tournament}.
+ */
+public class BotConfig implements BotFactory {
+    private final String name;
+    private final int skillset;
+    private final int maxDepth;
+    private final int tableMegabytes;
+    private final Evaluation evaluation;
+    private final OpeningBook openingBook;
+    private final EndgameDatabase endgameDatabase;
+
+    /**
+     * Constructs a new Bot configuration.
+     *
+     * @param name           Name used in reports.
+     * @param skillset       Value between 0 and 100, the likelyhood of the Bot
+     *                       searching for its move instead of playing a random
+     *                       one.
+     * @param maxDepth       Depth of the minimax search.
+     * @param tableMegabytes Memory budget of the Bot's transposition table.
+     */
+    public BotConfig(String name, int skillset, int maxDepth, int tableMegabytes) {
+        this(name, skillset, maxDepth, tableMegabytes, Evaluation.DEFAULT, null);
+    }
+
+    /**
+     * Constructs a new Bot configuration with its own evaluation, that plays from
+     * an opening book.
+     *
+     * @param name           Name used in reports.
+     * @param skillset       Value between 0 and 100, the likelyhood of the Bot
+     *                       searching for its move instead of playing a random
+     *                       one.
+     * @param maxDepth       Depth of the minimax search.
+     * @param tableMegabytes Memory budget of the Bot's transposition table.
+     * @param evaluation     Scores the positions where the search stops.
+     * @param openingBook    Book played from while it covers the position, shared
+     *                       by every Bot, or null to always search.
+     */
+    public BotConfig(String name, int skillset, int maxDepth, int tableMegabytes, Evaluation evaluation,
+            OpeningBook openingBook) {
+        this(name, skillset, maxDepth, tableMegabytes, evaluation, openingBook, null);
+    }
+
+    /**
+     * Constructs a new Bot configuration with its own evaluation, that plays from
+     * an opening book and looks up late positions in an endgame database.
+     *
+     * @param name            Name used in reports.
+     * @param skillset        Value between 0 and 100, the likelyhood of the Bot
+     *                        searching for its move instead of playing a random
+     *                        one.
+     * @param maxDepth        Depth of the minimax search.
+     * @param tableMegabytes  Memory budget of the Bot's transposition table.
+     * @param evaluation      Scores the positions where the search stops.
+     * @param openingBook     Book played from while it covers the position, shared
+     *                        by every Bot, or null to always search.
+     * @param endgameDatabase Database looked up by the search once it covers the
+     *                        position, shared by every Bot, or null to always
+     *                        search.
+     */
+    public BotConfig(String name, int skillset, int maxDepth, int tableMegabytes, Evaluation evaluation,
+            OpeningBook openingBook, EndgameDatabase endgameDatabase) {
+        this.name = name;
+        this.skillset = skillset;
+        this.maxDepth = maxDepth;
+        this.tableMegabytes = tableMegabytes;
+        this.evaluation = evaluation;
+        this.openingBook = openingBook;
+        this.endgameDatabase = endgameDatabase;
+    }
+
+    /**
+     * Creates a new Bot with these settings.
+     *
+     * @return the Bot, owned by the calling thread
+     */
+    public BotPlayer createPlayer() {
+        return new BotPlayer(this);
+    }
+
+    /**
+     * Gets the name used in reports.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the likelyhood, between 0 and 100, of searching instead of playing a
+     * random move.
+     *
+     * @return the skillset
+     */
+    public int getSkillset() {
+        return skillset;
+    }
+
+    /**
+     * Gets the depth of the minimax search.
+     *
+     * @return the depth
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Gets the memory budget of the transposition table.
+     *
+     * @return the budget, in megabytes
+     */
+    public int getTableMegabytes() {
+        return tableMegabytes;
+    }
+
+    /**
+     * Gets the evaluation of the positions where the search stops.
+     *
+     * @return the evaluation
+     */
+    public Evaluation getEvaluation() {
+        return evaluation;
+    }
+
+    /**
+     * Gets the opening book.
+     *
+     * @return the book, or null to always search
+     */
+    public OpeningBook getOpeningBook() {
+        return openingBook;
+    }
+
+    /**
+     * Gets the endgame database.
+     *
+     * @return the database, or null to always search
+     */
+    public EndgameDatabase getEndgameDatabase() {
+        return endgameDatabase;
+    }
+
+    /**
+     * Describes the settings in reports. Recorded games are only replayed by
+     * Bots with the same description, so it holds every setting changing the
+     * moves or the node counts.
+     *
+     * @return the name and settings of the Bot
+     */
+    public String toString() {
+        return name + " (skill " + skillset + ", depth " + maxDepth + ", " + tableMegabytes + " MB table, "
+                + evaluation + (openingBook != null ? ", book" : "")
+                + (endgameDatabase != null ? ", endgame database" : "") + ")";
+    }
+}
@@ -0,0 +1,15 @@
+package ConnectFour;
+
+/**
+ * Settings of a kind of Bot, used to create as many independent {@link Bot}s
+ * as needed, e.g. one per thread of a {@link Tournament}. Implementations
+ * describe their settings in toString, for reports.
+ */
+public interface BotFactory {
+    /**
+     * Creates a new Bot with these settings.
+     *
+     * @return the Bot, owned by the calling thread
+     */
+    Bot createPlayer();
+}
@@ -0,0 +1,212 @@
+package ConnectFour;
+
+import java.util.SplittableRandom;
+
+/**
+ * A Bot that picks moves with the minimax search.
+ * Like {@link ConnectFour#bestMoveWithAlphaBetaPruning()}, it scores every
+ * column with the minimax search and picks randomly between the best ones, but
+ * always searches to a fixed depth so that its games don't depend on the speed
+ * of the machine: the same seed plays the same moves, with the same number of
+ * nodes searched.
+ * A Bot must only be used by one thread at a time.
+ */
+public class BotPlayer implements Bot {
+    private final BotConfig config;
+    private final TranspositionTable transpositionTable;
+    private final AlphaBetaSearch searcher;
+    private final int[] moves = new int[Geometry.MAX_COLUMN_COUNT];
+    private final int[] bestMoves = new int[Geometry.MAX_COLUMN_COUNT];
+    private final int[] bookScores = new int[Geometry.MAX_COLUMN_COUNT];
+    private final int[] scores = new int[Geometry.MAX_COLUMN_COUNT];
+    private SplittableRandom rand = new SplittableRandom();
+
+    private long nodeCount;
+    private long searchNanos;
+    private final SearchMetrics moveMetrics = new SearchMetrics();
+    private final SearchMetrics totalMetrics = new SearchMetrics();
+    private boolean lastMoveSearched;
+    private int lastMoveScore;
+
+    /**
+     * Constructs a new Bot, see {@link BotConfig#createPlayer()}.
+     *
+     * @param config Settings of the Bot.
+     */
+    BotPlayer(BotConfig config) {
+        this.config = config;
+        transpositionTable = new TranspositionTable(config.getTableMegabytes());
+        searcher = new AlphaBetaSearch(transpositionTable, new MoveOrdering(true, false, false, true),
+                config.getEvaluation());
+        searcher.setEndgameDatabase(config.getEndgameDatabase());
+    }
+
+    /**
+     * Prepares the Bot for a new game.
+     *
+     * @param seed Seed of the Bot's random decisions during the game.
+     */
+    public void newGame(long seed) {
+        rand = new SplittableRandom(seed);
+        transpositionTable.clear();
+        searcher.clear();
+    }
+
+    /**
+     * Picks the column to play.
+     * Does this by generating a value between 0 and 99. If this value is greater
+     * than the Bot's skillset, the Bot picks a random column. Otherwise, the Bot
+     * picks a column from its opening book, or with a minimax search once out of
+     * the book.
+     *
+     * @param position Current state of the board, left unchanged.
+     * @param player   Player about to move.
+     * @return The column to play.
+     */
+    public int chooseMove(Position position, int player) {
+        lastMoveSearched = false;
+        int action = rand.nextInt(100);
+        if (action > config.getSkillset())
+            return randomMove(position);
+        OpeningBook openingBook = config.getOpeningBook();
+        if (openingBook != null && openingBook.analyze(position, player, bookScores))
+            return bookMove(position);
+        return bestMove(position, player);
+    }
+
+    /**
+     * Picks randomly between the columns with the best score in the book.
+     *
+     * @param position Current state of the board.
+     * @return The column to play.
+     */
+    private int bookMove(Position position) {
+        int bestScore = Integer.MIN_VALUE;
+        int bestCount = 0;
+        for (int col = 0; col < position.getColumnCount(); col++) {
+            if (!position.canPlay(col))
+                continue;
+            if (bookScores[col] > bestScore) {
+                bestScore = bookScores[col];
+                bestCount = 0;
+            }
+            if (bookScores[col] == bestScore)
+                bestMoves[bestCount++] = col;
+        }
+        return bestMoves[rand.nextInt(bestCount)];
+    }
+
+    /**
+     * Picks a random column that isn't full.
+     *
+     * @param position Current state of the board.
+     * @return The column to play.
+     */
+    private int randomMove(Position position) {
+        int moveCount = 0;
+        for (int col = 0; col < position.getColumnCount(); col++) {
+            if (position.canPlay(col))
+                moves[moveCount++] = col;
+        }
+        return moves[rand.nextInt(moveCount)];
+    }
+
+    /**
+     * Picks randomly between the columns with the best minimax score.
+     *
+     * @param position Current state of the board.
+     * @param player   Player about to move.
+     * @return The column to play.
+     */
+    private int bestMove(Position position, int player) {
+        long startTime = System.nanoTime();
+        searcher.newSearch();
+        searcher.setLimits(config.getMaxDepth(), Long.MAX_VALUE);
+
+        // player_2 maximizes the score, player_1 minimizes it
+        boolean isMaximizing = (player == Position.PLAYER_1);
+        int sign = (player == Position.PLAYER_2) ? 1 : -1;
+        int bestScore = Integer.MIN_VALUE;
+        int bestCount = 0;
+
+        int moveCount = searcher.orderRootMoves(position, player, TranspositionTable.NO_MOVE, moves);
+        for (int i = 0; i < moveCount; i++) {
+            int col = moves[i];
+            position.play(col, player);
+            scores[col] = sign * searcher.minimaxAlphaBetaPruning(position, col, 0, Integer.MIN_VALUE,
+                    Integer.MAX_VALUE, isMaximizing);
+            position.undo(col);
+        }
+        moveCount = AlphaBetaSearch.addMirroredMoves(position, moves, moveCount, scores);
+        for (int i = 0; i < moveCount; i++) {
+            int col = moves[i];
+            int score = scores[col];
+            if (score > bestScore) {
+                bestScore = score;
+                bestCount = 0;
+            }
+            if (score == bestScore)
+                bestMoves[bestCount++] = col;
+        }
+
+        long moveNanos = System.nanoTime() - startTime;
+        nodeCount += searcher.getNodeCount();
+        searchNanos += moveNanos;
+        moveMetrics.reset();
+        moveMetrics.recordDepth(config.getMaxDepth(), searcher.getNodeCount(), moveNanos);
+        moveMetrics.addSearch(searcher);
+        moveMetrics.finishMove(moveNanos);
+        totalMetrics.add(moveMetrics);
+        lastMoveSearched = true;
+        lastMoveScore = bestScore;
+        return bestMoves[rand.nextInt(bestCount)];
+    }
+
+    /**
+     * Gets the number of nodes searched by the Bot so far.
+     *
+     * @return the number of nodes
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Gets the time the Bot spent searching so far.
+     *
+     * @return the time, in nanoseconds
+     */
+    public long getSearchNanos() {
+        return searchNanos;
+    }
+
+    /**
+     * Gets the minimax score of the Bot's last move, from the point of view of
+     * the Bot, see {@link AlphaBetaSearch}.
+     *
+     * @return the score, meaningless if the last move came from a random roll or
+     *         the book, see {@link #getLastMoveMetrics()}
+     */
+    public int getLastMoveScore() {
+        return lastMoveScore;
+    }
+
+    /**
+     * Gets the metrics of the Bot's last move.
+     *
+     * @return the metrics, or null if the last move came from a random roll or
+     *         the book
+     */
+    public SearchMetrics getLastMoveMetrics() {
+        return lastMoveSearched ? moveMetrics : null;
+    }
+
+    /**
+     * Gets the metrics of every move the Bot searched so far.
+     *
+     * @return the metrics
+     */
+    public SearchMetrics getTotalMetrics() {
+        return totalMetrics;
+    }
+}
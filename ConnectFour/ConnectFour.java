@@ -1,18 +1,28 @@
 package ConnectFour;
 
-import java.util.ArrayList;
-import java.util.Dictionary;
-import java.util.Hashtable;
-import java.util.List;
-import java.util.Random;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ConnectFour {
-    // Board
+    // Board, any size up to Geometry.MAX_COLUMN_COUNT by Geometry.MAX_ROW_COUNT.
+    // The solver, the opening book and MCTS only play the standard 7x6 connect 4
     private final int columnCount = 7;
     private final int rowCount = 6;
-    private String board[][] = new String[columnCount][rowCount];
+    private final int connectLength = 4;
+    private final Geometry geometry = new Geometry(columnCount, rowCount, connectLength);
+    private Position board;
     private int numberOfPiecesPlaced;
+    private int lastColumnPlayed;
 
     // Player
     private final String player_1 = "R";
@@ -23,8 +33,16 @@ public class ConnectFour {
 
     // Util
     private Scanner input;
-    private Random rand;
-    private final boolean displayExtraInfo = true;
+    // Every random decision of a game, Bots included, comes from its seed. Seed
+    // 0 draws a new one every game; any other value plays the same simulated
+    // games again, and the same Bot moves when AlphaBetaTimeLimitMilli is 0. So
+    // that nothing depends on thread timing, a seeded Bot then searches its root
+    // columns one after the other, doesn't ponder, and grows its MCTS tree on a
+    // single thread for MctsSeededPlayouts playouts instead of a time budget
+    private final long Seed = 0;
+    private long gameSeed;
+    private SplittableRandom rand;
+    private boolean displayExtraInfo = true;
 
     public static final String ANSI_RESET = "\u001B[0m";
     public static final String ANSI_RED = "\u001B[31m";
@@ -35,37 +53,241 @@ public class ConnectFour {
     private final int BotSkillset_2 = 100;
     private final int BotThinkTimeMilli = 250;
 
+    // Simulation
+    private final int SimulatedRounds = 1000;
+    private final int SimulationMaxDepth = 6;
+    private final int SimulationTableMegabytes = 1;
+    // Records every simulated game to GamesFile, see GameRecordWriter and
+    // GameAnalysis. ReplayGames plays the recorded games again instead, and
+    // checks that every move and node count repeats, see Tournament#replay
+    private final boolean RecordGames = false;
+    private final boolean ReplayGames = false;
+    private final String GamesFile = "games.c4r";
+
     // Minimax
-    private Dictionary<String, Integer> moveScores = new Hashtable<>();
-    private int AlphaBetaPruningIterCount;
+    private long AlphaBetaPruningIterCount;
     private final int AlphaBetaMaxDepth = 10;
+    private final int AlphaBetaTimeLimitMilli = 250; // 0 to always search to AlphaBetaMaxDepth
+    // Root search buffers, reused by every move so that picking a move doesn't
+    // allocate
+    private final int[] validColumns = new int[columnCount];
+    private final int[] rootMoves = new int[columnCount];
+    private final int[] rootScores = new int[columnCount];
+    private final int[] completedRootScores = new int[columnCount];
+    private final int[] bestCols = new int[columnCount];
+    private int bestCount;
+    private final int[] exactScores = new int[columnCount];
+    private final int TranspositionTableMegabytes = 64;
+    private TranspositionTable transpositionTable = new TranspositionTable(TranspositionTableMegabytes);
+
+    // Solver, plays perfectly but early positions can take minutes to solve
+    private final boolean BotUsesSolver = false;
+    private final int SolverTableMegabytes = 64;
+    private Solver solver;
+
+    // Monte Carlo Tree Search, see MctsPlayer
+    private final boolean BotUsesMcts = false;
+    private final int MctsThinkTimeMilli = 250;
+    private final int MctsPoolNodes = 1 << 20;
+    private final int MctsSeededPlayouts = 50_000;
+    private MctsPlayer mctsPlayer;
+
+    // Pondering, see Ponderer: in humanAiScenario the Bot searches its replies
+    // while the human thinks, and answers at once when the human's column was
+    // searched at least as deep as the Bot's last move
+    private final boolean BotPonders = true;
+    private Ponderer ponderer;
+    private int lastCompletedDepth = AlphaBetaMaxDepth;
+
+    // Opening book, see OpeningBook, used by the Bot and the solver when the file exists
+    private final String OpeningBookFile = "opening.book";
+    private OpeningBook openingBook = loadOpeningBook();
+
+    // Endgame database, see EndgameDatabase, looked up by every search when the
+    // file exists and covers the board
+    private final String EndgameDatabaseFile = "endgame.c4e";
+    private EndgameDatabase endgameDatabase = loadEndgameDatabase();
+
+    // Search metrics, see SearchMetrics. MetricsExport is "none", "jsonl" to
+    // write every move to MetricsFile, or "jfr" to emit Flight Recorder events
+    private final String MetricsExport = "none";
+    private final String MetricsFile = "metrics.jsonl";
+    private MetricsExporter metricsExporter = createMetricsExporter();
+    private final SearchMetrics moveMetrics = new SearchMetrics();
+    private final SearchMetrics matchMetrics = new SearchMetrics();
+
+    // Evaluation of the positions where the search stops, see Evaluation
+    private final int EvalOpenTwoWeight = 2;
+    private final int EvalOpenThreeWeight = 8;
+    private final int EvalGoodThreatWeight = 30;
+    private final int EvalThreatWeight = 10;
+    private final int EvalCenterWeight = 3;
+    private final Evaluation evaluation = new Evaluation(EvalOpenTwoWeight, EvalOpenThreeWeight,
+            EvalGoodThreatWeight, EvalThreatWeight, EvalCenterWeight);
+
+    // Move ordering, see MoveOrdering. Killers and history cost nodes with the
+    // current leaf scores, measure them again when the evaluation changes
+    private final boolean OrderThreatsFirst = true;
+    private final boolean OrderKillerMoves = false;
+    private final boolean OrderHistory = false;
+    private final boolean OrderCenterFirst = true;
+
+    // Parallel search, every root column is searched as its own task, with its
+    // own copy of the board and a transposition table shared by all of them
+    private final int SearchThreads = Runtime.getRuntime().availableProcessors();
+    private AlphaBetaSearch[] searchers = createSearchers();
+    private ForkJoinPool searchPool = SearchThreads > 1 && Seed == 0 ? new ForkJoinPool(SearchThreads) : null;
+    private RootTask[] rootTasks = createRootTasks();
+    private AtomicLong searchCpuNanos = new AtomicLong();
+    private ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
 
     /**
-     * Constructs a new Connect Four instance.
+     * Constructs a new Connect Four instance, played on the console by
+     * {@link #runGame()}. To pick moves for games played elsewhere, see
+     * {@link Engine}.
      */
     public ConnectFour() {
         resetGame();
 
         input = new Scanner(System.in);
-        rand = new Random();
 
-        moveScores.put(player_1, -AlphaBetaMaxDepth); // Thus smaller number means player_1 advantage
-        moveScores.put(player_2, AlphaBetaMaxDepth); // and larger values means player_2 advantage
-        moveScores.put(tie, 0);
         numberOfPiecesPlaced = 0;
+    }
 
-        runGame();
+    /**
+     * Turns the printing of the search details of every Bot move on or off.
+     * 
+     * @param displayExtraInfo false to play quietly, as in benchmarks
+     */
+    void setDisplayExtraInfo(boolean displayExtraInfo) {
+        this.displayExtraInfo = displayExtraInfo;
     }
 
     /**
-     * Helper function to reset the game, and sets the current player to 1
+     * Maps the opening book, if one was generated.
+     * 
+     * @return the book, or null to always search
      */
-    private void resetGame() {
-        for (int column = 0; column < columnCount; column++) {
-            for (int row = 0; row < rowCount; row++) {
-                board[column][row] = empty;
-            }
+    private OpeningBook loadOpeningBook() {
+        Path file = Paths.get(OpeningBookFile);
+        if (!Files.exists(file))
+            return null;
+        try {
+            return OpeningBook.open(file);
+        } catch (IOException e) {
+            System.out.println("Ignoring the opening book: " + e.getMessage());
+            return null;
         }
+    }
+
+    /**
+     * Maps the endgame database, if one was generated for the board.
+     * 
+     * @return the database, or null to always search
+     */
+    private EndgameDatabase loadEndgameDatabase() {
+        Path file = Paths.get(EndgameDatabaseFile);
+        if (!Files.exists(file))
+            return null;
+        try {
+            EndgameDatabase database = EndgameDatabase.open(file);
+            if (database.covers(geometry))
+                return database;
+            System.out.println("Ignoring the endgame database of " + database.getGeometry());
+        } catch (IOException e) {
+            System.out.println("Ignoring the endgame database: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Creates the exporter chosen by {@link #MetricsExport}.
+     *
+     * @return the exporter, or null to keep the metrics to the console
+     */
+    private MetricsExporter createMetricsExporter() {
+        switch (MetricsExport) {
+            case "jsonl":
+                try {
+                    return new JsonLinesExporter(Paths.get(MetricsFile));
+                } catch (IOException e) {
+                    System.out.println("Metrics file " + MetricsFile + " can't be written: " + e.getMessage());
+                    return null;
+                }
+            case "jfr":
+                return new JfrExporter();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Flushes the metrics exported during the session.
+     */
+    private void closeMetricsExporter() {
+        if (metricsExporter == null)
+            return;
+        try {
+            metricsExporter.close();
+        } catch (IOException e) {
+            System.out.println("Metrics file " + MetricsFile + " can't be written: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Counts the nodes visited by every searcher since the start of the move.
+     *
+     * @return the number of nodes
+     */
+    private long searchedNodes() {
+        long nodes = 0;
+        for (AlphaBetaSearch searcher : searchers)
+            nodes += searcher.getNodeCount();
+        return nodes;
+    }
+
+    /**
+     * Creates one search per root column, so they can all run at the same time.
+     * 
+     * @return the searches
+     */
+    private AlphaBetaSearch[] createSearchers() {
+        AlphaBetaSearch[] newSearchers = new AlphaBetaSearch[columnCount];
+        for (int col = 0; col < columnCount; col++) {
+            newSearchers[col] = new AlphaBetaSearch(transpositionTable,
+                    new MoveOrdering(OrderThreatsFirst, OrderKillerMoves, OrderHistory, OrderCenterFirst),
+                    evaluation);
+            newSearchers[col].setEndgameDatabase(endgameDatabase);
+        }
+        return newSearchers;
+    }
+
+    /**
+     * Creates one reusable task per root column, each with its own board.
+     * 
+     * @return the tasks
+     */
+    private RootTask[] createRootTasks() {
+        RootTask[] tasks = new RootTask[columnCount];
+        for (int i = 0; i < columnCount; i++)
+            tasks[i] = new RootTask(searchers[i]);
+        return tasks;
+    }
+
+    /**
+     * Helper function to reset the game, and sets the current player to 1
+     */
+    void resetGame() {
+        gameSeed = Seed != 0 ? Seed : new SplittableRandom().nextLong();
+        rand = new SplittableRandom(gameSeed);
+        board = new Position(geometry);
+        transpositionTable.clear();
+        for (AlphaBetaSearch searcher : searchers)
+            searcher.clear();
+        if (mctsPlayer != null)
+            mctsPlayer.newGame(rand.nextLong());
+        matchMetrics.reset();
+        lastCompletedDepth = AlphaBetaMaxDepth;
         currentPlayer = player_1;
 
     }
@@ -75,13 +297,13 @@ public class ConnectFour {
      */
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        String dashedLine = "\n-------------\n";
-        String doubleDashedLine = "\n=============\n";
+        String dashedLine = "\n" + "-".repeat(2 * columnCount - 1) + "\n";
+        String doubleDashedLine = "\n" + "=".repeat(2 * columnCount - 1) + "\n";
 
         String[][] transposedGrid = new String[rowCount][columnCount];
         for (int row = 0; row < rowCount; row++) {
             for (int col = 0; col < columnCount; col++) {
-                transposedGrid[row][col] = board[col][row];
+                transposedGrid[row][col] = pieceName(board.pieceAt(col, row));
             }
         }
 
@@ -106,90 +328,79 @@ public class ConnectFour {
                 sb.append(dashedLine);
         }
         sb.append(doubleDashedLine);
-        if (displayExtraInfo)
-            sb.append("0|1|2|3|4|5|6");
+        if (displayExtraInfo) {
+            // One character per column: 0 to 9, then a, b, c...
+            for (int col = 0; col < columnCount; col++)
+                sb.append(col == 0 ? "" : "|").append(Character.forDigit(col, Character.MAX_RADIX));
+        }
         return sb.toString();
     }
 
-    // Game Over Methods
     /**
-     * Checks if the four piece are the same, and aren't empty
+     * Converts a player's name to the piece used on the bitboard.
      * 
-     * @param piece1 the first piece to compare
-     * @param piece2 the second piece to compare
-     * @param piece3 the third piece to compare
-     * @param piece4 the fourth piece to compare
-     * @return true if the pieces are all the same
+     * @param player Either player_1 or player_2
+     * @return {@link Position#PLAYER_1} or {@link Position#PLAYER_2}
      */
-    private boolean equals4(String piece1, String piece2, String piece3, String piece4) {
-        return piece1.equals(piece2) && piece2.equals(piece3) && piece3.equals(piece4) && !piece1.equals(empty);
+    private int pieceOf(String player) {
+        return player == player_1 ? Position.PLAYER_1 : Position.PLAYER_2;
     }
 
     /**
-     * Gets the number of open spots on the board
+     * Converts a piece of the bitboard to the player's name.
      * 
-     * @return the number of open spots
+     * @param piece A piece returned by {@link Position#pieceAt(int, int)}
+     * @return player_1, player_2 or empty
      */
-    private int openSpots() {
-        int numberOfSpots = 0;
-        for (int row = 0; row < rowCount; row++) {
-            for (int col = 0; col < columnCount; col++) {
-                if (board[col][row] == empty)
-                    numberOfSpots++;
-            }
-        }
-        return numberOfSpots;
+    private String pieceName(int piece) {
+        if (piece == Position.PLAYER_1)
+            return player_1;
+        if (piece == Position.PLAYER_2)
+            return player_2;
+        return empty;
     }
 
+    // Game Over Methods
     /**
      * Checks if the game is complete.
-     * The game is deemed complete where there are 4 identical piece in a row,
-     * column, or diagonal.
+     * The game is deemed complete where there are connectLength identical piece
+     * in a row, column, or diagonal.
      * 
      * @return the player's name if they won the game
      * @return "tie" if the game ended in a tie
      * @return null if the game isn't complete
      */
-    private String checkWinner() {
-        // Early exit as a game can't be finished with less than 7 pieces played
-        if (numberOfPiecesPlaced < 7)
-            return null;
-
-        // Horizontal check
-        for (int row = 0; row < rowCount; row++)
-            for (int col = 0; col < 4; col++)
-                if (equals4(board[col][row], board[col + 1][row], board[col + 2][row], board[col + 3][row]))
-                    return board[col][row];
-
-        // Vertical check
-        for (int col = 0; col < columnCount; col++) {
-            for (int row = 0; row < 3; row++) {
-                if (equals4(board[col][row], board[col][row + 1], board[col][row + 2], board[col][row + 3]))
-                    return board[col][row];
-            }
-        }
-
-        // Diagonal check \
-        for (int col = 0; col < 4; col++) {
-            for (int row = 0; row < 3; row++) {
-                if (equals4(board[col][row], board[col + 1][row + 1], board[col + 2][row + 2], board[col + 3][row + 3]))
-                    return board[col][row];
-            }
-        }
-
-        // Diagonal check /
-        for (int col = columnCount - 1; col > 2; col--) {
-            for (int row = 0; row < 3; row++) {
-                if (equals4(board[col][row], board[col - 1][row + 1], board[col - 2][row + 2], board[col - 3][row + 3]))
-                    return board[col][row];
-            }
-        }
+    String checkWinner() {
+        if (board.hasWon(Position.PLAYER_1))
+            return player_1;
+        if (board.hasWon(Position.PLAYER_2))
+            return player_2;
         // Full board check
-        if (openSpots() == 0)
+        if (board.isFull())
             return tie;
         return null;
     }
 
+    /**
+     * Checks if the last piece placed ended the game.
+     * Only the lines going through the last piece are checked, giving the same
+     * outcome as {@link #checkWinner()} as long as the game wasn't already over.
+     * 
+     * @return the player's name if they won the game
+     * @return "tie" if the game ended in a tie
+     * @return null if the game isn't complete
+     * @see WinCheckVerifier
+     */
+    String checkLastMove() {
+        String winner = null;
+        if (numberOfPiecesPlaced > 0 && board.lastMoveWon(lastColumnPlayed))
+            winner = pieceName(board.pieceAt(lastColumnPlayed, board.dropsToRow(lastColumnPlayed) + 1));
+        else if (board.isFull())
+            winner = tie;
+        assert winner == checkWinner() : "Incremental check disagrees with the full board scan";
+        return winner;
+    }
+
     /**
      * Prints out a message indicating the final state of the game
      * 
@@ -203,6 +414,8 @@ public class ConnectFour {
         else if (outcome == player_2)
             System.out.print(ANSI_YELLOW + "Player 2 wins" + ANSI_RESET);
         System.out.println(" in " + numberOfPiecesPlaced + " moves!");
+        if (displayExtraInfo && matchMetrics.getMoves() > 0)
+            System.out.println("Minimax over " + matchMetrics.getMoves() + " moves:\n" + matchMetrics);
 
     }
 
@@ -216,7 +429,8 @@ public class ConnectFour {
     private boolean receiveInput() {
         System.out.print("Enter the column where you'd like to drop your piece: ");
         String inputString = input.next();
-        int column = Integer.valueOf(inputString);
+        // Columns past 9 are entered as letters, like in the printed board
+        int column = Integer.parseInt(inputString, Character.MAX_RADIX);
         return validateInput(column);
     }
 
@@ -247,35 +461,20 @@ public class ConnectFour {
      * @throws IllegalArgumentException If the column number is out of bounds.
      * @throws IllegalArgumentException If the column is full.
      */
-    private void putPiece(int column) throws IllegalArgumentException {
+    void putPiece(int column) throws IllegalArgumentException {
         // Column is out of bounds:
         if ((column < 0) || (column >= columnCount))
             throw new IllegalArgumentException("Invalid board position");
         // Column is full:
-        if (board[column][0] != empty)
+        if (!board.canPlay(column))
             throw new IllegalArgumentException("Board Position Occupied");
 
-        int availableRow = dropsToRow(column, board);
-        board[column][availableRow] = currentPlayer;
+        board.play(column, pieceOf(currentPlayer));
+        lastColumnPlayed = column;
         currentPlayer = currentPlayer == player_1 ? player_2 : player_1;
         numberOfPiecesPlaced++;
     }
 
-    /**
-     * Finds the row that a piece would land in for a given column.
-     * 
-     * @param column Index of the column to check.
-     * @param board  Current state of the board.
-     * @return The row index for the given column.
-     */
-    private int dropsToRow(int column, String[][] board) {
-        int firstAvailableRow = 0;
-        while (firstAvailableRow < rowCount - 1 && board[column][firstAvailableRow + 1] == empty) {
-            firstAvailableRow++;
-        }
-        return firstAvailableRow;
-    }
-
     /**
      * Simulates a human player.
      * Does this by generating a value between 0 and 99.
@@ -288,11 +487,17 @@ public class ConnectFour {
      * @return boolean value indicating if the move was successful, should almost
      *         always be true.
      */
-    private boolean humanPlayerSimulator(int threshold) {
+    boolean humanPlayerSimulator(int threshold) {
 
         int action = rand.nextInt(100);
         if (action > threshold)
             return randomMove();
+        else if (openingBook != null && openingBook.analyze(board, pieceOf(currentPlayer), exactScores))
+            return bestMoveFromScores(exactScores, "Book");
+        else if (BotUsesSolver && geometry.isStandard())
+            return bestMoveWithSolver();
+        else if (BotUsesMcts && geometry.isStandard())
+            return bestMoveWithMcts();
         else
             return bestMoveWithAlphaBetaPruning();
     }
@@ -303,141 +508,368 @@ public class ConnectFour {
      * @return boolean value indicating if the move was successful
      */
     private boolean randomMove() {
-        List<Integer> validColumns = new ArrayList<>();
+        int validCount = 0;
         for (int i = 0; i < columnCount; i++) {
-            if (board[i][0] == empty)
-                validColumns.add(i);
+            if (board.canPlay(i))
+                validColumns[validCount++] = i;
         }
-        int index = rand.nextInt(validColumns.size());
-        return validateInput(validColumns.get(index));
+        int index = rand.nextInt(validCount);
+        return validateInput(validColumns[index]);
     }
 
     /**
      * Drops a piece in the column with the best score.
      * The score is determined from the minimax algorithm using Alpha Beta pruning.
+     * If a time limit is set, the search is repeated with a growing depth until
+     * the time runs out, and the move of the last completed depth is played.
+     * Otherwise a single search is made to {@link #AlphaBetaMaxDepth}.
      * 
      * @return boolean value indicating if the move was successful
      */
     public boolean bestMoveWithAlphaBetaPruning() {
-        AlphaBetaPruningIterCount = 0;
+        int openSpots = columnCount * rowCount - board.getMoveCount();
+        int ponderDepth = ponderer == null ? -1 : ponderer.getReplyDepth(board, lastColumnPlayed);
+        // The search below would stop at the end of the game too
+        int targetDepth = Math.min(AlphaBetaTimeLimitMilli <= 0 ? AlphaBetaMaxDepth : lastCompletedDepth,
+                openSpots - 2);
+        if (ponderDepth >= 0 && ponderDepth >= targetDepth)
+            return playPonderedReply(ponderDepth);
+        int firstMove = ponderDepth >= 0 ? ponderer.getBestReply(lastColumnPlayed) : TranspositionTable.NO_MOVE;
 
-        List<Integer> bestScoresList = new ArrayList<>();
-        List<Integer> bestColsList = new ArrayList<>();
+        for (AlphaBetaSearch searcher : searchers)
+            searcher.newSearch();
+        searchCpuNanos.set(0);
+        moveMetrics.reset();
+        long startTime = System.nanoTime();
 
-        boolean isMaximizing = (currentPlayer == player_1);
+        int completedDepth;
 
-        for (int col = 0; col < columnCount; col++) {
-            if (board[col][0] == empty) {
-                int availableRow = dropsToRow(col, board);
-                board[col][availableRow] = currentPlayer;
-
-                int score = minimaxAlphaBetaPruning(board, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, isMaximizing);
-
-                if (displayExtraInfo)
-                    System.out.println(col + "," + score);
-                board[col][availableRow] = empty;
-                if (bestColsList.isEmpty()) {
-                    bestScoresList.add(score);
-                    bestColsList.add(col);
-                } else if ((currentPlayer == player_2) && score > bestScoresList.get(0)) { // Trying to maximize, i.e.
-                                                                                           // player_2, thus
-                    // we want the highest score
-                    if (!bestScoresList.isEmpty())
-                        bestScoresList.clear();
-                    if (!bestColsList.isEmpty())
-                        bestColsList.clear();
-                    bestScoresList.add(score);
-                    bestColsList.add(col);
-                } else if ((currentPlayer == player_1) && score < bestScoresList.get(0)) { // Trying to minimize, i.e.
-                                                                                           // player_1, thus
-                    // we want the lowest score
-                    if (!bestScoresList.isEmpty())
-                        bestScoresList.clear();
-                    if (!bestColsList.isEmpty())
-                        bestColsList.clear();
-                    bestScoresList.add(score);
-                    bestColsList.add(col);
-                }
+        if (AlphaBetaTimeLimitMilli <= 0) {
+            searchRoot(AlphaBetaMaxDepth, Long.MAX_VALUE, firstMove);
+            completedDepth = AlphaBetaMaxDepth;
+            moveMetrics.recordDepth(completedDepth, searchedNodes(), System.nanoTime() - startTime);
+        } else {
+            int previousBest = firstMove;
+            // The first depth always completes, the next ones have to fit in the time limit
+            long searchDeadline = Long.MAX_VALUE;
+            completedDepth = -1;
+            long depthStart = startTime, depthStartNodes = 0;
+            for (int maxDepth = 0;; maxDepth++) {
+                if (!searchRoot(maxDepth, searchDeadline, previousBest))
+                    break;
+                completedDepth = maxDepth;
+                long now = System.nanoTime(), nodes = searchedNodes();
+                moveMetrics.recordDepth(maxDepth, nodes - depthStartNodes, now - depthStart);
+                depthStart = now;
+                depthStartNodes = nodes;
+                previousBest = bestCols[0];
 
-                else if (score == bestScoresList.get(0)) {
-                    bestScoresList.add(score);
-                    bestColsList.add(col);
-                }
+                // The root move plus the moves at depth 0 to maxDepth reach the end of the game
+                if (maxDepth + 2 >= openSpots)
+                    break;
+                searchDeadline = startTime + AlphaBetaTimeLimitMilli * 1_000_000L;
+                if (System.nanoTime() >= searchDeadline)
+                    break;
             }
-
         }
-        int finalScore, finalCols;
-        int index = rand.nextInt(bestScoresList.size());
-        finalScore = bestScoresList.get(index);
-        finalCols = bestColsList.get(index);
+        long searchTime = System.nanoTime() - startTime;
+        lastCompletedDepth = completedDepth;
+        for (AlphaBetaSearch searcher : searchers)
+            moveMetrics.addSearch(searcher);
+        moveMetrics.finishMove(searchTime);
+        matchMetrics.add(moveMetrics);
+        if (metricsExporter != null)
+            metricsExporter.export("minimax", board.getMoveCount(), moveMetrics);
+
+        int finalCols = bestCols[rand.nextInt(bestCount)];
+        int finalScore = completedRootScores[finalCols];
         if (displayExtraInfo) {
-            System.out.println("Col: " + finalCols + ", score:" + finalScore);
+            AlphaBetaPruningIterCount = moveMetrics.getNodes();
+            for (int col = 0; col < columnCount; col++) {
+                if (board.canPlay(col))
+                    System.out.println(col + "," + completedRootScores[col]);
+            }
+            System.out.println("Col: " + finalCols + ", score:" + finalScore + ", depth: " + completedDepth);
             System.out.println("\nAB: " + AlphaBetaPruningIterCount);
+            System.out.println(moveMetrics);
+            // CPU time spent searching by all threads, over the time the move took
+            System.out.printf("Threads: %d, speedup: %.2f%n", searchPool == null ? 1 : SearchThreads,
+                    (double) searchCpuNanos.get() / Math.max(1, searchTime));
         }
         return validateInput(finalCols);
     }
 
     /**
-     * Mimimax algorithm using Alpha Beta Pruning.
-     * Pruning lets us perform less calculations if a better outcome is known.
+     * Drops a piece in the best reply found by the {@link Ponderer} to the
+     * human's last move, without searching again.
      * 
-     * @param boardInstance Current state of the board
-     * @param depth         Current depth of the recursion algorithm (how many moves
-     *                      ahead are we looking?). To help with computation times,
-     *                      a max depth is set.
-     * @param alpha         Alpha value, set to pseudo -inf initially
-     * @param beta          Alpha value, set to pseudo inf initially
-     * @param isMaximizing  Determines if the algorithm is trying to maximize or
-     *                      minimize the score
-     * @return The best score for the current depth.
-     */
-    private int minimaxAlphaBetaPruning(String[][] boardInstance, int depth, int alpha, int beta,
-            boolean isMaximizing) {
-        AlphaBetaPruningIterCount++;
-        if (depth > AlphaBetaMaxDepth)
-            return moveScores.get(tie);
-
-        String result = checkWinner();
-        if (result != null) {
-            if (result == player_1) // Since player_1 is a negative value
-                return moveScores.get(result) + depth;
-            else if (result == player_2)
-                return moveScores.get(result) - depth;
-            return moveScores.get(result);
-        }
-        if (isMaximizing) {
-            int bestScore = Integer.MIN_VALUE;
+     * @param ponderDepth Depth the replies were searched to
+     * @return boolean value indicating if the move was successful
+     */
+    private boolean playPonderedReply(int ponderDepth) {
+        ponderer.getReplyScores(lastColumnPlayed, completedRootScores);
+        // player_2 maximizes the score, player_1 minimizes it
+        int sign = (currentPlayer == player_2) ? 1 : -1;
+        int bestScore = Integer.MIN_VALUE;
+        bestCount = 0;
+        for (int col = 0; col < columnCount; col++) {
+            if (!board.canPlay(col))
+                continue;
+            int score = sign * completedRootScores[col];
+            if (score > bestScore) {
+                bestScore = score;
+                bestCount = 0;
+            }
+            if (score == bestScore)
+                bestCols[bestCount++] = col;
+        }
+
+        int finalCols = bestCols[rand.nextInt(bestCount)];
+        if (displayExtraInfo) {
             for (int col = 0; col < columnCount; col++) {
-                if (boardInstance[col][0] == empty) {
-                    int availableRow = dropsToRow(col, boardInstance);
-                    boardInstance[col][availableRow] = player_2;
-                    int score = minimaxAlphaBetaPruning(boardInstance, depth + 1, alpha, beta, false);
-                    boardInstance[col][availableRow] = empty;
-                    bestScore = Math.max(score, bestScore);
-
-                    alpha = Math.max(alpha, score);
-                    if (beta <= alpha)
-                        break;
-                }
+                if (board.canPlay(col))
+                    System.out.println(col + "," + completedRootScores[col]);
             }
-            return bestScore;
-        } else {
-            int bestScore = Integer.MAX_VALUE;
+            System.out.println("Ponder hit, col: " + finalCols + ", score:" + completedRootScores[finalCols]
+                    + ", depth: " + ponderDepth);
+            System.out.println("Pondered nodes: " + ponderer.getNodeCount());
+        }
+        return validateInput(finalCols);
+    }
+
+    /**
+     * Starts searching the Bot's replies while the human thinks, when the Bot
+     * plays with the minimax search.
+     */
+    private void startPondering() {
+        if (!BotPonders || Seed != 0 || (geometry.isStandard() && (BotUsesSolver || BotUsesMcts)))
+            return;
+        if (ponderer == null) {
+            ponderer = new Ponderer(transpositionTable,
+                    new MoveOrdering(OrderThreatsFirst, OrderKillerMoves, OrderHistory, OrderCenterFirst),
+                    evaluation);
+            ponderer.setEndgameDatabase(endgameDatabase);
+        }
+        int maxDepth = AlphaBetaTimeLimitMilli <= 0 ? AlphaBetaMaxDepth : columnCount * rowCount;
+        ponderer.start(board, pieceOf(currentPlayer), maxDepth);
+    }
+
+    /**
+     * Drops a piece in the column with the best outcome under perfect play.
+     * Every column is solved to the end of the game, see {@link Solver}: the
+     * quickest win is preferred, then a draw, then the slowest loss.
+     * 
+     * @return boolean value indicating if the move was successful
+     */
+    public boolean bestMoveWithSolver() {
+        if (solver == null) {
+            solver = new Solver(SolverTableMegabytes);
+            solver.setOpeningBook(openingBook);
+        }
+        long startNodes = solver.getNodeCount();
+        long startTime = System.nanoTime();
+
+        solver.analyze(board, pieceOf(currentPlayer), exactScores);
+        if (displayExtraInfo)
+            System.out.printf("Solver: %d nodes in %d ms%n", solver.getNodeCount() - startNodes,
+                    (System.nanoTime() - startTime) / 1_000_000);
+        return bestMoveFromScores(exactScores, "Solver");
+    }
+
+    /**
+     * Drops a piece in the column picked by a Monte Carlo Tree Search, see
+     * {@link MctsPlayer}. The tree grows on every core for
+     * {@link #MctsThinkTimeMilli}, or on a single one for
+     * {@link #MctsSeededPlayouts} playouts when the games are seeded, and what
+     * it learned about the reply to the move is kept for the next one.
+     * 
+     * @return boolean value indicating if the move was successful
+     */
+    public boolean bestMoveWithMcts() {
+        if (mctsPlayer == null) {
+            // Always searches, the skillset was already rolled
+            MctsConfig config = Seed == 0
+                    ? new MctsConfig("Bot", 100, MctsThinkTimeMilli, 0, SearchThreads, MctsPoolNodes)
+                    : new MctsConfig("Bot", 100, 0, MctsSeededPlayouts, 1, MctsPoolNodes);
+            mctsPlayer = config.createPlayer();
+            mctsPlayer.newGame(rand.nextLong());
+        }
+        long startPlayouts = mctsPlayer.getNodeCount();
+        long startNanos = mctsPlayer.getSearchNanos();
+        int col = mctsPlayer.chooseMove(board, pieceOf(currentPlayer));
+        if (displayExtraInfo) {
+            System.out.println("Col: " + col);
+            System.out.printf("%nMCTS: %d playouts in %d ms, tree: %d nodes%n",
+                    mctsPlayer.getNodeCount() - startPlayouts,
+                    (mctsPlayer.getSearchNanos() - startNanos) / 1_000_000, mctsPlayer.getTreeSize());
+        }
+        return validateInput(col);
+    }
+
+    /**
+     * Drops a piece in a column with the best exact score, picked randomly
+     * between the best ones.
+     * 
+     * @param scores Exact score of every playable column, see {@link Solver}
+     * @param source Name of what computed the scores
+     * @return boolean value indicating if the move was successful
+     */
+    private boolean bestMoveFromScores(int[] scores, String source) {
+        int bestScore = Integer.MIN_VALUE;
+        bestCount = 0;
+        for (int col = 0; col < columnCount; col++) {
+            if (!board.canPlay(col))
+                continue;
+            if (scores[col] > bestScore) {
+                bestScore = scores[col];
+                bestCount = 0;
+            }
+            if (scores[col] == bestScore)
+                bestCols[bestCount++] = col;
+        }
+        int finalCols = bestCols[rand.nextInt(bestCount)];
+
+        if (displayExtraInfo) {
             for (int col = 0; col < columnCount; col++) {
-                if (boardInstance[col][0] == empty) {
-                    int availableRow = dropsToRow(col, boardInstance);
-                    boardInstance[col][availableRow] = player_1;
-                    int score = minimaxAlphaBetaPruning(boardInstance, depth + 1, alpha, beta, true);
-                    boardInstance[col][availableRow] = empty;
-                    bestScore = Math.min(score, bestScore);
-
-                    beta = Math.min(beta, score);
-                    if (beta <= alpha)
-                        break;
-                }
+                if (board.canPlay(col))
+                    System.out.println(col + "," + scores[col]);
+            }
+            int plies = Solver.pliesToEnd(bestScore, board.getMoveCount());
+            String outcome = bestScore == 0 ? "draw" : (bestScore > 0 ? "win" : "loss") + " in " + plies + " plies";
+            System.out.println(source + " col: " + finalCols + ", score:" + bestScore + ", " + outcome);
+        }
+        return validateInput(finalCols);
+    }
+
+    /**
+     * Scores every column of the current board with the minimax algorithm, and
+     * keeps the columns sharing the best score.
+     * With more than one search thread, the columns are searched in parallel.
+     * 
+     * @param maxDepth  Depth at which the search stops
+     * @param deadline  {@link System#nanoTime()} after which the search is
+     *                  aborted, or Long.MAX_VALUE
+     * @param firstMove Column to search first, usually the best one of the
+     *                  previous depth, or {@link TranspositionTable#NO_MOVE}
+     * @return false if the search ran out of time, the scores and best columns of
+     *         the previous call are then kept
+     */
+    private boolean searchRoot(int maxDepth, long deadline, int firstMove) {
+        int player = pieceOf(currentPlayer);
+        boolean isMaximizing = (currentPlayer == player_1);
+
+        // On a symmetric board, only one of every column and its mirror is searched
+        int moveCount = searchers[0].orderRootMoves(board, player, firstMove, rootMoves);
+        if (searchPool == null) {
+            AlphaBetaSearch searcher = searchers[0];
+            searcher.setLimits(maxDepth, deadline);
+            for (int i = 0; i < moveCount; i++) {
+                rootScores[rootMoves[i]] = searchColumn(searcher, board, rootMoves[i], player, isMaximizing);
+                if (searcher.isAborted())
+                    return false;
+            }
+        } else {
+            for (int i = 0; i < moveCount; i++) {
+                searchers[i].setLimits(maxDepth, deadline);
+                rootTasks[i].prepare(board, rootMoves[i], player, isMaximizing);
+                searchPool.execute(rootTasks[i]);
+            }
+            // Joining a task from outside the pool allocates a wait node, waiting for
+            // the pool to be idle doesn't
+            searchPool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            for (int i = 0; i < moveCount; i++) {
+                rootTasks[i].join();
+                rootScores[rootMoves[i]] = rootTasks[i].score;
+            }
+            for (int i = 0; i < moveCount; i++) {
+                if (searchers[i].isAborted())
+                    return false;
+            }
+        }
 
+        moveCount = AlphaBetaSearch.addMirroredMoves(board, rootMoves, moveCount, rootScores);
+
+        // player_2 maximizes the score, player_1 minimizes it
+        int sign = (currentPlayer == player_2) ? 1 : -1;
+        int bestScore = Integer.MIN_VALUE;
+        bestCount = 0;
+        for (int i = 0; i < moveCount; i++) {
+            int col = rootMoves[i];
+            int score = sign * rootScores[col];
+            if (score > bestScore) {
+                bestScore = score;
+                bestCount = 0;
             }
-            return bestScore;
+            if (score == bestScore)
+                bestCols[bestCount++] = col;
+        }
+        System.arraycopy(rootScores, 0, completedRootScores, 0, columnCount);
+        return true;
+    }
+
+    /**
+     * Scores a single root column.
+     * 
+     * @param searcher      Search to use, owned by the calling thread
+     * @param boardInstance Board to play on, owned by the calling thread
+     * @param col           Column to score
+     * @param player        Player about to move
+     * @param isMaximizing  Determines if the opponent tries to maximize the score
+     * @return The score of the column
+     */
+    private int searchColumn(AlphaBetaSearch searcher, Position boardInstance, int col, int player,
+            boolean isMaximizing) {
+        long startTime = threadBean.getCurrentThreadCpuTime();
+        boardInstance.play(col, player);
+        int score = searcher.minimaxAlphaBetaPruning(boardInstance, col, 0, Integer.MIN_VALUE, Integer.MAX_VALUE,
+                isMaximizing);
+        boardInstance.undo(col);
+        searchCpuNanos.addAndGet(threadBean.getCurrentThreadCpuTime() - startTime);
+        return score;
+    }
+
+    /**
+     * Search of a root column, on its own copy of the board. Tasks are reused
+     * from one search to the next, so searching in parallel doesn't allocate.
+     */
+    private class RootTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final AlphaBetaSearch searcher;
+        private final Position boardCopy = new Position(geometry);
+        private int col;
+        private int player;
+        private boolean isMaximizing;
+        private int score;
+
+        /**
+         * Constructs a new task.
+         * 
+         * @param searcher Search used by the task
+         */
+        RootTask(AlphaBetaSearch searcher) {
+            this.searcher = searcher;
+        }
+
+        /**
+         * Sets the column to score next, before the task is run again.
+         * 
+         * @param boardInstance Current state of the board, copied
+         * @param col           Column to score
+         * @param player        Player about to move
+         * @param isMaximizing  Determines if the opponent tries to maximize the
+         *                      score
+         */
+        void prepare(Position boardInstance, int col, int player, boolean isMaximizing) {
+            reinitialize();
+            boardCopy.copyFrom(boardInstance);
+            this.col = col;
+            this.player = player;
+            this.isMaximizing = isMaximizing;
+        }
+
+        protected void compute() {
+            score = searchColumn(searcher, boardCopy, col, player, isMaximizing);
         }
     }
 
@@ -469,7 +901,7 @@ public class ConnectFour {
                 }
             }
             System.out.println(this);
-            winner = checkWinner();
+            winner = checkLastMove();
         }
         endingMessage(winner);
     }
@@ -488,6 +920,9 @@ public class ConnectFour {
         while (winner == null) {
             boolean validMove = false;
             displayCurrentPlayer();
+            boolean humanTurn = (currentPlayer == player_1);
+            if (humanTurn)
+                startPondering();
             while (!validMove) {
                 if (currentPlayer == player_1) {
                     validMove = receiveInput(); // human move
@@ -495,8 +930,14 @@ public class ConnectFour {
                     validMove = humanPlayerSimulator(BotSkillset_1); // Bot move
                 }
             }
+            if (humanTurn && ponderer != null)
+                ponderer.stop();
             System.out.println(this);
-            winner = checkWinner();
+            winner = checkLastMove();
+        }
+        if (ponderer != null) {
+            ponderer.close();
+            ponderer = null;
         }
         endingMessage(winner);
     }
@@ -527,34 +968,82 @@ public class ConnectFour {
             }
 
             System.out.println(this);
-            winner = checkWinner();
+            winner = checkLastMove();
         }
         endingMessage(winner);
     }
 
     /**
      * Simulate multiple round of Bot vs Bot, allows for testing different AI models
+     * The games are played headless on every core, and only the results are shown.
      */
     public void roundSimulator() {
-        int numberOfRounds = 5;
-        System.out.println("Will simulate " + numberOfRounds + " rounds");
-        int[] arr = new int[numberOfRounds];
+        System.out.println("Will simulate " + SimulatedRounds + " rounds");
+        BotConfig firstConfig = new BotConfig("Bot 1", BotSkillset_1, SimulationMaxDepth, SimulationTableMegabytes,
+                evaluation, openingBook, endgameDatabase);
+        BotConfig secondConfig = new BotConfig("Bot 2", BotSkillset_2, SimulationMaxDepth,
+                SimulationTableMegabytes, evaluation, openingBook, endgameDatabase);
+        Tournament tournament = new Tournament(firstConfig, secondConfig, Runtime.getRuntime().availableProcessors(),
+                geometry);
+        if (ReplayGames) {
+            replayGames(tournament);
+            return;
+        }
+        long seed = gameSeed;
+        System.out.println("Seed: " + seed);
+        GameRecordWriter gameRecorder = null;
+        try {
+            if (RecordGames) {
+                gameRecorder = new GameRecordWriter(Paths.get(GamesFile), geometry, firstConfig.toString(),
+                        secondConfig.toString(), seed);
+                tournament.setGameRecorder(gameRecorder);
+            }
+            System.out.println(tournament.run(SimulatedRounds, seed));
+        } catch (IOException e) {
+            System.out.println("Games file " + GamesFile + " can't be written: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeGameRecorder(gameRecorder);
+        }
+    }
 
-        for (int i = 0; i < numberOfRounds; i++) {
-            System.out.println("GAME #:" + (i + 1));
-            resetGame();
-            BotScenario();
-            arr[i] = numberOfPiecesPlaced;
-            System.out.println("They won in " + numberOfPiecesPlaced +
-                    " moves!");
-            System.out.println("########################################################");
-            System.out.println("########################################################");
-            System.out.println("########################################################");
+    /**
+     * Plays the recorded games again, checking that they repeat move for move
+     * with the same node counts.
+     *
+     * @param tournament Tournament between Bots with the settings of the recorded
+     *                   ones.
+     */
+    private void replayGames(Tournament tournament) {
+        try (GameRecordReader reader = new GameRecordReader(Paths.get(GamesFile))) {
+            System.out.println("Replaying the games of seed " + reader.getSeed() + " from " + GamesFile);
+            System.out.println(tournament.replay(reader));
+            System.out.println("Every game repeated with the same moves and node counts");
+        } catch (IOException e) {
+            System.out.println("Games file " + GamesFile + " can't be read: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Games file " + GamesFile + " can't be replayed: " + e.getMessage());
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage() + (e.getCause() != null ? ": " + e.getCause().getMessage() : ""));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        int count = 1;
-        for (int i : arr) {
-            System.out.println("Game #" + (count++) + " had " + i + " moves");
+    /**
+     * Flushes the games recorded by the simulator.
+     *
+     * @param gameRecorder The recorder, or null if the games weren't recorded
+     */
+    private void closeGameRecorder(GameRecordWriter gameRecorder) {
+        if (gameRecorder == null)
+            return;
+        try {
+            gameRecorder.close();
+            System.out.println(gameRecorder.getGameCount() + " games recorded to " + GamesFile);
+        } catch (IOException e) {
+            System.out.println("Games file " + GamesFile + " can't be written: " + e.getMessage());
         }
     }
 
@@ -568,7 +1057,7 @@ public class ConnectFour {
      * @return The user's choice.
      */
     public int gameOptions() {
-        System.out.println("Welcome to Connect 4!");
+        System.out.println("Welcome to Connect " + connectLength + "!");
         System.out.println("How many human players are there (0 or 1 or 2) ?");
         System.out.println("Or would you like to simulate the Bots (4)?");
         String inputString = input.next();
@@ -588,6 +1077,8 @@ public class ConnectFour {
             return;
         }
 
+        if (displayExtraInfo && (gameMode == 0 || gameMode == 1))
+            System.out.println("Seed: " + gameSeed);
         if (gameMode == 2)
             twoPlayerScenario();
         if (gameMode == 1)
@@ -596,5 +1087,6 @@ public class ConnectFour {
             BotScenario();
         if (gameMode == 4)
             roundSimulator();
+        closeMetricsExporter();
     }
 }
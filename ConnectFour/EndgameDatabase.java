@@ -0,0 +1,613 @@
+package ConnectFour;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outcome of every position from a given ply to the end of the game, on a
+ * board fitting a single long, so the end of a game costs the search a lookup.
+ * The database is generated offline by backward induction, ply by ply from the
+ * full board: a position is won if a move wins or leads to a lost position,
+ * drawn if its best move leads to a drawn one, and lost otherwise.
+ * <p>
+ * Positions are numbered by a perfect index, without any hashing. The player to
+ * move always holds half the pieces, rounded down, whoever started, so a
+ * position is its column heights and which of its pieces belong to the player
+ * to move:
+ *
+ * <pre>
+ * index = offset(ply) + rank(heights) * C(ply, ply / 2) + rank(pieces of the player to move)
+ * </pre>
+ *
+ * The heights are ranked in lexicographic order, and the pieces of the player
+ * to move, as a subset of every piece in bit order, in colexicographic order.
+ * <p>
+ * The database is a binary file, read through a memory mapping so that it is
+ * never loaded into the heap:
+ *
+ * <pre>
+ * int    magic, "C4EG"
+ * int    version
+ * int    columns, rows and connect length of the board
+ * int    minPly, fewest pieces of the positions
+ * long   count, number of positions
+ * byte[] outcomes, four positions per byte, the first one in the low bits: 0 if
+ *        the game is already over, then loss, draw or win for the player to move
+ * </pre>
+ *
+ * The index counts every arrangement of the pieces, reachable or not, so the
+ * file grows quickly with the board: 1.4 MB for the whole 5x4 board, 43 MB for
+ * 5x5 and 365 MB for 6x5 from ply 28, but 16 TB for the standard board from ply
+ * 30, which can't be built. A database is thread safe once opened.
+ * <p>
+ * Usage: java ConnectFour.EndgameDatabase file columns rows connect-length
+ * min-ply [threads]
+ */
+public class EndgameDatabase {
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    private static final int MAGIC = 0x43344547;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 6 * Integer.BYTES + Long.BYTES;
+    // Mappings are indexed by int, larger files are mapped in chunks of 1 GB
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+    // 16 GB of outcomes
+    private static final long MAX_POSITIONS = 1L << 36;
+    // Positions handed to a generating thread at a time, a multiple of the four
+    // positions of a byte so that no two threads write the same byte
+    private static final int BLOCK_POSITIONS = 1 << 16;
+
+    private static final int NO_POSITION = 0;
+    private static final int LOSS = 1;
+    private static final int DRAW = 2;
+    private static final int WIN = 3;
+    private static final long[][] BINOMIALS = binomials(Long.SIZE);
+
+    private final MappedByteBuffer[] chunks;
+    private final Geometry geometry;
+    private final int minPly;
+    private final long count;
+    private final int columnCount;
+    private final int cellCount;
+    private final long[] columnMasks;
+    private final long boardMask;
+    private final long bottomRow;
+    // ways[c][n]: number of ways c columns hold n pieces
+    private final long[][] ways;
+    // Index of the first position of every ply, up to cellCount + 1
+    private final long[] plyOffsets;
+
+    /**
+     * Constructs a database over a mapped file.
+     *
+     * @param chunks Contents of the file, 1 GB per chunk.
+     * @throws IOException If the file isn't a database.
+     */
+    private EndgameDatabase(MappedByteBuffer[] chunks) throws IOException {
+        this.chunks = chunks;
+        MappedByteBuffer header = chunks[0];
+        if (header.capacity() < HEADER_BYTES || header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+            throw new IOException("Not an endgame database");
+        try {
+            geometry = new Geometry(header.getInt(8), header.getInt(12), header.getInt(16));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupted endgame database", e);
+        }
+        minPly = header.getInt(20);
+        if (geometry.getWordCount() != 1 || minPly < 0 || minPly > geometry.getCellCount())
+            throw new IOException("Corrupted endgame database");
+        columnCount = geometry.getColumnCount();
+        cellCount = geometry.getCellCount();
+        columnMasks = new long[columnCount];
+        for (int col = 0; col < columnCount; col++)
+            columnMasks[col] = ((1L << geometry.getRowCount()) - 1) << (col * geometry.getStride());
+        boardMask = geometry.getAlternateRowsMask(0, 0) | geometry.getAlternateRowsMask(1, 0);
+        bottomRow = geometry.getBottomRowMask(0);
+        ways = countHeights(columnCount, geometry.getRowCount(), cellCount);
+        plyOffsets = new long[cellCount + 2];
+        for (int ply = minPly; ply <= cellCount; ply++)
+            plyOffsets[ply + 1] = plyOffsets[ply] + ways[columnCount][ply] * BINOMIALS[ply][ply / 2];
+        count = plyOffsets[cellCount + 1];
+        if (header.getLong(24) != count)
+            throw new IOException("Corrupted endgame database");
+    }
+
+    /**
+     * Maps a database file in memory.
+     *
+     * @param file Path of the database.
+     * @return the database
+     * @throws IOException If the file can't be read, or isn't a database.
+     */
+    public static EndgameDatabase open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mappings stay valid once the channel is closed
+            EndgameDatabase database = new EndgameDatabase(map(channel, FileChannel.MapMode.READ_ONLY,
+                    channel.size()));
+            if (channel.size() != fileBytes(database.count))
+                throw new IOException("Truncated endgame database");
+            return database;
+        }
+    }
+
+    /**
+     * Maps a file in chunks of 1 GB.
+     *
+     * @param channel File to map.
+     * @param mode    Read only, or read and write to generate the file.
+     * @param size    Number of bytes to map, from the start of the file.
+     * @return the chunks
+     * @throws IOException If the file can't be mapped.
+     */
+    private static MappedByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, long size)
+            throws IOException {
+        if (size < HEADER_BYTES)
+            throw new IOException("Not an endgame database");
+        MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT)];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = (long) i << CHUNK_SHIFT;
+            chunks[i] = channel.map(mode, start, Math.min(size - start, 1L << CHUNK_SHIFT));
+        }
+        return chunks;
+    }
+
+    /**
+     * Gets the size of the board the database covers.
+     *
+     * @return the geometry of the board
+     */
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Gets the fewest pieces of the positions in the database.
+     *
+     * @return the number of pieces on the board of the earliest positions
+     */
+    public int getMinPly() {
+        return minPly;
+    }
+
+    /**
+     * Gets the number of positions in the database, reachable or not.
+     *
+     * @return the number of positions
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Checks if the database holds the positions of a board.
+     *
+     * @param position Current state of the board.
+     * @return true if the position is late enough, on a board of the database's
+     *         size
+     */
+    public boolean covers(Position position) {
+        return position.getMoveCount() >= minPly && covers(position.getGeometry());
+    }
+
+    /**
+     * Checks if the database holds the late positions of a board.
+     *
+     * @param other Size of the board.
+     * @return true if the board has the size and connect length of the database
+     */
+    public boolean covers(Geometry other) {
+        return other.getColumnCount() == columnCount && other.getRowCount() == geometry.getRowCount()
+                && other.getConnectLength() == geometry.getConnectLength();
+    }
+
+    /**
+     * Looks up the outcome of a position.
+     *
+     * @param position Current state of the board.
+     * @param player   Player about to move.
+     * @return 1 if the player to move wins, 0 for a draw, -1 if they lose, or
+     *         {@link #NOT_FOUND} if the database doesn't cover the position or
+     *         the game is already over
+     */
+    public int lookup(Position position, int player) {
+        if (!covers(position))
+            return NOT_FOUND;
+        long mover = position.getPieces(player);
+        if (Long.bitCount(mover) != position.getMoveCount() / 2)
+            return NOT_FOUND;
+        switch (outcome(indexOf(mover, position.getMask()))) {
+            case WIN:
+                return 1;
+            case DRAW:
+                return 0;
+            case LOSS:
+                return -1;
+            default:
+                return NOT_FOUND;
+        }
+    }
+
+    /**
+     * Computes the index of a position.
+     *
+     * @param mover Pieces of the player to move.
+     * @param mask  Every piece on the board.
+     * @return the index
+     */
+    private long indexOf(long mover, long mask) {
+        int ply = Long.bitCount(mask);
+        long heightsRank = 0;
+        int remaining = ply;
+        for (int col = 0; col < columnCount; col++) {
+            int height = Long.bitCount(mask & columnMasks[col]);
+            for (int lower = 0; lower < height; lower++)
+                heightsRank += ways[columnCount - 1 - col][remaining - lower];
+            remaining -= height;
+        }
+        // Combinatorial number system: the j-th piece of the player to move, as
+        // the i-th piece on the board, adds C(i, j)
+        long piecesRank = 0;
+        int j = 0;
+        for (long pieces = mover; pieces != 0; pieces &= pieces - 1) {
+            long piece = pieces & -pieces;
+            piecesRank += BINOMIALS[Long.bitCount(mask & (piece - 1))][++j];
+        }
+        return plyOffsets[ply] + heightsRank * BINOMIALS[ply][ply / 2] + piecesRank;
+    }
+
+    /**
+     * Reads the outcome of a position.
+     *
+     * @param index Index of the position.
+     * @return {@link #NO_POSITION}, {@link #LOSS}, {@link #DRAW} or {@link #WIN}
+     */
+    private int outcome(long index) {
+        long offset = HEADER_BYTES + (index >>> 2);
+        int outcomes = chunks[(int) (offset >>> CHUNK_SHIFT)].get((int) (offset & CHUNK_MASK));
+        return (outcomes >>> ((int) (index & 3) * 2)) & 3;
+    }
+
+    /**
+     * Writes the outcome of a position, keeping the others of the same byte.
+     *
+     * @param index   Index of the position.
+     * @param outcome {@link #NO_POSITION}, {@link #LOSS}, {@link #DRAW} or
+     *                {@link #WIN}.
+     */
+    private void setOutcome(long index, int outcome) {
+        long offset = HEADER_BYTES + (index >>> 2);
+        MappedByteBuffer chunk = chunks[(int) (offset >>> CHUNK_SHIFT)];
+        int shift = (int) (index & 3) * 2;
+        int outcomes = chunk.get((int) (offset & CHUNK_MASK));
+        chunk.put((int) (offset & CHUNK_MASK), (byte) ((outcomes & ~(3 << shift)) | outcome << shift));
+    }
+
+    /**
+     * Generates a database file.
+     *
+     * @param args The database file, the columns, rows and connect length of the
+     *             board, the fewest pieces of the positions, then optionally the
+     *             number of threads.
+     * @throws IOException          If the database can't be written.
+     * @throws InterruptedException If interrupted while generating.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 5) {
+            System.out.println("Usage: java ConnectFour.EndgameDatabase file columns rows connect-length min-ply"
+                    + " [threads]");
+            return;
+        }
+        Geometry geometry = new Geometry(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                Integer.parseInt(args[3]));
+        int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+        long startTime = System.nanoTime();
+        try {
+            long count = generate(Paths.get(args[0]), geometry, Integer.parseInt(args[4]), threads);
+            System.out.println(count + " positions in " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Can't generate the database: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Computes the outcome of every position from a ply to the end of the game
+     * and writes them to a database, from the full board back to the first ply.
+     *
+     * @param file     Path of the database to write.
+     * @param geometry Size of the board, fitting a single long.
+     * @param minPly   Fewest pieces of the positions.
+     * @param threads  Number of threads computing the positions of a ply.
+     * @return the number of positions in the database
+     * @throws IllegalArgumentException If the board needs more than 64 bits, or
+     *                                  the database would hold more than 2^36
+     *                                  positions.
+     * @throws IOException              If the database can't be written.
+     * @throws InterruptedException     If interrupted while generating.
+     */
+    public static long generate(Path file, Geometry geometry, int minPly, int threads)
+            throws IOException, InterruptedException {
+        if (geometry.getWordCount() != 1)
+            throw new IllegalArgumentException(geometry + " doesn't fit a single bitboard");
+        if (minPly < 0 || minPly > geometry.getCellCount())
+            throw new IllegalArgumentException("Min ply must be between 0 and " + geometry.getCellCount());
+        long[][] ways = countHeights(geometry.getColumnCount(), geometry.getRowCount(), geometry.getCellCount());
+        long count = 0;
+        for (int ply = minPly; ply <= geometry.getCellCount(); ply++)
+            count += ways[geometry.getColumnCount()][ply] * BINOMIALS[ply][ply / 2];
+        if (count > MAX_POSITIONS)
+            throw new IllegalArgumentException(geometry + " from ply " + minPly + " has " + count
+                    + " positions, more than " + MAX_POSITIONS);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer[] chunks = map(channel, FileChannel.MapMode.READ_WRITE, fileBytes(count));
+            chunks[0].putInt(0, MAGIC);
+            chunks[0].putInt(4, VERSION);
+            chunks[0].putInt(8, geometry.getColumnCount());
+            chunks[0].putInt(12, geometry.getRowCount());
+            chunks[0].putInt(16, geometry.getConnectLength());
+            chunks[0].putInt(20, minPly);
+            chunks[0].putLong(24, count);
+            EndgameDatabase database = new EndgameDatabase(chunks);
+
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                // Every position only depends on the positions of the next ply
+                for (int ply = geometry.getCellCount(); ply >= minPly; ply--)
+                    database.generatePly(ply, pool, threads);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Generating the endgame database failed", e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+            for (MappedByteBuffer chunk : chunks)
+                chunk.force();
+        }
+        return count;
+    }
+
+    /**
+     * Computes the outcome of every position of a ply, on a pool of threads
+     * taking blocks of positions in turn.
+     *
+     * @param ply     Number of pieces of the positions.
+     * @param pool    Threads computing the positions.
+     * @param threads Number of threads of the pool.
+     * @throws ExecutionException   If a thread failed.
+     * @throws InterruptedException If interrupted while generating.
+     */
+    private void generatePly(int ply, ExecutorService pool, int threads)
+            throws ExecutionException, InterruptedException {
+        long first = plyOffsets[ply];
+        long end = plyOffsets[ply + 1];
+        // Blocks are aligned on the whole index, only the ends of the ply share
+        // a byte with the plies around it
+        AtomicLong nextBlock = new AtomicLong(first & -BLOCK_POSITIONS);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int worker = 0; worker < threads; worker++) {
+            workers.add(pool.submit(() -> {
+                PlyCursor cursor = new PlyCursor(ply);
+                for (long block = nextBlock.getAndAdd(BLOCK_POSITIONS); block < end;
+                        block = nextBlock.getAndAdd(BLOCK_POSITIONS)) {
+                    long start = Math.max(first, block);
+                    long blockEnd = Math.min(end, block + BLOCK_POSITIONS);
+                    cursor.seek(start - first);
+                    for (long index = start; index < blockEnd; index++) {
+                        setOutcome(index, solve(cursor.mover(), cursor.mask, ply));
+                        cursor.next();
+                    }
+                }
+            }));
+        }
+        for (Future<?> worker : workers)
+            worker.get();
+    }
+
+    /**
+     * Computes the outcome of a position from the outcomes of the next ply.
+     *
+     * @param mover Pieces of the player to move.
+     * @param mask  Every piece on the board.
+     * @param ply   Number of pieces on the board.
+     * @return {@link #NO_POSITION} if the game is already over, otherwise
+     *         {@link #LOSS}, {@link #DRAW} or {@link #WIN}
+     */
+    private int solve(long mover, long mask, int ply) {
+        long opponent = mask ^ mover;
+        if (hasLine(mover) || hasLine(opponent))
+            return NO_POSITION;
+        if (ply == cellCount)
+            return DRAW;
+        int best = LOSS;
+        for (long moves = (mask + bottomRow) & boardMask; moves != 0; moves &= moves - 1) {
+            long move = moves & -moves;
+            long lines = geometry.getLinesThroughCell(Long.numberOfTrailingZeros(move));
+            if (hasLine((mover | move) & lines))
+                return WIN;
+            int reply = outcome(indexOf(opponent, mask | move));
+            if (reply == LOSS)
+                return WIN;
+            if (reply == DRAW)
+                best = DRAW;
+        }
+        return best;
+    }
+
+    /**
+     * Checks if pieces hold a winning line.
+     *
+     * @param pieces Pieces of a player.
+     * @return true if a line is complete
+     */
+    private boolean hasLine(long pieces) {
+        int connectLength = geometry.getConnectLength();
+        for (int d = 0; d < geometry.getDirectionCount(); d++) {
+            int step = geometry.getDirectionStep(d);
+            long lines = geometry.getLineStarts(d, 0);
+            for (int i = 0; i < connectLength && lines != 0; i++)
+                lines &= pieces >>> (i * step);
+            if (lines != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Walks the positions of a ply in index order, the pieces of the player to
+     * move changing first, then the heights of the columns.
+     */
+    private class PlyCursor {
+        private final int ply;
+        private final int moverCount;
+        private final long subsets;
+        private final int[] cells;
+        private long heightsRank;
+        // Pieces of the player to move, as a subset of the pieces in bit order
+        private long subset;
+        private long mask;
+
+        /**
+         * Constructs a cursor over a ply, call {@link #seek(long)} before using
+         * it.
+         *
+         * @param ply Number of pieces of the positions.
+         */
+        PlyCursor(int ply) {
+            this.ply = ply;
+            moverCount = ply / 2;
+            subsets = BINOMIALS[ply][moverCount];
+            cells = new int[Math.max(1, ply)];
+        }
+
+        /**
+         * Moves to a position of the ply.
+         *
+         * @param rank Index of the position, from the first position of the ply.
+         */
+        void seek(long rank) {
+            setHeights(rank / subsets);
+            long subsetRank = rank % subsets;
+            subset = 0;
+            for (int j = moverCount; j >= 1; j--) {
+                int i = j - 1;
+                while (BINOMIALS[i + 1][j] <= subsetRank)
+                    i++;
+                subset |= 1L << i;
+                subsetRank -= BINOMIALS[i][j];
+            }
+        }
+
+        /**
+         * Moves to the next position of the ply.
+         */
+        void next() {
+            if (subset != 0) {
+                // Next subset of the same size, in increasing order
+                long lowest = subset & -subset;
+                long ripple = subset + lowest;
+                subset = (((ripple ^ subset) >>> 2) / lowest) | ripple;
+                if ((subset >>> ply) == 0)
+                    return;
+            }
+            subset = (1L << moverCount) - 1;
+            if (heightsRank + 1 < ways[columnCount][ply])
+                setHeights(heightsRank + 1);
+        }
+
+        /**
+         * Sets the heights of the columns from their rank, with the cells of the
+         * pieces in bit order.
+         *
+         * @param rank Rank of the heights among the heights holding the ply's
+         *             pieces.
+         */
+        private void setHeights(long rank) {
+            heightsRank = rank;
+            mask = 0;
+            int remaining = ply;
+            int piece = 0;
+            for (int col = 0; col < columnCount; col++) {
+                int height = 0;
+                while (rank >= ways[columnCount - 1 - col][remaining - height]) {
+                    rank -= ways[columnCount - 1 - col][remaining - height];
+                    height++;
+                }
+                for (int row = 0; row < height; row++) {
+                    cells[piece++] = col * geometry.getStride() + row;
+                    mask |= 1L << (col * geometry.getStride() + row);
+                }
+                remaining -= height;
+            }
+        }
+
+        /**
+         * Gets the pieces of the player to move.
+         *
+         * @return the bits of their cells
+         */
+        long mover() {
+            long mover = 0;
+            for (long pieces = subset; pieces != 0; pieces &= pieces - 1)
+                mover |= 1L << cells[Long.numberOfTrailingZeros(pieces)];
+            return mover;
+        }
+    }
+
+    /**
+     * Counts the ways columns can hold pieces.
+     *
+     * @param columnCount Number of columns.
+     * @param rowCount    Number of rows.
+     * @param cellCount   Number of cells.
+     * @return the number of ways c columns hold n pieces, indexed by c then n
+     */
+    private static long[][] countHeights(int columnCount, int rowCount, int cellCount) {
+        long[][] ways = new long[columnCount + 1][cellCount + 1];
+        ways[0][0] = 1;
+        for (int c = 1; c <= columnCount; c++) {
+            for (int n = 0; n <= cellCount; n++) {
+                for (int height = 0; height <= Math.min(rowCount, n); height++)
+                    ways[c][n] += ways[c - 1][n - height];
+            }
+        }
+        return ways;
+    }
+
+    /**
+     * Computes the binomial coefficients.
+     *
+     * @param max Largest number of elements.
+     * @return C(n, k), indexed by n then k, 0 when k > n
+     */
+    private static long[][] binomials(int max) {
+        long[][] binomials = new long[max + 1][max + 2];
+        for (int n = 0; n <= max; n++) {
+            binomials[n][0] = 1;
+            for (int k = 1; k <= n; k++)
+                binomials[n][k] = binomials[n - 1][k - 1] + binomials[n - 1][k];
+        }
+        return binomials;
+    }
+
+    /**
+     * Computes the size of a database file.
+     *
+     * @param count Number of positions.
+     * @return the number of bytes, header included
+     */
+    private static long fileBytes(long count) {
+        return HEADER_BYTES + (count + 3) / 4;
+    }
+}
@@ -0,0 +1,231 @@
+package ConnectFour;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe move service, to play the Bot's side of many games at once from
+ * a single JVM. Positions are passed in by the caller and copied, the engine
+ * keeps no board of its own.
+ * <p>
+ * The engine owns a fixed number of searches, each with its own board, move
+ * ordering and buffers, and a transposition table shared by all of them. A
+ * move is searched by a single thread, from the opening book when it covers
+ * the position, then with an iterative deepening minimax search within a
+ * {@link SearchBudget}. {@link #bestMove} searches on the calling thread, and
+ * {@link #bestMoves} spreads a batch of independent games over the engine's
+ * worker threads. When more callers than searches ask for a move at the same
+ * time, the extra ones wait for a search to be free.
+ * <p>
+ * Between two equally good columns, the engine always picks the same one.
+ */
+public class Engine implements AutoCloseable {
+    private final TranspositionTable transpositionTable;
+    private final OpeningBook openingBook;
+    private final BlockingQueue<Worker> idleWorkers;
+    private final ExecutorService pool;
+    private final AtomicLong nodeCount = new AtomicLong();
+    private final AtomicLong moveCount = new AtomicLong();
+
+    /**
+     * Constructs a new engine.
+     *
+     * @param threadCount    Number of moves searched at the same time, usually
+     *                       the number of processors.
+     * @param tableMegabytes Memory budget of the shared transposition table.
+     * @param evaluation     Scores the positions where the search stops.
+     * @param openingBook    Book played from while it covers the position, or
+     *                       null to always search.
+     */
+    public Engine(int threadCount, int tableMegabytes, Evaluation evaluation, OpeningBook openingBook) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("An engine needs at least one thread");
+        transpositionTable = new TranspositionTable(tableMegabytes);
+        this.openingBook = openingBook;
+        idleWorkers = new ArrayBlockingQueue<>(threadCount);
+        for (int i = 0; i < threadCount; i++)
+            idleWorkers.add(new Worker(evaluation));
+        pool = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "engine");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Picks the column to play, searching on the calling thread.
+     *
+     * @param position Current state of the board, left unchanged. It must not be
+     *                 modified during the call.
+     * @param player   Player about to move.
+     * @param budget   Limits of the search.
+     * @return The column to play.
+     * @throws InterruptedException If interrupted while waiting for a free
+     *                              search.
+     */
+    public int bestMove(Position position, int player, SearchBudget budget) throws InterruptedException {
+        Worker worker = idleWorkers.take();
+        try {
+            return worker.bestMove(position, player, budget);
+        } finally {
+            idleWorkers.add(worker);
+        }
+    }
+
+    /**
+     * Picks the column to play in every game of a batch, searched in parallel by
+     * the engine's worker threads.
+     *
+     * @param requests Positions to move on, from independent games.
+     * @param budget   Limits of the search of every move.
+     * @return The column to play in every position, in the order of the requests.
+     * @throws InterruptedException If interrupted while waiting for the searches.
+     */
+    public int[] bestMoves(List<MoveRequest> requests, SearchBudget budget) throws InterruptedException {
+        List<Future<Integer>> searches = new ArrayList<>(requests.size());
+        for (MoveRequest request : requests)
+            searches.add(pool.submit(() -> bestMove(request.getPosition(), request.getPlayer(), budget)));
+        int[] moves = new int[requests.size()];
+        try {
+            for (int i = 0; i < moves.length; i++)
+                moves[i] = searches.get(i).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A search failed", e.getCause());
+        } finally {
+            for (Future<Integer> search : searches)
+                search.cancel(true);
+        }
+        return moves;
+    }
+
+    /**
+     * Gets the number of nodes searched by the engine so far.
+     *
+     * @return the number of nodes
+     */
+    public long getNodeCount() {
+        return nodeCount.get();
+    }
+
+    /**
+     * Gets the number of moves picked by the engine so far.
+     *
+     * @return the number of moves
+     */
+    public long getMoveCount() {
+        return moveCount.get();
+    }
+
+    /**
+     * Releases the worker threads. Moves can't be asked for anymore.
+     */
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * A search and everything it needs, used by one thread at a time.
+     */
+    private class Worker {
+        private final AlphaBetaSearch searcher;
+        private final Position board = new Position();
+        private final int[] moves = new int[Geometry.MAX_COLUMN_COUNT];
+        private final int[] bookScores = new int[Geometry.MAX_COLUMN_COUNT];
+
+        /**
+         * Constructs a new worker.
+         *
+         * @param evaluation Scores the positions where the search stops.
+         */
+        Worker(Evaluation evaluation) {
+            searcher = new AlphaBetaSearch(transpositionTable, new MoveOrdering(true, false, false, true),
+                    evaluation);
+        }
+
+        /**
+         * Picks the column to play.
+         *
+         * @param position Current state of the board, copied.
+         * @param player   Player about to move.
+         * @param budget   Limits of the search.
+         * @return The column to play.
+         */
+        int bestMove(Position position, int player, SearchBudget budget) {
+            board.copyFrom(position);
+            moveCount.incrementAndGet();
+            if (openingBook != null && openingBook.analyze(board, player, bookScores))
+                return bestBookMove();
+
+            long deadline = budget.deadline();
+            int openSpots = board.getGeometry().getCellCount() - board.getMoveCount();
+            int maxDepth = Math.max(0, Math.min(budget.getMaxDepth(), openSpots - 2));
+            searcher.newSearch();
+            int bestMove = TranspositionTable.NO_MOVE;
+            // Depth 0 always completes, so there is a move even when time is short
+            for (int depth = 0; depth <= maxDepth; depth++) {
+                searcher.setLimits(depth, depth == 0 ? Long.MAX_VALUE : deadline);
+                int move = searchRoot(player, bestMove);
+                if (searcher.isAborted())
+                    break;
+                bestMove = move;
+            }
+            nodeCount.addAndGet(searcher.getNodeCount());
+            return bestMove;
+        }
+
+        /**
+         * Scores every column of the board to the depth of the search's limits.
+         *
+         * @param player    Player about to move.
+         * @param firstMove Column to search first, or
+         *                  {@link TranspositionTable#NO_MOVE}.
+         * @return The best column, meaningless if the search was aborted.
+         */
+        private int searchRoot(int player, int firstMove) {
+            // player_2 maximizes the score, player_1 minimizes it
+            boolean isMaximizing = (player == Position.PLAYER_1);
+            int sign = (player == Position.PLAYER_2) ? 1 : -1;
+            int moveCount = searcher.orderRootMoves(board, player, firstMove, moves);
+            if (moveCount == 0)
+                throw new IllegalArgumentException("No column can be played");
+            int bestScore = Integer.MIN_VALUE;
+            int bestMove = moves[0];
+            for (int i = 0; i < moveCount; i++) {
+                int col = moves[i];
+                board.play(col, player);
+                int score = sign * searcher.minimaxAlphaBetaPruning(board, col, 0, Integer.MIN_VALUE,
+                        Integer.MAX_VALUE, isMaximizing);
+                board.undo(col);
+                if (searcher.isAborted())
+                    break;
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestMove = col;
+                }
+            }
+            return bestMove;
+        }
+
+        /**
+         * Picks the first column with the best score in the book.
+         *
+         * @return The column to play.
+         */
+        private int bestBookMove() {
+            int bestMove = TranspositionTable.NO_MOVE;
+            for (int col = 0; col < board.getColumnCount(); col++) {
+                if (board.canPlay(col) && (bestMove == TranspositionTable.NO_MOVE
+                        || bookScores[col] > bookScores[bestMove]))
+                    bestMove = col;
+            }
+            return bestMove;
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package ConnectFour;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Benchmarks of the engine's hot paths over a fixed corpus of opening, midgame
+ * and endgame positions:
+ * <ul>
+ * <li>win checks ({@link Position#hasWon(int)}, as used by checkWinner, and
+ * {@link Position#lastMoveWon(int)}) and {@link Position#dropsToRow(int)}, in
+ * operations per second</li>
+ * <li>the minimax search at a fixed depth, in nodes per second, with the bytes
+ * it allocates per search</li>
+ * <li>the time to reach every depth of an iterative deepening search</li>
+ * <li>full headless games between two Bots, in games per second, and the
+ * bytes allocated per move by the Bots and by {@link ConnectFour}'s own Bot,
+ * which must stay at 0 once warmed up</li>
+ * </ul>
+ * Every benchmark runs a few warm-up rounds, so the JIT compiler is done
+ * before the measured rounds. The results are written as JSON, to the file
+ * given as the first argument or to the standard output, so they can be
+ * compared from one build to the next. When a move allocated, the process
+ * then exits with status 1.
+ * <p>
+ * This is the quick local runner. The same corpus is benchmarked by JMH, with
+ * forks and its gc profiler, by {@code EngineJmhBenchmark} in the jmh profile
+ * of the Maven build.
+ * <p>
+ * Usage: java ConnectFour.EngineBenchmark [results.json]
+ */
+public class EngineBenchmark {
+    // Positions are the columns played since the empty board, player_1 first
+    private static final String[][] CORPUS = {
+            { "opening", "", "33", "1562", "454354" },
+            { "midgame", "12534265", "43444653234505", "2500264641130113", "122456154540060060" },
+            { "endgame", "0113500125203206555214130264", "124561102253664220550200111353",
+                    "46564362545640353412554022106600" } };
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    static final int SEARCH_DEPTH = 8;
+    static final int GAME_DEPTH = 4;
+    private static final int GAMES_PER_ROUND = 20;
+    static final int TABLE_MEGABYTES = 16;
+    // Every searched move of ConnectFour takes its whole time limit
+    private static final int CONNECT_FOUR_WARMUP_GAMES = 1;
+    private static final int CONNECT_FOUR_MEASURED_GAMES = 2;
+    private static final int ALLOCATION_SKILL = 50;
+
+    private static long sink; // Keeps results alive so the JIT can't drop the benchmarked code
+    private static final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    private final List<String> results = new ArrayList<>();
+    private final List<String> failures = new ArrayList<>();
+
+    /**
+     * Runs every benchmark and writes the results.
+     *
+     * @param args Optional path of the JSON file to write.
+     * @throws IOException If the results can't be written.
+     */
+    public static void main(String[] args) throws IOException {
+        EngineBenchmark benchmark = new EngineBenchmark();
+        for (String[] phase : CORPUS) {
+            String name = phase[0];
+            Position[] positions = corpus(name);
+            benchmark.winChecks(name, positions);
+            benchmark.dropsToRow(name, positions);
+            benchmark.search(name, positions);
+            benchmark.timeToDepth(name, positions);
+        }
+        benchmark.fullGames();
+        benchmark.moveAllocations();
+        benchmark.connectFourMoveAllocations();
+
+        String json = benchmark.toJson();
+        if (args.length > 0)
+            Files.write(Paths.get(args[0]), json.getBytes(StandardCharsets.UTF_8));
+        else
+            System.out.println(json);
+        if (!benchmark.failures.isEmpty()) {
+            for (String failure : benchmark.failures)
+                System.err.println(failure);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Builds the positions of a phase of the corpus.
+     *
+     * @param phase "opening", "midgame" or "endgame".
+     * @return the positions
+     * @throws IllegalArgumentException If there is no such phase.
+     */
+    static Position[] corpus(String phase) {
+        for (String[] moves : CORPUS) {
+            if (moves[0].equals(phase)) {
+                Position[] positions = new Position[moves.length - 1];
+                for (int i = 1; i < moves.length; i++)
+                    positions[i - 1] = parse(moves[i]);
+                return positions;
+            }
+        }
+        throw new IllegalArgumentException("Unknown phase " + phase);
+    }
+
+    /**
+     * Builds a position from the columns played since the empty board.
+     *
+     * @param moves Columns, one digit per move, player_1 first.
+     * @return the position
+     */
+    static Position parse(String moves) {
+        Position position = new Position();
+        for (int i = 0; i < moves.length(); i++)
+            position.play(moves.charAt(i) - '0', i % 2 == 0 ? Position.PLAYER_1 : Position.PLAYER_2);
+        return position;
+    }
+
+    /**
+     * Measures the full board and the last move win checks, after every possible
+     * drop in every position.
+     *
+     * @param phase     Name of the corpus.
+     * @param positions Positions of the corpus.
+     */
+    private void winChecks(String phase, Position[] positions) {
+        int repeats = 200_000;
+        double fullBoard = measure(() -> {
+            long found = 0;
+            for (int r = 0; r < repeats; r++) {
+                for (Position position : positions) {
+                    for (int col = 0; col < Position.COLUMN_COUNT; col++) {
+                        if (position.canPlay(col)) {
+                            position.play(col, position.getMoveCount() % 2);
+                            if (position.hasWon(Position.PLAYER_1) || position.hasWon(Position.PLAYER_2))
+                                found++;
+                            position.undo(col);
+                        }
+                    }
+                }
+            }
+            sink += found;
+        }, repeats * countDrops(positions));
+        record("checkWinner", phase, fullBoard, "ops/s");
+
+        double lastMove = measure(() -> {
+            long found = 0;
+            for (int r = 0; r < repeats; r++) {
+                for (Position position : positions) {
+                    for (int col = 0; col < Position.COLUMN_COUNT; col++) {
+                        if (position.canPlay(col)) {
+                            position.play(col, position.getMoveCount() % 2);
+                            if (position.lastMoveWon(col))
+                                found++;
+                            position.undo(col);
+                        }
+                    }
+                }
+            }
+            sink += found;
+        }, repeats * countDrops(positions));
+        record("lastMoveWon", phase, lastMove, "ops/s");
+    }
+
+    /**
+     * Measures the lookup of the row a piece lands in.
+     *
+     * @param phase     Name of the corpus.
+     * @param positions Positions of the corpus.
+     */
+    private void dropsToRow(String phase, Position[] positions) {
+        int repeats = 1_000_000;
+        double opsPerSecond = measure(() -> {
+            long rows = 0;
+            for (int r = 0; r < repeats; r++) {
+                for (Position position : positions) {
+                    for (int col = 0; col < Position.COLUMN_COUNT; col++)
+                        rows += position.dropsToRow(col);
+                }
+            }
+            sink += rows;
+        }, (long) repeats * positions.length * Position.COLUMN_COUNT);
+        record("dropsToRow", phase, opsPerSecond, "ops/s");
+    }
+
+    /**
+     * Measures the minimax search of every position at a fixed depth, starting
+     * from an empty transposition table.
+     *
+     * @param phase     Name of the corpus.
+     * @param positions Positions of the corpus.
+     */
+    private void search(String phase, Position[] positions) {
+        TranspositionTable table = new TranspositionTable(TABLE_MEGABYTES);
+        AlphaBetaSearch searcher = new AlphaBetaSearch(table, new MoveOrdering(true, false, false, true),
+                Evaluation.DEFAULT);
+        long nodes = 0, searchNanos = 0, allocatedBytes = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            for (Position position : positions) {
+                // Clearing the table isn't part of the search, it stays out of the timing
+                table.clear();
+                searcher.newSearch();
+                searcher.setLimits(SEARCH_DEPTH, Long.MAX_VALUE);
+                long allocatedBefore = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+                long startTime = System.nanoTime();
+                sink += searchRoot(searcher, position);
+                long endTime = System.nanoTime();
+                long allocatedAfter = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+                if (round >= WARMUP_ROUNDS) {
+                    nodes += searcher.getNodeCount();
+                    searchNanos += endTime - startTime;
+                    allocatedBytes += allocatedAfter - allocatedBefore;
+                }
+            }
+        }
+        record("search.depth" + SEARCH_DEPTH, phase, nodes * 1e9 / searchNanos, "nodes/s");
+        record("search.depth" + SEARCH_DEPTH + ".alloc", phase,
+                (double) allocatedBytes / (MEASURED_ROUNDS * positions.length), "B/op");
+    }
+
+    /**
+     * Measures how long an iterative deepening search takes to complete every
+     * depth, averaged over the positions.
+     *
+     * @param phase     Name of the corpus.
+     * @param positions Positions of the corpus.
+     */
+    private void timeToDepth(String phase, Position[] positions) {
+        TranspositionTable table = new TranspositionTable(TABLE_MEGABYTES);
+        AlphaBetaSearch searcher = new AlphaBetaSearch(table, new MoveOrdering(true, false, false, true),
+                Evaluation.DEFAULT);
+        long[] depthNanos = new long[SEARCH_DEPTH + 1];
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            for (Position position : positions) {
+                table.clear();
+                searcher.newSearch();
+                long startTime = System.nanoTime();
+                for (int depth = 0; depth <= SEARCH_DEPTH; depth++) {
+                    searcher.setLimits(depth, Long.MAX_VALUE);
+                    sink += searchRoot(searcher, position);
+                    if (round >= WARMUP_ROUNDS)
+                        depthNanos[depth] += System.nanoTime() - startTime;
+                }
+            }
+        }
+        for (int depth = 0; depth <= SEARCH_DEPTH; depth++) {
+            record("timeToDepth." + depth, phase, depthNanos[depth] / 1e6 / (MEASURED_ROUNDS * positions.length),
+                    "ms");
+        }
+    }
+
+    /**
+     * Measures full headless games between two Bots searching to a shallow depth.
+     */
+    private void fullGames() {
+        BotPlayer redBot = new BotConfig("Red", 100, GAME_DEPTH, TABLE_MEGABYTES).createPlayer();
+        BotPlayer yellowBot = new BotConfig("Yellow", 100, GAME_DEPTH, TABLE_MEGABYTES).createPlayer();
+        double gamesPerSecond = measure(() -> {
+            for (int game = 0; game < GAMES_PER_ROUND; game++) {
+                // Every round plays the same games
+                redBot.newGame(2 * game);
+                yellowBot.newGame(2 * game + 1);
+                Position position = new Position();
+                int player = Position.PLAYER_1;
+                while (true) {
+                    int col = (player == Position.PLAYER_1 ? redBot : yellowBot).chooseMove(position, player);
+                    position.play(col, player);
+                    if (position.lastMoveWon(col) || position.isFull())
+                        break;
+                    player = 1 - player;
+                }
+                sink += position.getMoveCount();
+            }
+        }, GAMES_PER_ROUND);
+        record("fullGame.depth" + GAME_DEPTH, "all", gamesPerSecond, "games/s");
+    }
+
+    /**
+     * Measures the bytes allocated while Bots pick their moves, from the skill
+     * roll to the root selection, with both random and searched moves.
+     */
+    private void moveAllocations() {
+        BotPlayer redBot = new BotConfig("Red", ALLOCATION_SKILL, GAME_DEPTH, TABLE_MEGABYTES).createPlayer();
+        BotPlayer yellowBot = new BotConfig("Yellow", ALLOCATION_SKILL, GAME_DEPTH, TABLE_MEGABYTES)
+                .createPlayer();
+        long allocatedBytes = 0, moves = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            for (int game = 0; game < GAMES_PER_ROUND; game++) {
+                redBot.newGame(2 * game);
+                yellowBot.newGame(2 * game + 1);
+                Position position = new Position();
+                int player = Position.PLAYER_1;
+                while (true) {
+                    BotPlayer bot = player == Position.PLAYER_1 ? redBot : yellowBot;
+                    long allocatedBefore = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+                    int col = bot.chooseMove(position, player);
+                    long allocatedAfter = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+                    if (round >= WARMUP_ROUNDS) {
+                        allocatedBytes += allocatedAfter - allocatedBefore;
+                        moves++;
+                    }
+                    position.play(col, player);
+                    if (position.lastMoveWon(col) || position.isFull())
+                        break;
+                    player = 1 - player;
+                }
+            }
+        }
+        record("move.depth" + GAME_DEPTH + ".alloc", "all", (double) allocatedBytes / moves, "B/op");
+        requireNoAllocation("BotPlayer", allocatedBytes, moves);
+    }
+
+    /**
+     * Measures the bytes allocated while {@link ConnectFour}'s own Bot plays both
+     * sides, from the skill roll to the random move or the root selection of its
+     * time limited search.
+     */
+    private void connectFourMoveAllocations() {
+        ConnectFour connectFour = new ConnectFour();
+        connectFour.setDisplayExtraInfo(false);
+        long allocatedBytes = 0, moves = 0;
+        for (int game = 0; game < CONNECT_FOUR_WARMUP_GAMES + CONNECT_FOUR_MEASURED_GAMES; game++) {
+            connectFour.resetGame();
+            while (true) {
+                long allocatedBefore = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+                connectFour.humanPlayerSimulator(ALLOCATION_SKILL);
+                long allocatedAfter = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+                if (game >= CONNECT_FOUR_WARMUP_GAMES) {
+                    allocatedBytes += allocatedAfter - allocatedBefore;
+                    moves++;
+                }
+                if (connectFour.checkLastMove() != null)
+                    break;
+            }
+        }
+        record("connectFour.move.alloc", "all", (double) allocatedBytes / moves, "B/op");
+        requireNoAllocation("ConnectFour", allocatedBytes, moves);
+    }
+
+    /**
+     * Fails the run when moves allocated once warmed up.
+     *
+     * @param player         Name of the move selection measured.
+     * @param allocatedBytes Bytes allocated by the measured moves.
+     * @param moves          Number of measured moves.
+     */
+    private void requireNoAllocation(String player, long allocatedBytes, long moves) {
+        if (allocatedBytes > 0)
+            failures.add(String.format(Locale.ROOT, "%s allocated %d bytes in %d moves, %.3f B/op instead of 0",
+                    player, allocatedBytes, moves, (double) allocatedBytes / moves));
+    }
+
+    /**
+     * Scores every column of a position, like the Bots do.
+     *
+     * @param searcher Search to use, with its limits set.
+     * @param position Position to search, left unchanged.
+     * @return the sum of the scores
+     */
+    static int searchRoot(AlphaBetaSearch searcher, Position position) {
+        int player = position.getMoveCount() % 2;
+        int total = 0;
+        for (int col = 0; col < Position.COLUMN_COUNT; col++) {
+            if (position.canPlay(col)) {
+                position.play(col, player);
+                total += searcher.minimaxAlphaBetaPruning(position, col, 0, Integer.MIN_VALUE, Integer.MAX_VALUE,
+                        player == Position.PLAYER_1);
+                position.undo(col);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Counts the playable columns of the positions.
+     *
+     * @param positions Positions of a corpus.
+     * @return the number of possible drops
+     */
+    private static int countDrops(Position[] positions) {
+        int drops = 0;
+        for (Position position : positions) {
+            for (int col = 0; col < Position.COLUMN_COUNT; col++) {
+                if (position.canPlay(col))
+                    drops++;
+            }
+        }
+        return drops;
+    }
+
+    /**
+     * Runs a benchmark and computes its throughput.
+     *
+     * @param round      One round of the benchmark.
+     * @param operations Number of operations done by a round.
+     * @return the operations per second of the measured rounds
+     */
+    private static double measure(Runnable round, long operations) {
+        return operations / measureSeconds(round);
+    }
+
+    /**
+     * Runs the warm-up rounds, then the measured ones.
+     *
+     * @param round One round of the benchmark.
+     * @return the average time of a measured round, in seconds
+     */
+    private static double measureSeconds(Runnable round) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            round.run();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++)
+            round.run();
+        return (System.nanoTime() - startTime) / 1e9 / MEASURED_ROUNDS;
+    }
+
+    /**
+     * Adds a result to the report.
+     *
+     * @param benchmark Name of the benchmark.
+     * @param phase     Name of the corpus.
+     * @param score     Measured value.
+     * @param unit      Unit of the value.
+     */
+    private void record(String benchmark, String phase, double score, String unit) {
+        results.add(String.format(Locale.ROOT,
+                "  {\"benchmark\": \"%s\", \"phase\": \"%s\", \"score\": %.3f, \"unit\": \"%s\"}", benchmark, phase,
+                score, unit));
+    }
+
+    /**
+     * Formats the report.
+     *
+     * @return the results as a JSON array
+     */
+    private String toJson() {
+        return "[\n" + String.join(",\n", results) + "\n]";
+    }
+}
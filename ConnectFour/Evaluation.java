@@ -0,0 +1,362 @@
+package ConnectFour;
+
+/**
+ * Static evaluation of the positions where the minimax search stops before the
+ * end of the game, from the point of view of player_2 like the search: positive
+ * scores mean player_2 advantage.
+ * <p>
+ * Every line of four cells that the opponent hasn't blocked is counted, once it
+ * holds two pieces (open two) or three pieces (open three) of a player. The
+ * empty cells that would complete a line of four are threats, which are worth
+ * more on the rows that favour their owner: player_1 gets the odd rows
+ * (1, 3, 5 from the bottom) and player_2 the even rows, since filling the
+ * board from there on leaves those rows to them. Pieces in the center column,
+ * which belongs to the most lines, are worth a little more.
+ * <p>
+ * The evaluation only uses the bitboards of the position, never allocates and
+ * holds no state, so it can be shared by every search.
+ * <p>
+ * Other geometries are scored the same way, with lines one and two pieces short
+ * of a win in place of the open threes and twos. Boards of up to 128 bits count
+ * the pieces of every line with bit-sliced counters, a few times slower than
+ * the half adders of the standard board. Larger boards go through the lines
+ * precomputed by their {@link Geometry} one at a time, counting the threats
+ * once per line, which is slower still.
+ */
+public class Evaluation {
+    public static final Evaluation DEFAULT = new Evaluation(2, 8, 30, 10, 3);
+    // Ignores everything, so only wins, losses and ties are scored
+    public static final Evaluation NONE = new Evaluation(0, 0, 0, 0, 0);
+
+    private static final int STRIDE = Position.ROW_COUNT + 1;
+    private static final long BOARD = boardMask();
+    // Cells on the rows 1, 3 and 5 from the bottom, and on the rows 2, 4 and 6
+    private static final long ODD_ROWS = rowsMask(0);
+    private static final long EVEN_ROWS = rowsMask(1);
+    private static final long CENTER_COLUMN = ((1L << Position.ROW_COUNT) - 1) << (Position.COLUMN_COUNT / 2 * STRIDE);
+    // Steps between the cells of a line: vertical, diagonal down, horizontal, diagonal up
+    private static final int[] DIRECTIONS = { 1, STRIDE - 1, STRIDE, STRIDE + 1 };
+    // For every direction, the cells where a line of four starts within the board
+    private static final long[] LINE_STARTS = lineStarts();
+
+    private final int openTwoWeight;
+    private final int openThreeWeight;
+    private final int goodThreatWeight;
+    private final int threatWeight;
+    private final int centerWeight;
+
+    /**
+     * Constructs a new evaluation. Scores must stay far from
+     * {@link AlphaBetaSearch#WIN_SCORE}, so weights are best kept under 100.
+     *
+     * @param openTwoWeight    Score of a line holding two pieces of a player and
+     *                         two empty cells.
+     * @param openThreeWeight  Score of a line holding three pieces of a player and
+     *                         one empty cell.
+     * @param goodThreatWeight Score of a threat on a row that favours its owner.
+     * @param threatWeight     Score of a threat on any other row.
+     * @param centerWeight     Score of a piece in the center column.
+     */
+    public Evaluation(int openTwoWeight, int openThreeWeight, int goodThreatWeight, int threatWeight,
+            int centerWeight) {
+        this.openTwoWeight = openTwoWeight;
+        this.openThreeWeight = openThreeWeight;
+        this.goodThreatWeight = goodThreatWeight;
+        this.threatWeight = threatWeight;
+        this.centerWeight = centerWeight;
+    }
+
+    /**
+     * Scores a position where the game isn't over.
+     *
+     * @param position State of the board.
+     * @return the score, positive for a player_2 advantage
+     */
+    public int evaluate(Position position) {
+        Geometry geometry = position.getGeometry();
+        if (!geometry.isStandard()) {
+            if (geometry.getWordCount() > 2)
+                return evaluateLines(position);
+            return scoreAnyGeometry(position, Position.PLAYER_2, 1, geometry)
+                    - scoreAnyGeometry(position, Position.PLAYER_1, 0, geometry);
+        }
+        long player1 = position.getPieces(Position.PLAYER_1);
+        long player2 = position.getPieces(Position.PLAYER_2);
+        long mask = player1 | player2;
+        return score(player2, player1, mask, EVEN_ROWS) - score(player1, player2, mask, ODD_ROWS);
+    }
+
+    /**
+     * Scores the pieces of a player.
+     *
+     * @param pieces    Pieces of the player.
+     * @param opponent  Pieces of the opponent.
+     * @param mask      Every piece on the board.
+     * @param goodRows  Rows where the player's threats are worth the most.
+     * @return the score of the player, never negative
+     */
+    private int score(long pieces, long opponent, long mask, long goodRows) {
+        int openTwos = 0, openThrees = 0;
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            int step = DIRECTIONS[i];
+            // Lines without any opponent piece
+            long open = LINE_STARTS[i]
+                    & ~(opponent | opponent >>> step | opponent >>> (2 * step) | opponent >>> (3 * step));
+            if (open == 0)
+                continue;
+            // Count the player's pieces in every line with two half adders
+            long a = pieces, b = pieces >>> step, c = pieces >>> (2 * step), d = pieces >>> (3 * step);
+            long sumAB = a ^ b, carryAB = a & b;
+            long sumCD = c ^ d, carryCD = c & d;
+            long two = (sumAB & sumCD) | (carryAB & ~sumCD & ~carryCD) | (carryCD & ~sumAB & ~carryAB);
+            long three = (sumAB & carryCD) | (carryAB & sumCD);
+            openTwos += Long.bitCount(open & two);
+            openThrees += Long.bitCount(open & three);
+        }
+
+        long threats = Solver.winningCells(pieces, mask);
+        int goodThreats = Long.bitCount(threats & goodRows);
+        int otherThreats = Long.bitCount(threats) - goodThreats;
+
+        return openTwoWeight * openTwos + openThreeWeight * openThrees + goodThreatWeight * goodThreats
+                + threatWeight * otherThreats + centerWeight * Long.bitCount(pieces & CENTER_COLUMN);
+    }
+
+    /**
+     * Scores the pieces of a player on a board of any geometry up to 128 bits,
+     * held in a low and a high word. The pieces of every line are added up with
+     * a 4-bit counter per cell, every bit of the counter in its own bitboard.
+     *
+     * @param position    State of the board.
+     * @param player      Player to score.
+     * @param firstHeight Height of the lowest row where the player's threats are
+     *                    worth the most, 0 or 1.
+     * @param geometry    Geometry of the board, of one or two words.
+     * @return the score of the player, never negative
+     */
+    private int scoreAnyGeometry(Position position, int player, int firstHeight, Geometry geometry) {
+        int wordCount = geometry.getWordCount();
+        long low = position.getPiecesWord(player, 0);
+        long high = wordCount > 1 ? position.getPiecesWord(player, 1) : 0;
+        long opponentLow = position.getPiecesWord(1 - player, 0);
+        long opponentHigh = wordCount > 1 ? position.getPiecesWord(1 - player, 1) : 0;
+        int connectLength = geometry.getConnectLength();
+        int openTwos = 0, openThrees = 0;
+        long threatsLow = 0, threatsHigh = 0;
+        for (int d = 0; d < geometry.getDirectionCount(); d++) {
+            int step = geometry.getDirectionStep(d);
+            long threeLow = 0, threeHigh = 0;
+            for (int word = 0; word < wordCount; word++) {
+                long open = geometry.getLineStarts(d, word);
+                long count0 = 0, count1 = 0, count2 = 0, count3 = 0;
+                for (int i = 0; i < connectLength && open != 0; i++) {
+                    open &= ~shiftedDown(opponentLow, opponentHigh, i * step, word);
+                    long carry = shiftedDown(low, high, i * step, word);
+                    long nextCarry = count0 & carry;
+                    count0 ^= carry;
+                    carry = nextCarry;
+                    nextCarry = count1 & carry;
+                    count1 ^= carry;
+                    carry = nextCarry;
+                    nextCarry = count2 & carry;
+                    count2 ^= carry;
+                    count3 ^= nextCarry;
+                }
+                if (open == 0)
+                    continue;
+                long three = open & countEquals(count0, count1, count2, count3, connectLength - 1);
+                openThrees += Long.bitCount(three);
+                // Lines without any piece aren't twos when two pieces win
+                if (connectLength > 2)
+                    openTwos += Long.bitCount(open & countEquals(count0, count1, count2, count3, connectLength - 2));
+                if (word == 0)
+                    threeLow = three;
+                else
+                    threeHigh = three;
+            }
+            // The empty cell of every line one piece short
+            for (int i = 0; i < connectLength; i++) {
+                threatsLow |= shiftedUp(threeLow, threeHigh, i * step, 0);
+                threatsHigh |= shiftedUp(threeLow, threeHigh, i * step, 1);
+            }
+        }
+        threatsLow &= ~(low | opponentLow);
+        threatsHigh &= ~(high | opponentHigh);
+        int threatCount = Long.bitCount(threatsLow) + Long.bitCount(threatsHigh);
+        int goodThreats = Long.bitCount(threatsLow & geometry.getAlternateRowsMask(firstHeight, 0))
+                + Long.bitCount(threatsHigh & geometry.getAlternateRowsMask(firstHeight, 1));
+        int centerPieces = Long.bitCount(low & geometry.getCenterMask(0))
+                + Long.bitCount(high & geometry.getCenterMask(1));
+
+        return openTwoWeight * openTwos + openThreeWeight * openThrees + goodThreatWeight * goodThreats
+                + threatWeight * (threatCount - goodThreats) + centerWeight * centerPieces;
+    }
+
+    /**
+     * Shifts a 128-bit bitboard towards its lowest bit.
+     *
+     * @param low   Low word of the bitboard.
+     * @param high  High word of the bitboard.
+     * @param shift Number of bits to shift by, from 0 to 127.
+     * @param word  Word of the result to return, 0 for the low one.
+     * @return the word of the shifted bitboard
+     */
+    private static long shiftedDown(long low, long high, int shift, int word) {
+        if (shift >= Long.SIZE)
+            return word == 0 ? high >>> (shift - Long.SIZE) : 0;
+        if (word == 1)
+            return high >>> shift;
+        return shift == 0 ? low : low >>> shift | high << (Long.SIZE - shift);
+    }
+
+    /**
+     * Shifts a 128-bit bitboard towards its highest bit.
+     *
+     * @param low   Low word of the bitboard.
+     * @param high  High word of the bitboard.
+     * @param shift Number of bits to shift by, from 0 to 127.
+     * @param word  Word of the result to return, 0 for the low one.
+     * @return the word of the shifted bitboard
+     */
+    private static long shiftedUp(long low, long high, int shift, int word) {
+        if (shift >= Long.SIZE)
+            return word == 0 ? 0 : low << (shift - Long.SIZE);
+        if (word == 0)
+            return low << shift;
+        return shift == 0 ? high : high << shift | low >>> (Long.SIZE - shift);
+    }
+
+    /**
+     * Finds the cells whose bit-sliced counter holds a given value.
+     *
+     * @param count0 Lowest bit of the counters.
+     * @param count1 Second bit of the counters.
+     * @param count2 Third bit of the counters.
+     * @param count3 Highest bit of the counters.
+     * @param value  Value to look for, from 0 to 15.
+     * @return the bitboard of the cells
+     */
+    private static long countEquals(long count0, long count1, long count2, long count3, int value) {
+        return ((value & 1) != 0 ? count0 : ~count0) & ((value & 2) != 0 ? count1 : ~count1)
+                & ((value & 4) != 0 ? count2 : ~count2) & ((value & 8) != 0 ? count3 : ~count3);
+    }
+
+    /**
+     * Scores a position of any geometry, line after line.
+     *
+     * @param position State of the board.
+     * @return the score, positive for a player_2 advantage
+     */
+    private int evaluateLines(Position position) {
+        Geometry geometry = position.getGeometry();
+        int connectLength = geometry.getConnectLength();
+        int score = 0;
+        for (int line = 0; line < geometry.getLineCount(); line++) {
+            int player1Count = 0, player2Count = 0;
+            for (int word = 0; word < geometry.getWordCount(); word++) {
+                long lineWord = geometry.getLineWord(line, word);
+                player1Count += Long.bitCount(position.getPiecesWord(Position.PLAYER_1, word) & lineWord);
+                player2Count += Long.bitCount(position.getPiecesWord(Position.PLAYER_2, word) & lineWord);
+            }
+            // Lines blocked by the opponent, or still empty
+            if ((player1Count > 0) == (player2Count > 0))
+                continue;
+            int count = player1Count + player2Count;
+            int lineScore;
+            if (count == connectLength - 1)
+                lineScore = openThreeWeight + threatScore(position, line, player2Count > 0);
+            else if (count == connectLength - 2)
+                lineScore = openTwoWeight;
+            else
+                continue;
+            score += player2Count > 0 ? lineScore : -lineScore;
+        }
+
+        // The center column, or both center columns of an even width
+        int columnCount = geometry.getColumnCount();
+        for (int col = (columnCount - 1) / 2; col <= columnCount / 2; col++) {
+            for (int height = 0; height < geometry.getRowCount(); height++) {
+                int bit = col * geometry.getStride() + height;
+                if (position.isSet(Position.PLAYER_1, bit))
+                    score -= centerWeight;
+                else if (position.isSet(Position.PLAYER_2, bit))
+                    score += centerWeight;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Scores the empty cell of a line one piece short of a win.
+     *
+     * @param position State of the board.
+     * @param line     Index of the line in the geometry.
+     * @param player2  true if the line is player_2's.
+     * @return the score of the threat, never negative
+     */
+    private int threatScore(Position position, int line, boolean player2) {
+        Geometry geometry = position.getGeometry();
+        for (int i = 0; i < geometry.getConnectLength(); i++) {
+            int bit = geometry.getLineBit(line, i);
+            if (position.isSet(Position.PLAYER_1, bit) || position.isSet(Position.PLAYER_2, bit))
+                continue;
+            // player_1 gets the odd rows from the bottom, which start at height 0
+            boolean oddRow = bit % geometry.getStride() % 2 == 0;
+            return oddRow != player2 ? goodThreatWeight : threatWeight;
+        }
+        return 0;
+    }
+
+    /**
+     * Describes the weights in reports.
+     *
+     * @return the weights of the evaluation
+     */
+    public String toString() {
+        return "twos " + openTwoWeight + ", threes " + openThreeWeight + ", threats " + goodThreatWeight + "/"
+                + threatWeight + ", center " + centerWeight;
+    }
+
+    /**
+     * Builds the mask of every cell of the board, without the spare bits.
+     *
+     * @return the mask
+     */
+    private static long boardMask() {
+        long mask = 0;
+        for (int col = 0; col < Position.COLUMN_COUNT; col++)
+            mask |= ((1L << Position.ROW_COUNT) - 1) << (col * STRIDE);
+        return mask;
+    }
+
+    /**
+     * Builds the mask of every other row.
+     *
+     * @param firstHeight 0 for the odd rows, 1 for the even rows.
+     * @return the mask
+     */
+    private static long rowsMask(int firstHeight) {
+        long mask = 0;
+        for (int col = 0; col < Position.COLUMN_COUNT; col++) {
+            for (int height = firstHeight; height < Position.ROW_COUNT; height += 2)
+                mask |= 1L << (col * STRIDE + height);
+        }
+        return mask;
+    }
+
+    /**
+     * Finds, for every direction, the cells where a line of four cells starts
+     * without leaving the board. The spare bit on top of every column stops the
+     * lines that would wrap.
+     *
+     * @return the masks, in the order of {@link #DIRECTIONS}
+     */
+    private static long[] lineStarts() {
+        long[] starts = new long[DIRECTIONS.length];
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            int step = DIRECTIONS[i];
+            starts[i] = BOARD & BOARD >>> step & BOARD >>> (2 * step) & BOARD >>> (3 * step);
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,267 @@
+package ConnectFour;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replays recorded games and grades every move of the Bots against the
+ * {@link Solver}: a mistake is a move scoring less than the best column, a
+ * blunder one that throws away a win or a draw. The games are streamed from the
+ * file by a pool of threads, each with its own solver, so any number of games
+ * is analyzed in constant memory.
+ * <p>
+ * Early positions can take the solver minutes, so only the moves made with at
+ * least a given number of pieces on the board are graded, unless an opening
+ * book covers the earlier ones.
+ * <p>
+ * Usage: java ConnectFour.GameAnalysis games-file [min-ply] [threads] [book-file]
+ */
+public class GameAnalysis {
+    private static final int DEFAULT_MIN_PLY = 16;
+    private static final int SOLVER_TABLE_MEGABYTES = 64;
+    private static final int MAX_PLY = Geometry.MAX_CELL_COUNT;
+
+    private final int minPly;
+    private final OpeningBook openingBook;
+    private long games;
+    private final long[][] positions = new long[2][MAX_PLY];
+    private final long[][] mistakes = new long[2][MAX_PLY];
+    private final long[][] blunders = new long[2][MAX_PLY];
+
+    /**
+     * Constructs empty statistics.
+     *
+     * @param minPly      Fewest pieces on the board of a graded move.
+     * @param openingBook Book helping the solver, or null.
+     */
+    public GameAnalysis(int minPly, OpeningBook openingBook) {
+        this.minPly = minPly;
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * Analyzes the games of a file.
+     *
+     * @param args The record file, then optionally the fewest pieces of a graded
+     *             move, the number of threads and an opening book.
+     * @throws IOException          If the files can't be read.
+     * @throws InterruptedException If interrupted while analyzing.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: java ConnectFour.GameAnalysis games-file [min-ply] [threads] [book-file]");
+            return;
+        }
+        int minPly = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MIN_PLY;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        OpeningBook openingBook = args.length > 3 ? OpeningBook.open(Paths.get(args[3])) : null;
+        try (GameRecordReader reader = new GameRecordReader(Paths.get(args[0]))) {
+            if (!reader.getGeometry().isStandard()) {
+                System.out.println("The solver only grades games on the standard board, not " + reader.getGeometry());
+                return;
+            }
+            long startTime = System.nanoTime();
+            GameAnalysis analysis = new GameAnalysis(minPly, openingBook);
+            analysis.run(reader, threads);
+            System.out.println("Seed " + reader.getSeed() + ", analyzed in "
+                    + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+            System.out.println(analysis.toString(reader.getBot(0), reader.getBot(1)));
+        }
+    }
+
+    /**
+     * Grades every game of a file on a pool of threads, adding them to these
+     * statistics.
+     *
+     * @param reader  File to read the games from, shared by the threads.
+     * @param threads Number of games analyzed at the same time.
+     * @throws InterruptedException If interrupted while analyzing.
+     */
+    public void run(GameRecordReader reader, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<GameAnalysis>> workers = new ArrayList<>();
+            for (int worker = 0; worker < threads; worker++)
+                workers.add(pool.submit(() -> analyzeGames(reader)));
+            for (Future<GameAnalysis> worker : workers)
+                add(worker.get());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Analyzing the games failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Grades games until the file runs out, with a solver owned by the calling
+     * thread.
+     *
+     * @param reader File to read the games from, shared by the threads.
+     * @return the statistics of the games analyzed by the calling thread
+     */
+    private GameAnalysis analyzeGames(GameRecordReader reader) {
+        GameAnalysis result = new GameAnalysis(minPly, openingBook);
+        Solver solver = new Solver(SOLVER_TABLE_MEGABYTES);
+        solver.setOpeningBook(openingBook);
+        GameRecord record = new GameRecord();
+        Position position = new Position(reader.getGeometry());
+        int[] scores = new int[Geometry.MAX_COLUMN_COUNT];
+        while (true) {
+            try {
+                synchronized (reader) {
+                    if (!reader.next(record))
+                        return result;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            result.analyzeGame(record, position, solver, scores);
+        }
+    }
+
+    /**
+     * Replays a game and grades its moves.
+     *
+     * @param record   The game.
+     * @param position Empty board to replay the game on, emptied again once done.
+     * @param solver   Solver owned by the calling thread.
+     * @param scores   Buffer receiving the scores of every column.
+     */
+    private void analyzeGame(GameRecord record, Position position, Solver solver, int[] scores) {
+        games++;
+        for (int ply = 0; ply < record.getMoveCount(); ply++) {
+            int player = (ply % 2 == 0) ? Position.PLAYER_1 : Position.PLAYER_2;
+            int col = record.getMove(ply);
+            if (!position.canPlay(col))
+                throw new IllegalStateException("Game " + record.getGame() + " plays column " + col
+                        + " at ply " + ply + ", which is full");
+            if (ply >= minPly || (openingBook != null && ply < openingBook.getMaxPly()))
+                grade(record.botOf(ply), ply, position, player, col, solver, scores);
+            position.play(col, player);
+        }
+        for (int ply = record.getMoveCount() - 1; ply >= 0; ply--)
+            position.undo(record.getMove(ply));
+    }
+
+    /**
+     * Grades a move against the best column.
+     *
+     * @param bot      0 for the first Bot, 1 for the second one.
+     * @param ply      Number of pieces on the board.
+     * @param position Board before the move, left unchanged.
+     * @param player   Player about to move.
+     * @param col      Column played.
+     * @param solver   Solver owned by the calling thread.
+     * @param scores   Buffer receiving the scores of every column.
+     */
+    private void grade(int bot, int ply, Position position, int player, int col, Solver solver, int[] scores) {
+        solver.analyze(position, player, scores);
+        int best = Integer.MIN_VALUE;
+        for (int c = 0; c < position.getColumnCount(); c++) {
+            if (position.canPlay(c))
+                best = Math.max(best, scores[c]);
+        }
+        positions[bot][ply]++;
+        if (scores[col] < best)
+            mistakes[bot][ply]++;
+        if (Integer.signum(scores[col]) < Integer.signum(best))
+            blunders[bot][ply]++;
+    }
+
+    /**
+     * Adds other statistics to these ones.
+     *
+     * @param other Statistics to add.
+     */
+    private void add(GameAnalysis other) {
+        games += other.games;
+        for (int bot = 0; bot < 2; bot++) {
+            for (int ply = 0; ply < MAX_PLY; ply++) {
+                positions[bot][ply] += other.positions[bot][ply];
+                mistakes[bot][ply] += other.mistakes[bot][ply];
+                blunders[bot][ply] += other.blunders[bot][ply];
+            }
+        }
+    }
+
+    /**
+     * Gets the number of games analyzed.
+     *
+     * @return the number of games
+     */
+    public long getGameCount() {
+        return games;
+    }
+
+    /**
+     * Gets the share of a Bot's graded moves that scored less than the best
+     * column.
+     *
+     * @param bot 0 for the first Bot, 1 for the second one.
+     * @return the mistake rate, between 0 and 1
+     */
+    public double getMistakeRate(int bot) {
+        return rate(mistakes[bot], positions[bot]);
+    }
+
+    /**
+     * Gets the share of a Bot's graded moves that threw away a win or a draw.
+     *
+     * @param bot 0 for the first Bot, 1 for the second one.
+     * @return the blunder rate, between 0 and 1
+     */
+    public double getBlunderRate(int bot) {
+        return rate(blunders[bot], positions[bot]);
+    }
+
+    /**
+     * Divides the totals of two counters.
+     *
+     * @param counts Counted moves, by ply.
+     * @param totals Graded moves, by ply.
+     * @return the share of the graded moves that were counted
+     */
+    private static double rate(long[] counts, long[] totals) {
+        long count = 0, total = 0;
+        for (int ply = 0; ply < MAX_PLY; ply++) {
+            count += counts[ply];
+            total += totals[ply];
+        }
+        return (double) count / Math.max(1, total);
+    }
+
+    /**
+     * Print a summary of the statistics
+     *
+     * @param firstBot  Settings of the first Bot.
+     * @param secondBot Settings of the second Bot.
+     * @return the error rates of both Bots, overall and by ply
+     */
+    public String toString(String firstBot, String secondBot) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(games + " games\n");
+        for (int bot = 0; bot < 2; bot++) {
+            long graded = 0;
+            for (int ply = 0; ply < MAX_PLY; ply++)
+                graded += positions[bot][ply];
+            sb.append(String.format("%s: %d moves graded, mistakes %.1f%%, blunders %.1f%%%n",
+                    bot == 0 ? firstBot : secondBot, graded, 100 * getMistakeRate(bot), 100 * getBlunderRate(bot)));
+        }
+        sb.append("Ply: moves, mistakes, blunders of both Bots");
+        for (int ply = 0; ply < MAX_PLY; ply++) {
+            if (positions[0][ply] + positions[1][ply] == 0)
+                continue;
+            sb.append("\n" + ply + ":");
+            for (int bot = 0; bot < 2; bot++)
+                sb.append(" " + positions[bot][ply] + " " + mistakes[bot][ply] + " " + blunders[bot][ply]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,108 @@
+package ConnectFour;
+
+/**
+ * The moves of a single recorded game, and the nodes searched by both Bots to
+ * play them, see {@link GameRecordWriter}. A record is reused from one game
+ * to the next by {@link GameRecordReader#next}, so reading a file doesn't
+ * allocate.
+ */
+public class GameRecord {
+    private int game;
+    private boolean firstBotStarts;
+    private int moveCount;
+    private final int[] moves = new int[Geometry.MAX_CELL_COUNT];
+    private final long[] nodeCounts = new long[2];
+
+    /**
+     * Overwrites the record with another game.
+     *
+     * @param game           Index of the game in its tournament.
+     * @param firstBotStarts Whether the first Bot played first, as player_1.
+     * @param moveCount      Number of moves of the game.
+     */
+    void set(int game, boolean firstBotStarts, int moveCount) {
+        this.game = game;
+        this.firstBotStarts = firstBotStarts;
+        this.moveCount = moveCount;
+    }
+
+    /**
+     * Sets a move of the game.
+     *
+     * @param ply    Number of pieces on the board before the move.
+     * @param column Column played.
+     */
+    void setMove(int ply, int column) {
+        moves[ply] = column;
+    }
+
+    /**
+     * Sets the number of nodes both Bots searched during the game.
+     *
+     * @param firstBotNodes  Nodes of the first Bot, -1 if they weren't recorded.
+     * @param secondBotNodes Nodes of the second Bot, -1 if they weren't recorded.
+     */
+    void setNodeCounts(long firstBotNodes, long secondBotNodes) {
+        nodeCounts[0] = firstBotNodes;
+        nodeCounts[1] = secondBotNodes;
+    }
+
+    /**
+     * Gets the index of the game in its tournament, which with the tournament's
+     * seed is enough to play the game again.
+     *
+     * @return the index of the game
+     */
+    public int getGame() {
+        return game;
+    }
+
+    /**
+     * Checks which Bot played first.
+     *
+     * @return true if the first Bot played first, as player_1
+     */
+    public boolean isFirstBotStarting() {
+        return firstBotStarts;
+    }
+
+    /**
+     * Gets the number of moves of the game.
+     *
+     * @return the number of moves
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Gets a move of the game.
+     *
+     * @param ply Number of pieces on the board before the move.
+     * @return the column played
+     */
+    public int getMove(int ply) {
+        return moves[ply];
+    }
+
+    /**
+     * Gets the number of nodes a Bot searched during the game, or of playouts for
+     * Bots that don't search nodes, see {@link Bot#getNodeCount()}.
+     *
+     * @param bot 0 for the first Bot, 1 for the second one.
+     * @return the number of nodes, -1 if the file doesn't record them
+     */
+    public long getNodeCount(int bot) {
+        return nodeCounts[bot];
+    }
+
+    /**
+     * Checks which Bot played a move.
+     *
+     * @param ply Number of pieces on the board before the move.
+     * @return 0 for the first Bot, 1 for the second one
+     */
+    public int botOf(int ply) {
+        return (ply % 2 == 0) == firstBotStarts ? 0 : 1;
+    }
+}
@@ -0,0 +1,154 @@
+package ConnectFour;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams the games of a file written by a {@link GameRecordWriter}, one game
+ * at a time through a fixed buffer, so files of any size are read in constant
+ * memory. A reader must only be used by one thread at a time.
+ */
+public class GameRecordReader implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final int version;
+    private final Geometry geometry;
+    private final long seed;
+    private final String firstBot;
+    private final String secondBot;
+    private boolean endOfFile;
+
+    /**
+     * Opens a record file and reads its header.
+     *
+     * @param file Path of the file to read.
+     * @throws IOException If the file can't be read, or isn't a record file.
+     */
+    public GameRecordReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            buffer.flip();
+            fill();
+            if (buffer.remaining() < 2 * Integer.BYTES || buffer.getInt() != GameRecordWriter.MAGIC)
+                throw new IOException("Not a game record file");
+            version = buffer.getInt();
+            if (version < GameRecordWriter.VERSION_WITHOUT_NODES || version > GameRecordWriter.VERSION)
+                throw new IOException("Unsupported game record version " + version);
+            geometry = new Geometry(buffer.get(), buffer.get(), buffer.get());
+            seed = buffer.getLong();
+            firstBot = getString();
+            secondBot = getString();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Corrupted game record file", e);
+        }
+    }
+
+    /**
+     * Reads a string of the header, its length first.
+     *
+     * @return the string
+     */
+    private String getString() {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the size of the board the games were played on.
+     *
+     * @return the geometry of the board
+     */
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Gets the seed of the tournament the games come from.
+     *
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Gets the settings of a Bot.
+     *
+     * @param bot 0 for the first Bot, 1 for the second one.
+     * @return the settings, as described by the Bot's factory
+     */
+    public String getBot(int bot) {
+        return bot == 0 ? firstBot : secondBot;
+    }
+
+    /**
+     * Reads the next game.
+     *
+     * @param record Receives the game.
+     * @return false if there are no more games
+     * @throws IOException If the file can't be read, or ends in the middle of a
+     *                     game.
+     */
+    public boolean next(GameRecord record) throws IOException {
+        if (buffer.remaining() < GameRecordWriter.MAX_RECORD_BYTES)
+            fill();
+        if (!buffer.hasRemaining())
+            return false;
+        if (buffer.remaining() < Integer.BYTES + 2)
+            throw new IOException("Truncated game record");
+        int game = buffer.getInt();
+        boolean firstBotStarts = (buffer.get() & GameRecordWriter.FIRST_BOT_STARTS) != 0;
+        int moveCount = buffer.get() & 0xFF;
+        int nodeBytes = version > GameRecordWriter.VERSION_WITHOUT_NODES ? 2 * Long.BYTES : 0;
+        if (moveCount > geometry.getCellCount() || buffer.remaining() < nodeBytes + (moveCount + 1) / 2)
+            throw new IOException("Truncated game record");
+        record.set(game, firstBotStarts, moveCount);
+        if (nodeBytes > 0)
+            record.setNodeCounts(buffer.getLong(), buffer.getLong());
+        else
+            record.setNodeCounts(-1, -1);
+        for (int ply = 0; ply < moveCount; ply += 2) {
+            int moves = buffer.get();
+            record.setMove(ply, moves & 0xF);
+            if (ply + 1 < moveCount)
+                record.setMove(ply + 1, (moves >>> 4) & 0xF);
+        }
+        return true;
+    }
+
+    /**
+     * Tops the buffer up from the file, keeping what wasn't read yet.
+     *
+     * @throws IOException If the file can't be read.
+     */
+    private void fill() throws IOException {
+        if (endOfFile)
+            return;
+        buffer.compact();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                endOfFile = true;
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException If the file can't be closed.
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,153 @@
+package ConnectFour;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records the games of a {@link Tournament} to a compact binary file, to be
+ * replayed and analyzed later by a {@link GameRecordReader}:
+ *
+ * <pre>
+ * int    magic, "C4GR"
+ * int    version
+ * byte   columns, rows and connect length of the board
+ * long   seed of the tournament
+ * short  length, then the UTF-8 settings of the first Bot
+ * short  length, then the UTF-8 settings of the second Bot
+ * then, for every game, in the order they ended:
+ * int    index of the game in the tournament
+ * byte   flags, 1 if the first Bot played first
+ * byte   number of moves
+ * long   nodes searched by the first Bot during the game
+ * long   nodes searched by the second Bot during the game
+ * byte[] moves, two columns per byte, the first one in the low nibble
+ * </pre>
+ *
+ * A game takes 22 bytes plus one per two moves. The node counts let
+ * {@link Tournament#replay} check that a later build searches the very same
+ * trees; files of version 1 have none. Records are gathered in a direct
+ * buffer and written to the file channel once it is full. The writer is thread
+ * safe, every game being written at once.
+ */
+public class GameRecordWriter implements Closeable {
+    static final int MAGIC = 0x43344752;
+    static final int VERSION = 2;
+    // Oldest version still read, from before the node counts
+    static final int VERSION_WITHOUT_NODES = 1;
+    static final int FIRST_BOT_STARTS = 1;
+    // Index, flags, number of moves, node counts and the moves of the longest game
+    static final int MAX_RECORD_BYTES = Integer.BYTES + 2 + 2 * Long.BYTES + (Geometry.MAX_CELL_COUNT + 1) / 2;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int MAX_NAME_BYTES = 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private long gameCount;
+
+    /**
+     * Creates a record file, replacing it if it exists, and writes its header.
+     *
+     * @param file        Path of the file to write.
+     * @param geometry    Size of the board the games are played on.
+     * @param firstBot    Settings of the first Bot.
+     * @param secondBot   Settings of the second Bot.
+     * @param seed        Seed of the tournament.
+     * @throws IOException If the file can't be created.
+     */
+    public GameRecordWriter(Path file, Geometry geometry, String firstBot, String secondBot, long seed)
+            throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.put((byte) geometry.getColumnCount());
+        buffer.put((byte) geometry.getRowCount());
+        buffer.put((byte) geometry.getConnectLength());
+        buffer.putLong(seed);
+        putString(firstBot);
+        putString(secondBot);
+    }
+
+    /**
+     * Adds a string to the header, its length first.
+     *
+     * @param value String to write, cut to its first 1024 bytes.
+     */
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_NAME_BYTES);
+        buffer.putShort((short) length);
+        buffer.put(bytes, 0, length);
+    }
+
+    /**
+     * Records a game.
+     *
+     * @param game           Index of the game in the tournament.
+     * @param firstBotStarts Whether the first Bot played first, as player_1.
+     * @param moves          Columns played, in order.
+     * @param moveCount      Number of moves of the game.
+     * @param nodeCounts     Nodes searched during the game by the first Bot, then
+     *                       the second one.
+     */
+    public synchronized void write(int game, boolean firstBotStarts, int[] moves, int moveCount,
+            long[] nodeCounts) {
+        if (buffer.remaining() < MAX_RECORD_BYTES)
+            flush();
+        buffer.putInt(game);
+        buffer.put((byte) (firstBotStarts ? FIRST_BOT_STARTS : 0));
+        buffer.put((byte) moveCount);
+        buffer.putLong(nodeCounts[0]);
+        buffer.putLong(nodeCounts[1]);
+        for (int ply = 0; ply < moveCount; ply += 2) {
+            int second = ply + 1 < moveCount ? moves[ply + 1] : 0;
+            buffer.put((byte) (moves[ply] | second << 4));
+        }
+        gameCount++;
+    }
+
+    /**
+     * Gets the number of games recorded so far.
+     *
+     * @return the number of games
+     */
+    public synchronized long getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * Writes the buffered records to the file.
+     */
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the remaining records and closes the file.
+     *
+     * @throws IOException If the records can't be written.
+     */
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            channel.close();
+        }
+    }
+}
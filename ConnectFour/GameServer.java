@@ -0,0 +1,592 @@
+package ConnectFour;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Hosts games over TCP on the loopback interface, for many clients at once:
+ * games against the Bot, and games between two clients. Every connection is a
+ * session served by its own thread, which spends most of its time blocked on
+ * the socket. The Bot's moves are searched by an {@link Engine} on a separate
+ * pool of as many threads as the engine has searches, fed by a bounded queue:
+ * a burst of slow searches delays the Bot's answers, but never the sessions
+ * reading and answering their clients. Once the queue is full, the sessions
+ * asking for more searches wait for room in it.
+ * <p>
+ * Lines to a client are queued, and written to its socket by a thread of the
+ * session's own, so a session never waits on another client's socket, even
+ * while it holds a lock. A client that stops reading is disconnected once its
+ * queue is full.
+ * <p>
+ * Sessions would best be virtual threads, but those need Java 21: they are
+ * platform threads with a small stack, so a few thousand of them fit in memory.
+ * <p>
+ * The protocol is made of text lines, with columns numbered from 0. The client
+ * sends:
+ *
+ * <pre>
+ * BOT [FIRST|SECOND]  starts a game against the Bot, the client playing first by default
+ * HUMAN room          starts a game against the next client joining the same room
+ * MOVE column         plays a column
+ * QUIT                ends the session
+ * </pre>
+ *
+ * and the server answers:
+ *
+ * <pre>
+ * WELCOME columns rows connect  once connected, with the size of the board
+ * WAITING room                  nobody else is in the room yet
+ * START FIRST|SECOND            a game starts, the client playing first or second
+ * OK                            the client's move was played
+ * MOVED column                  the opponent played a column
+ * END WIN|LOSS|DRAW|ABANDONED   the game is over, another one can be started
+ * ERROR message                 the last line was refused
+ * </pre>
+ *
+ * Usage: java ConnectFour.GameServer [port] [search-threads] [depth] [time-ms]
+ * [book-file]
+ */
+public class GameServer implements Closeable {
+    public static final int DEFAULT_PORT = 4004;
+
+    private static final int DEFAULT_DEPTH = 8;
+    private static final long DEFAULT_TIME_MILLIS = 50;
+    private static final int TABLE_MEGABYTES = 64;
+    private static final int BACKLOG = 1024;
+    private static final int MAX_QUEUED_SEARCHES = 1024;
+    private static final long SESSION_STACK_BYTES = 256 * 1024;
+    private static final int MAX_QUEUED_LINES = 256;
+    private static final long LINGER_MILLIS = 5000;
+    // Queued after the session's last line, no other line is empty
+    private static final String END_OF_LINES = "";
+
+    private final ServerSocket serverSocket;
+    private final Engine engine;
+    private final SearchBudget budget;
+    private final ThreadPoolExecutor searchPool;
+    private final ExecutorService sessionPool;
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    // Sessions waiting for an opponent, by room
+    private final Map<String, Session> waitingRooms = new HashMap<>();
+
+    /**
+     * Constructs a new server, listening on the loopback interface.
+     *
+     * @param port          Port to listen on, 0 for any free port.
+     * @param searchThreads Number of the Bot's moves searched at the same time,
+     *                      usually the number of processors.
+     * @param budget        Limits of the search of every Bot move.
+     * @param openingBook   Book the Bot plays from while it covers the
+     *                      position, or null to always search.
+     * @throws IOException If the port can't be listened on.
+     */
+    public GameServer(int port, int searchThreads, SearchBudget budget, OpeningBook openingBook)
+            throws IOException {
+        engine = new Engine(searchThreads, TABLE_MEGABYTES, Evaluation.DEFAULT, openingBook);
+        this.budget = budget;
+        // A full queue makes the session wait for room rather than drop the move
+        searchPool = new ThreadPoolExecutor(searchThreads, searchThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_SEARCHES), runnable -> newThread(runnable, "search", 0),
+                (runnable, executor) -> {
+                    try {
+                        if (executor.isShutdown())
+                            throw new RejectedExecutionException("The server is closed");
+                        executor.getQueue().put(runnable);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while queuing a search", e);
+                    }
+                });
+        sessionPool = Executors.newCachedThreadPool(
+                runnable -> newThread(runnable, "session", SESSION_STACK_BYTES));
+        serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Starts a server and serves its clients until the process is killed.
+     *
+     * @param args Optionally the port, the number of search threads, the depth
+     *             and time limit of the Bot's searches and an opening book.
+     * @throws IOException If the port can't be listened on, or the book read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && !Character.isDigit(args[0].charAt(0))) {
+            System.out.println("Usage: java ConnectFour.GameServer [port] [search-threads] [depth] [time-ms]"
+                    + " [book-file]");
+            return;
+        }
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_DEPTH;
+        long timeMillis = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_TIME_MILLIS;
+        OpeningBook openingBook = args.length > 4 ? OpeningBook.open(Paths.get(args[4])) : null;
+        SearchBudget budget = new SearchBudget(depth, timeMillis);
+        try (GameServer server = new GameServer(port, threads, budget, openingBook)) {
+            System.out.println("Listening on localhost:" + server.getPort() + ", " + threads
+                    + " search threads, " + budget);
+            server.run();
+        }
+    }
+
+    /**
+     * Creates a daemon thread, so that the server's threads never keep the JVM
+     * alive.
+     *
+     * @param runnable   Task of the thread.
+     * @param name       Name of the thread.
+     * @param stackBytes Size of the thread's stack, 0 for the default size.
+     * @return the thread, not started
+     */
+    private static Thread newThread(Runnable runnable, String name, long stackBytes) {
+        Thread thread = new Thread(null, runnable, name, stackBytes);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Gets the number of connected clients.
+     *
+     * @return the number of sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Gets the engine searching the Bot's moves, for its statistics.
+     *
+     * @return the engine
+     */
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Accepts clients, each served by a new session, until the server is closed.
+     *
+     * @throws IOException If the server can't accept clients anymore.
+     */
+    public void run() throws IOException {
+        while (true) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed())
+                    return;
+                throw e;
+            }
+            try {
+                socket.setTcpNoDelay(true);
+                sessionPool.execute(new Session(socket));
+            } catch (IOException | RejectedExecutionException e) {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * Stops accepting clients, disconnects the connected ones and releases the
+     * threads.
+     *
+     * @throws IOException If the server's socket can't be closed.
+     */
+    public void close() throws IOException {
+        try {
+            serverSocket.close();
+        } finally {
+            for (Session session : sessions)
+                session.disconnect();
+            sessionPool.shutdownNow();
+            searchPool.shutdownNow();
+            engine.close();
+        }
+    }
+
+    /**
+     * A game between two clients, or a client and the Bot. Its state is guarded
+     * by the match itself.
+     */
+    private static class Match {
+        private final Position position = new Position();
+        // Client of every player, null for the Bot
+        private final Session[] players = new Session[2];
+        private int turn = Position.PLAYER_1;
+        private boolean over;
+
+        /**
+         * Plays a column and tells the clients if it ended the game. Must be
+         * called with the match locked.
+         *
+         * @param col    Column to play, which can be played.
+         * @param player Player making the move, the one whose turn it is.
+         */
+        void play(int col, int player) {
+            position.play(col, player);
+            if (position.lastMoveWon(col))
+                end(player);
+            else if (position.isFull())
+                end(Position.EMPTY);
+            else
+                turn = 1 - player;
+        }
+
+        /**
+         * Ends the game and tells the clients how it went. Must be called with the
+         * match locked.
+         *
+         * @param winner Player who won, or {@link Position#EMPTY} for a draw.
+         */
+        private void end(int winner) {
+            over = true;
+            for (int player = 0; player < 2; player++) {
+                if (players[player] != null)
+                    players[player].send("END " + (winner == Position.EMPTY ? "DRAW"
+                            : winner == player ? "WIN" : "LOSS"));
+            }
+        }
+    }
+
+    /**
+     * Connection of a client, read by the session's thread and written by a
+     * second one. The match and room are only set under the lock of the waiting
+     * rooms, also by the opponent's session when it pairs with this one.
+     */
+    private class Session implements Runnable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final BufferedWriter out;
+        private final BlockingQueue<String> outbound = new ArrayBlockingQueue<>(MAX_QUEUED_LINES);
+        private volatile Match match;
+        private volatile int player;
+        private String waitingRoom;
+
+        /**
+         * Constructs a new session.
+         *
+         * @param socket Connection to the client.
+         * @throws IOException If the connection's streams can't be opened.
+         */
+        Session(Socket socket) throws IOException {
+            this.socket = socket;
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Serves the client until it quits or disconnects.
+         */
+        public void run() {
+            sessions.add(this);
+            Future<?> writer;
+            try {
+                writer = sessionPool.submit(this::writeLines);
+            } catch (RejectedExecutionException e) {
+                sessions.remove(this);
+                disconnect();
+                return;
+            }
+            try {
+                Geometry geometry = Geometry.STANDARD;
+                send("WELCOME " + geometry.getColumnCount() + " " + geometry.getRowCount() + " "
+                        + geometry.getConnectLength());
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.isBlank())
+                        continue;
+                    try {
+                        if (!handle(line.trim().split("\\s+")))
+                            break;
+                    } catch (IllegalArgumentException e) {
+                        send("ERROR " + e.getMessage());
+                    }
+                }
+            } catch (IOException | InterruptedException | RejectedExecutionException e) {
+                // The client went away, or the server is closing
+            } finally {
+                leave();
+                sessions.remove(this);
+                // Gives the writer some time to send the last lines
+                if (outbound.offer(END_OF_LINES)) {
+                    try {
+                        writer.get(LINGER_MILLIS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException | TimeoutException e) {
+                        // Hung up on anyway
+                    }
+                }
+                disconnect();
+            }
+        }
+
+        /**
+         * Writes the queued lines to the client, until the last one. Lines are
+         * flushed once the queue is empty.
+         */
+        private void writeLines() {
+            try {
+                while (true) {
+                    String line = outbound.take();
+                    if (line.isEmpty())
+                        break;
+                    out.write(line);
+                    out.write('\n');
+                    if (outbound.isEmpty())
+                        out.flush();
+                }
+                out.flush();
+            } catch (IOException | InterruptedException e) {
+                // The client went away, or the server is closing: the reads fail too
+                disconnect();
+            }
+        }
+
+        /**
+         * Carries out a command of the client.
+         *
+         * @param words The command, then its arguments.
+         * @return false if the client quits
+         * @throws InterruptedException If interrupted while waiting for the Bot.
+         */
+        private boolean handle(String[] words) throws InterruptedException {
+            switch (words[0].toUpperCase(Locale.ROOT)) {
+                case "BOT":
+                    String side = words.length > 1 ? words[1].toUpperCase(Locale.ROOT) : "FIRST";
+                    if (!side.equals("FIRST") && !side.equals("SECOND"))
+                        throw new IllegalArgumentException("Expected FIRST or SECOND, not " + words[1]);
+                    startBotGame(side.equals("FIRST"));
+                    return true;
+                case "HUMAN":
+                    if (words.length < 2)
+                        throw new IllegalArgumentException("Missing room");
+                    joinRoom(words[1]);
+                    return true;
+                case "MOVE":
+                    if (words.length < 2)
+                        throw new IllegalArgumentException("Missing column");
+                    play(parseColumn(words[1]));
+                    return true;
+                case "QUIT":
+                    return false;
+                default:
+                    throw new IllegalArgumentException("Unknown command " + words[0]);
+            }
+        }
+
+        /**
+         * Reads a column sent by the client.
+         *
+         * @param word The column, as sent.
+         * @return the column, not checked against the board
+         */
+        private int parseColumn(String word) {
+            try {
+                return Integer.parseInt(word);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid column " + word);
+            }
+        }
+
+        /**
+         * Checks that the client is free to start a game. Must be called with the
+         * waiting rooms locked, so that no other session pairs with this one
+         * before the new game is set.
+         */
+        private void requireIdle() {
+            if (waitingRoom != null)
+                throw new IllegalArgumentException("Already waiting in room " + waitingRoom);
+            Match current = match;
+            if (current != null) {
+                synchronized (current) {
+                    if (!current.over)
+                        throw new IllegalArgumentException("A game is already running");
+                }
+            }
+        }
+
+        /**
+         * Starts a game against the Bot, which moves right away if it plays first.
+         *
+         * @param clientFirst true if the client plays first.
+         * @throws InterruptedException If interrupted while waiting for the Bot.
+         */
+        private void startBotGame(boolean clientFirst) throws InterruptedException {
+            Match newMatch = new Match();
+            synchronized (waitingRooms) {
+                requireIdle();
+                player = clientFirst ? Position.PLAYER_1 : Position.PLAYER_2;
+                newMatch.players[player] = this;
+                match = newMatch;
+            }
+            send("START " + (clientFirst ? "FIRST" : "SECOND"));
+            if (!clientFirst)
+                botMove(newMatch);
+        }
+
+        /**
+         * Joins a room, starting a game with the client already waiting there, or
+         * waiting for the next one. The client waiting the longest plays first.
+         *
+         * @param room Name of the room.
+         */
+        private void joinRoom(String room) {
+            synchronized (waitingRooms) {
+                requireIdle();
+                Session opponent = waitingRooms.remove(room);
+                if (opponent == null) {
+                    waitingRooms.put(room, this);
+                    waitingRoom = room;
+                    send("WAITING " + room);
+                    return;
+                }
+                opponent.waitingRoom = null;
+                Match newMatch = new Match();
+                newMatch.players[Position.PLAYER_1] = opponent;
+                newMatch.players[Position.PLAYER_2] = this;
+                opponent.player = Position.PLAYER_1;
+                opponent.match = newMatch;
+                player = Position.PLAYER_2;
+                match = newMatch;
+                // Both starts are sent before either client can move, or leave
+                send("START SECOND");
+                opponent.send("START FIRST");
+            }
+        }
+
+        /**
+         * Plays the client's move, then the Bot's answer in a game against the Bot.
+         *
+         * @param col Column to play.
+         * @throws InterruptedException If interrupted while waiting for the Bot.
+         */
+        private void play(int col) throws InterruptedException {
+            Match current = match;
+            if (current == null)
+                throw new IllegalArgumentException("No game is running");
+            boolean botToMove;
+            synchronized (current) {
+                if (current.over)
+                    throw new IllegalArgumentException("The game is over");
+                if (current.turn != player)
+                    throw new IllegalArgumentException("Not your turn");
+                if (col < 0 || col >= current.position.getColumnCount() || !current.position.canPlay(col))
+                    throw new IllegalArgumentException("Column " + col + " can't be played");
+                Session opponent = current.players[1 - player];
+                send("OK");
+                if (opponent != null)
+                    opponent.send("MOVED " + col);
+                current.play(col, player);
+                botToMove = !current.over && opponent == null;
+            }
+            if (botToMove)
+                botMove(current);
+        }
+
+        /**
+         * Searches the Bot's move on the search pool and plays it. Only the
+         * client's session plays in a game against the Bot, so the board doesn't
+         * change during the search.
+         *
+         * @param current Game against the Bot, with the Bot to move.
+         * @throws InterruptedException If interrupted while waiting for the search.
+         */
+        private void botMove(Match current) throws InterruptedException {
+            int botPlayer = 1 - player;
+            Future<Integer> search = searchPool.submit(() -> engine.bestMove(current.position, botPlayer, budget));
+            int col;
+            try {
+                col = search.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("The Bot's search failed", e.getCause());
+            } finally {
+                search.cancel(true);
+            }
+            synchronized (current) {
+                send("MOVED " + col);
+                current.play(col, botPlayer);
+            }
+        }
+
+        /**
+         * Leaves the waiting room or the running game, whose opponent wins by
+         * default.
+         */
+        private void leave() {
+            synchronized (waitingRooms) {
+                if (waitingRoom != null) {
+                    waitingRooms.remove(waitingRoom, this);
+                    waitingRoom = null;
+                }
+                Match current = match;
+                if (current == null)
+                    return;
+                synchronized (current) {
+                    if (current.over)
+                        return;
+                    current.over = true;
+                    Session opponent = current.players[1 - player];
+                    if (opponent != null)
+                        opponent.send("END ABANDONED");
+                }
+            }
+        }
+
+        /**
+         * Queues a line for the client, without ever waiting, so it can be called
+         * with locks held. A client whose queue is full has stopped reading, and
+         * is disconnected.
+         *
+         * @param line Line to send, without its end, not empty.
+         */
+        void send(String line) {
+            if (!outbound.offer(line))
+                disconnect();
+        }
+
+        /**
+         * Closes the connection, which ends the session.
+         */
+        void disconnect() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+}
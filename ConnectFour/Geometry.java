@@ -0,0 +1,444 @@
+package ConnectFour;
+
+import java.util.Random;
+
+/**
+ * Size of the board and length of the lines that win, e.g. 7 columns by 6 rows
+ * and four in a row for the standard game. Everything that only depends on the
+ * geometry is computed once here and shared by every {@link Position} of that
+ * geometry:
+ * <ul>
+ * <li>the bitboard layout: column after column, with one spare bit on top of
+ * every column, held in as many 64-bit words as needed</li>
+ * <li>every winning line, as a bitboard and as a list of cells, along with the
+ * lines going through every cell</li>
+ * <li>for boards fitting a single word, the star of cells around every cell
+ * that a winning line through it can reach</li>
+ * <li>the Zobrist keys of every cell</li>
+ * </ul>
+ * Columns are limited to {@link #MAX_COLUMN_COUNT} since the transposition
+ * table packs a column in 4 bits, rows to {@link #MAX_ROW_COUNT}.
+ */
+public class Geometry {
+    public static final int MAX_COLUMN_COUNT = TranspositionTable.NO_MOVE;
+    public static final int MAX_ROW_COUNT = 15;
+    public static final int MAX_CELL_COUNT = MAX_COLUMN_COUNT * MAX_ROW_COUNT;
+
+    // Steps between the cells of a line, as columns and rows: horizontal,
+    // vertical, diagonal up, diagonal down
+    private static final int[][] DIRECTIONS = { { 1, 0 }, { 0, 1 }, { 1, 1 }, { 1, -1 } };
+
+    public static final Geometry STANDARD = new Geometry(Position.COLUMN_COUNT, Position.ROW_COUNT, 4);
+
+    private final int columnCount;
+    private final int rowCount;
+    private final int connectLength;
+    private final int stride;
+    private final int bitCount;
+    private final int wordCount;
+
+    private final int lineCount;
+    // Line after line, the words of its bitboard and the bits of its cells
+    private final long[] lineWords;
+    private final int[] lineBits;
+    // For every bit, the lines going through it are cellLines[cellLineStart[bit]]
+    // to cellLines[cellLineStart[bit + 1] - 1]
+    private final int[] cellLineStart;
+    private final int[] cellLines;
+    private final long[] linesThroughCell;
+    // Bitboards of up to 128 bits, as their low and high words: for every
+    // direction, the cells where a line starts, its lowest bit; every other row
+    // from the bottom row or the next one; the bottom row; the center column
+    // or columns
+    private final long[][] lineStarts = new long[DIRECTIONS.length][2];
+    private final long[][] alternateRows = new long[2][2];
+    private final long[] bottomRow = new long[2];
+    private final long[] centerMask = new long[2];
+    private final long[][] zobristKeys;
+
+    /**
+     * Constructs a new geometry.
+     *
+     * @param columnCount   Number of columns, from 1 to {@link #MAX_COLUMN_COUNT}.
+     * @param rowCount      Number of rows, from 1 to {@link #MAX_ROW_COUNT}.
+     * @param connectLength Number of aligned pieces that win, from 2 to the
+     *                      longest side of the board.
+     * @throws IllegalArgumentException If a dimension is out of its bounds.
+     */
+    public Geometry(int columnCount, int rowCount, int connectLength) {
+        if (columnCount < 1 || columnCount > MAX_COLUMN_COUNT)
+            throw new IllegalArgumentException("Column count must be between 1 and " + MAX_COLUMN_COUNT);
+        if (rowCount < 1 || rowCount > MAX_ROW_COUNT)
+            throw new IllegalArgumentException("Row count must be between 1 and " + MAX_ROW_COUNT);
+        if (connectLength < 2 || connectLength > Math.max(columnCount, rowCount))
+            throw new IllegalArgumentException("Connect length must be between 2 and the longest side");
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        this.connectLength = connectLength;
+        stride = rowCount + 1;
+        bitCount = columnCount * stride;
+        wordCount = (bitCount + Long.SIZE - 1) / Long.SIZE;
+
+        lineCount = countLines();
+        lineWords = new long[lineCount * wordCount];
+        lineBits = new int[lineCount * connectLength];
+        cellLineStart = new int[bitCount + 1];
+        cellLines = new int[lineCount * connectLength];
+        buildLines();
+        linesThroughCell = wordCount == 1 ? buildLinesThroughCells() : null;
+        if (wordCount <= 2) {
+            for (int col = 0; col < columnCount; col++) {
+                for (int height = 0; height < rowCount; height++) {
+                    int bit = col * stride + height;
+                    alternateRows[height % 2][bit / Long.SIZE] |= 1L << bit;
+                    if (height == 0)
+                        bottomRow[bit / Long.SIZE] |= 1L << bit;
+                    if (col >= (columnCount - 1) / 2 && col <= columnCount / 2)
+                        centerMask[bit / Long.SIZE] |= 1L << bit;
+                }
+            }
+        }
+        zobristKeys = buildZobristKeys(0xC0FFEE);
+    }
+
+    /**
+     * Gets the number of columns.
+     *
+     * @return the number of columns
+     */
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * Gets the number of rows.
+     *
+     * @return the number of rows
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Gets the number of aligned pieces that win the game.
+     *
+     * @return the length of a winning line
+     */
+    public int getConnectLength() {
+        return connectLength;
+    }
+
+    /**
+     * Gets the number of cells of the board.
+     *
+     * @return the number of cells, and of moves before the board is full
+     */
+    public int getCellCount() {
+        return columnCount * rowCount;
+    }
+
+    /**
+     * Gets the number of bits used by a column, including the spare bit on top.
+     *
+     * @return the stride of the columns in the bitboard
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Gets the number of 64-bit words holding a bitboard.
+     *
+     * @return 1 up to 64 bits, 2 up to 128 bits, more beyond
+     */
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Checks if this is the 7 by 6 board with four in a row, the only one that
+     * the solver, the opening book and the Monte Carlo Tree Search play on.
+     *
+     * @return true for the standard geometry
+     */
+    public boolean isStandard() {
+        return columnCount == Position.COLUMN_COUNT && rowCount == Position.ROW_COUNT && connectLength == 4;
+    }
+
+    /**
+     * Gets the number of winning lines on the board.
+     *
+     * @return the number of lines
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Gets a word of the bitboard of a winning line.
+     *
+     * @param line Index of the line.
+     * @param word Index of the word.
+     * @return the bits of the line's cells in that word
+     */
+    public long getLineWord(int line, int word) {
+        return lineWords[line * wordCount + word];
+    }
+
+    /**
+     * Gets a cell of a winning line.
+     *
+     * @param line  Index of the line.
+     * @param index Index of the cell in the line, from 0 to the connect length.
+     * @return the bit of the cell
+     */
+    public int getLineBit(int line, int index) {
+        return lineBits[line * connectLength + index];
+    }
+
+    /**
+     * Gets the index in {@link #getCellLine(int)} of the first line going through
+     * a cell. The lines of the cell end where the ones of the next bit start.
+     *
+     * @param bit Bit of the cell.
+     * @return the index of the cell's first line
+     */
+    public int getCellLineStart(int bit) {
+        return cellLineStart[bit];
+    }
+
+    /**
+     * Gets a line going through a cell, see {@link #getCellLineStart(int)}.
+     *
+     * @param index Index of the line among the lines of every cell.
+     * @return the index of the line
+     */
+    public int getCellLine(int index) {
+        return cellLines[index];
+    }
+
+    /**
+     * Gets the cells that share a winning line with a cell, on boards fitting a
+     * single word: up to connect length - 1 cells each way, along the 4
+     * directions.
+     *
+     * @param bit Bit of the cell.
+     * @return the bitboard of the cells, the cell included
+     */
+    public long getLinesThroughCell(int bit) {
+        return linesThroughCell[bit];
+    }
+
+    /**
+     * Gets the masks of {@link #getLinesThroughCell(int)} for every bit, for
+     * positions to keep at hand. The array is shared and must not be modified.
+     *
+     * @return the masks, indexed by bit position, or null beyond a single word
+     */
+    long[] getLinesThroughCells() {
+        return linesThroughCell;
+    }
+
+    /**
+     * Gets the number of directions a line can take.
+     *
+     * @return 4: horizontal, vertical and both diagonals
+     */
+    public int getDirectionCount() {
+        return DIRECTIONS.length;
+    }
+
+    /**
+     * Gets the shift between two neighbouring cells of a line, from its lowest
+     * bit to its highest.
+     *
+     * @param direction Index of the direction.
+     * @return the number of bits between the cells
+     */
+    public int getDirectionStep(int direction) {
+        return Math.abs(DIRECTIONS[direction][0] * stride + DIRECTIONS[direction][1]);
+    }
+
+    /**
+     * Gets the lowest cell of every line of a direction, on boards of up to 128
+     * bits. Shifting them up by the step of the direction, up to connect length -
+     * 1 times, gives every cell of the lines.
+     *
+     * @param direction Index of the direction.
+     * @param word      0 for the low word, 1 for the high word.
+     * @return the word of the bitboard of the lowest cells, empty if no line fits
+     */
+    public long getLineStarts(int direction, int word) {
+        return lineStarts[direction][word];
+    }
+
+    /**
+     * Gets every other row, on boards of up to 128 bits.
+     *
+     * @param firstHeight 0 for the odd rows from the bottom (1, 3, 5...), 1 for
+     *                    the even rows.
+     * @param word        0 for the low word, 1 for the high word.
+     * @return the word of the bitboard of the rows
+     */
+    public long getAlternateRowsMask(int firstHeight, int word) {
+        return alternateRows[firstHeight][word];
+    }
+
+    /**
+     * Gets the bottom cell of every column, on boards of up to 128 bits.
+     *
+     * @param word 0 for the low word, 1 for the high word.
+     * @return the word of the bitboard of the bottom row
+     */
+    public long getBottomRowMask(int word) {
+        return bottomRow[word];
+    }
+
+    /**
+     * Gets the center column, or both center columns of an even width, on boards
+     * of up to 128 bits.
+     *
+     * @param word 0 for the low word, 1 for the high word.
+     * @return the word of the bitboard of the columns
+     */
+    public long getCenterMask(int word) {
+        return centerMask[word];
+    }
+
+    /**
+     * Gets the Zobrist key of a piece.
+     *
+     * @param player Either {@link Position#PLAYER_1} or {@link Position#PLAYER_2}.
+     * @param bit    Bit of the cell holding the piece.
+     * @return the random key
+     */
+    public long getZobristKey(int player, int bit) {
+        return zobristKeys[player][bit];
+    }
+
+    /**
+     * Gets the keys of {@link #getZobristKey(int, int)}, for positions to keep at
+     * hand. The arrays are shared and must not be modified.
+     *
+     * @return the keys, indexed by player and bit position
+     */
+    long[][] getZobristKeys() {
+        return zobristKeys;
+    }
+
+    /**
+     * Checks if a cell is on the board.
+     *
+     * @param col Index of the column.
+     * @param row Index of the row, from the bottom.
+     * @return true if the cell exists
+     */
+    private boolean isOnBoard(int col, int row) {
+        return col >= 0 && col < columnCount && row >= 0 && row < rowCount;
+    }
+
+    /**
+     * Counts the winning lines, as the cells where a line fits on the board.
+     *
+     * @return the number of lines
+     */
+    private int countLines() {
+        int count = 0;
+        for (int[] direction : DIRECTIONS) {
+            for (int col = 0; col < columnCount; col++) {
+                for (int row = 0; row < rowCount; row++) {
+                    if (isOnBoard(col + (connectLength - 1) * direction[0],
+                            row + (connectLength - 1) * direction[1]))
+                        count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Fills the bitboards and the cells of the winning lines, then the lines of
+     * every cell.
+     */
+    private void buildLines() {
+        int line = 0;
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            int[] direction = DIRECTIONS[d];
+            for (int col = 0; col < columnCount; col++) {
+                for (int row = 0; row < rowCount; row++) {
+                    if (!isOnBoard(col + (connectLength - 1) * direction[0],
+                            row + (connectLength - 1) * direction[1]))
+                        continue;
+                    int start = Math.min(col * stride + row, (col + (connectLength - 1) * direction[0]) * stride
+                            + row + (connectLength - 1) * direction[1]);
+                    if (wordCount <= 2)
+                        lineStarts[d][start / Long.SIZE] |= 1L << start;
+                    for (int i = 0; i < connectLength; i++) {
+                        int bit = (col + i * direction[0]) * stride + row + i * direction[1];
+                        lineBits[line * connectLength + i] = bit;
+                        lineWords[line * wordCount + bit / Long.SIZE] |= 1L << bit;
+                        cellLineStart[bit + 1]++;
+                    }
+                    line++;
+                }
+            }
+        }
+        for (int bit = 0; bit < bitCount; bit++)
+            cellLineStart[bit + 1] += cellLineStart[bit];
+        int[] next = cellLineStart.clone();
+        for (line = 0; line < lineCount; line++) {
+            for (int i = 0; i < connectLength; i++)
+                cellLines[next[lineBits[line * connectLength + i]]++] = line;
+        }
+    }
+
+    /**
+     * Builds, for every cell of the board, the mask of the cells that share a
+     * line with it.
+     *
+     * @return the masks, indexed by bit position
+     */
+    private long[] buildLinesThroughCells() {
+        long[] masks = new long[bitCount];
+        for (int col = 0; col < columnCount; col++) {
+            for (int row = 0; row < rowCount; row++) {
+                long mask = 0;
+                for (int[] direction : DIRECTIONS) {
+                    for (int step = 1 - connectLength; step < connectLength; step++) {
+                        int c = col + step * direction[0];
+                        int r = row + step * direction[1];
+                        if (isOnBoard(c, r))
+                            mask |= 1L << (c * stride + r);
+                    }
+                }
+                masks[col * stride + row] = mask;
+            }
+        }
+        return masks;
+    }
+
+    /**
+     * Draws the random keys used by the Zobrist hash, with a fixed seed so hashes
+     * are the same from one run to the next.
+     *
+     * @param seed Seed of the random number generator.
+     * @return the keys, indexed by player and bit position
+     */
+    private long[][] buildZobristKeys(long seed) {
+        Random random = new Random(seed);
+        long[][] keys = new long[2][bitCount];
+        for (int player = 0; player < 2; player++)
+            for (int bit = 0; bit < keys[player].length; bit++)
+                keys[player][bit] = random.nextLong();
+        return keys;
+    }
+
+    /**
+     * Describes the geometry in reports.
+     *
+     * @return the size of the board and the connect length
+     */
+    public String toString() {
+        return columnCount + "x" + rowCount + ", connect " + connectLength;
+    }
+}
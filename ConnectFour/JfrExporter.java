@@ -0,0 +1,65 @@
+package ConnectFour;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Emits the metrics of every move as Java Flight Recorder events, named
+ * ConnectFour.Search. The events are only built while a recording has them
+ * enabled, e.g. with -XX:StartFlightRecording, so this exporter costs close to
+ * nothing otherwise.
+ */
+public class JfrExporter implements MetricsExporter {
+    public void export(String engine, int ply, SearchMetrics metrics) {
+        SearchEvent event = new SearchEvent();
+        if (!event.shouldCommit())
+            return;
+        event.engine = engine;
+        event.ply = ply;
+        event.nodes = metrics.getNodes();
+        event.searchTime = metrics.getNanos();
+        event.depth = metrics.getDepth();
+        event.branchingFactor = metrics.getEffectiveBranchingFactor();
+        event.firstMoveCutoffRate = metrics.getFirstMoveCutoffRate();
+        event.tableHitRate = metrics.getTableHitRate();
+        event.commit();
+    }
+
+    /**
+     * The search of a move.
+     */
+    @Name("ConnectFour.Search")
+    @Label("Search")
+    @Category("Connect Four")
+    @Description("Minimax search of a move")
+    static class SearchEvent extends Event {
+        @Label("Engine")
+        String engine;
+
+        @Label("Ply")
+        int ply;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Search Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long searchTime;
+
+        @Label("Depth")
+        double depth;
+
+        @Label("Branching Factor")
+        double branchingFactor;
+
+        @Label("First Move Cutoff Rate")
+        double firstMoveCutoffRate;
+
+        @Label("Table Hit Rate")
+        double tableHitRate;
+    }
+}
@@ -0,0 +1,39 @@
+package ConnectFour;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the metrics of every move to a file, one JSON object per line, see
+ * {@link SearchMetrics#toJson(String, int)}.
+ */
+public class JsonLinesExporter implements MetricsExporter {
+    private final BufferedWriter writer;
+
+    /**
+     * Constructs a new exporter, replacing the file if it exists.
+     *
+     * @param file Path of the file to write.
+     * @throws IOException If the file can't be created.
+     */
+    public JsonLinesExporter(Path file) throws IOException {
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    public synchronized void export(String engine, int ply, SearchMetrics metrics) {
+        try {
+            writer.write(metrics.toJson(engine, ply));
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
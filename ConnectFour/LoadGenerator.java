@@ -0,0 +1,351 @@
+package ConnectFour;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load test of a {@link GameServer} running on the same machine: opens many
+ * sessions at once, each on its own connection and thread, plays games on all
+ * of them at the same time and reports the latency of the moves. The latency
+ * of a move runs from sending it to the server's answer: the Bot's move in
+ * games against the Bot, the acknowledgement in games between two sessions,
+ * which are paired two by two in rooms of their own. Sessions play random
+ * columns.
+ * <p>
+ * Usage: java ConnectFour.LoadGenerator sessions [games-per-session]
+ * [human-percent] [port] [seed]
+ */
+public class LoadGenerator {
+    private static final int DEFAULT_GAMES = 10;
+    private static final long SESSION_STACK_BYTES = 256 * 1024;
+    private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final int port;
+    private final int gamesPerSession;
+
+    /**
+     * Constructs a new load generator.
+     *
+     * @param port            Port of the server, on the loopback interface.
+     * @param gamesPerSession Number of games played by every session.
+     */
+    public LoadGenerator(int port, int gamesPerSession) {
+        this.port = port;
+        this.gamesPerSession = gamesPerSession;
+    }
+
+    /**
+     * Runs a load test and prints the latencies.
+     *
+     * @param args The number of sessions, then optionally the number of games of
+     *             every session, the share of sessions playing each other
+     *             instead of the Bot, the port of the server and the seed.
+     * @throws InterruptedException If interrupted while playing.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: java ConnectFour.LoadGenerator sessions [games-per-session]"
+                    + " [human-percent] [port] [seed]");
+            return;
+        }
+        int sessions = Integer.parseInt(args[0]);
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_GAMES;
+        int humanPercent = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : GameServer.DEFAULT_PORT;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : System.nanoTime();
+        // Sessions playing each other come in pairs
+        int humanSessions = sessions * humanPercent / 100 & ~1;
+
+        long startTime = System.nanoTime();
+        LoadGenerator generator = new LoadGenerator(port, games);
+        List<Client> clients = generator.run(sessions, humanSessions, seed);
+        long millis = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+
+        List<long[]> botLatencies = new ArrayList<>();
+        List<long[]> humanLatencies = new ArrayList<>();
+        long moves = 0;
+        for (Client client : clients) {
+            (client.isAgainstBot() ? botLatencies : humanLatencies).add(client.getLatencies());
+            moves += client.getLatencyCount();
+        }
+        System.out.println(sessions + " sessions (" + humanSessions + " playing each other), "
+                + (long) sessions * games + " games, " + moves + " moves in " + millis + " ms, "
+                + moves * 1000 / millis + " moves/s");
+        System.out.println(summary("Bot moves", botLatencies));
+        System.out.println(summary("Client moves", humanLatencies));
+    }
+
+    /**
+     * Plays every session's games, all sessions at the same time.
+     *
+     * @param sessions      Number of sessions.
+     * @param humanSessions Number of sessions playing each other rather than the
+     *                      Bot, an even number.
+     * @param seed          Seed of the sessions' random moves.
+     * @return the sessions, with their latencies
+     * @throws InterruptedException If interrupted while playing.
+     */
+    public List<Client> run(int sessions, int humanSessions, long seed) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(sessions, runnable -> {
+            Thread thread = new Thread(null, runnable, "load", SESSION_STACK_BYTES);
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Client> clients = new ArrayList<>(sessions);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int session = 0; session < sessions; session++) {
+                Client client = new Client(session, session >= humanSessions, seed + session);
+                clients.add(client);
+                workers.add(pool.submit(() -> {
+                    client.play();
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers)
+                worker.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A session failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return clients;
+    }
+
+    /**
+     * Describes the latency distribution of some moves.
+     *
+     * @param name      Kind of the moves.
+     * @param latencies Latencies of the moves, in nanoseconds, by session.
+     * @return the number of moves, the percentiles and the worst latency
+     */
+    private static String summary(String name, List<long[]> latencies) {
+        int count = 0;
+        for (long[] session : latencies)
+            count += session.length;
+        if (count == 0)
+            return name + ": none";
+        long[] all = new long[count];
+        int offset = 0;
+        for (long[] session : latencies) {
+            System.arraycopy(session, 0, all, offset, session.length);
+            offset += session.length;
+        }
+        Arrays.sort(all);
+        StringBuilder sb = new StringBuilder(name + ": " + count + " moves");
+        for (double percentile : PERCENTILES) {
+            int index = Math.max(0, (int) Math.ceil(percentile * count) - 1);
+            sb.append(String.format(", p%s %.2f ms", percentileName(percentile), all[index] / 1e6));
+        }
+        sb.append(String.format(", max %.2f ms", all[count - 1] / 1e6));
+        return sb.toString();
+    }
+
+    /**
+     * Names a percentile, like p99 or p99.9.
+     *
+     * @param percentile The percentile, between 0 and 1.
+     * @return the percentile in percents, without trailing zeros
+     */
+    private static String percentileName(double percentile) {
+        double percents = percentile * 100;
+        return percents == Math.rint(percents) ? Integer.toString((int) percents) : Double.toString(percents);
+    }
+
+    /**
+     * A session of the load test, played by a single thread.
+     */
+    public class Client {
+        private final int session;
+        private final boolean againstBot;
+        private final SplittableRandom random;
+        private long[] latencies = new long[64];
+        private int latencyCount;
+        private Geometry geometry;
+
+        /**
+         * Constructs a new session.
+         *
+         * @param session    Index of the session. Sessions playing each other are
+         *                   paired with the next or previous one.
+         * @param againstBot true to play against the Bot.
+         * @param seed       Seed of the random moves.
+         */
+        Client(int session, boolean againstBot, long seed) {
+            this.session = session;
+            this.againstBot = againstBot;
+            random = new SplittableRandom(seed);
+        }
+
+        /**
+         * Connects to the server and plays the session's games.
+         *
+         * @throws IOException If the connection fails.
+         */
+        void play() throws IOException {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                    BufferedReader in = new BufferedReader(
+                            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    PrintWriter out = new PrintWriter(new BufferedWriter(
+                            new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)))) {
+                socket.setTcpNoDelay(true);
+                String[] welcome = expect(in, "WELCOME");
+                geometry = new Geometry(Integer.parseInt(welcome[1]), Integer.parseInt(welcome[2]),
+                        Integer.parseInt(welcome[3]));
+                for (int game = 0; game < gamesPerSession; game++) {
+                    // Both sessions of a pair go through the same rooms, one per game
+                    String command = againstBot ? "BOT " + (game % 2 == 0 ? "FIRST" : "SECOND")
+                            : "HUMAN load-" + session / 2 + "-" + game;
+                    send(out, command);
+                    playGame(in, out);
+                }
+                send(out, "QUIT");
+            }
+        }
+
+        /**
+         * Plays a game started by the last command, until the server ends it.
+         *
+         * @param in  Lines from the server.
+         * @param out Lines to the server.
+         * @throws IOException If the connection fails.
+         */
+        private void playGame(BufferedReader in, PrintWriter out) throws IOException {
+            Position position = new Position(geometry);
+            int player = Position.EMPTY;
+            long sentAt = 0;
+            while (true) {
+                String[] words = expect(in, null);
+                long now = System.nanoTime();
+                switch (words[0]) {
+                    case "WAITING":
+                        break;
+                    case "START":
+                        player = words[1].equals("FIRST") ? Position.PLAYER_1 : Position.PLAYER_2;
+                        if (player == Position.PLAYER_1)
+                            sentAt = move(position, player, out);
+                        break;
+                    case "OK":
+                        if (!againstBot)
+                            addLatency(now - sentAt);
+                        break;
+                    case "MOVED":
+                        int col = Integer.parseInt(words[1]);
+                        if (againstBot && sentAt != 0)
+                            addLatency(now - sentAt);
+                        position.play(col, 1 - player);
+                        sentAt = 0;
+                        if (!position.lastMoveWon(col) && !position.isFull())
+                            sentAt = move(position, player, out);
+                        break;
+                    case "END":
+                        return;
+                    default:
+                        throw new IllegalStateException("Session " + session + " got " + String.join(" ", words));
+                }
+            }
+        }
+
+        /**
+         * Plays a random column, on the local board and on the server.
+         *
+         * @param position Local board, with the session to move.
+         * @param player   Player of the session.
+         * @param out      Lines to the server.
+         * @return the {@link System#nanoTime()} the move was sent at
+         */
+        private long move(Position position, int player, PrintWriter out) {
+            int col;
+            do {
+                col = random.nextInt(position.getColumnCount());
+            } while (!position.canPlay(col));
+            position.play(col, player);
+            long sentAt = System.nanoTime();
+            send(out, "MOVE " + col);
+            return sentAt;
+        }
+
+        /**
+         * Reads the next line from the server.
+         *
+         * @param in      Lines from the server.
+         * @param command Expected command, or null for any.
+         * @return the words of the line
+         * @throws IOException If the connection fails, or the server closes it.
+         */
+        private String[] expect(BufferedReader in, String command) throws IOException {
+            String line = in.readLine();
+            if (line == null)
+                throw new IOException("Session " + session + " was disconnected");
+            String[] words = line.split(" ");
+            if (command != null && !words[0].equals(command))
+                throw new IllegalStateException("Session " + session + " expected " + command + ", got " + line);
+            return words;
+        }
+
+        /**
+         * Sends a line to the server.
+         *
+         * @param out  Lines to the server.
+         * @param line Line to send, without its end.
+         */
+        private void send(PrintWriter out, String line) {
+            out.print(line);
+            out.print('\n');
+            out.flush();
+        }
+
+        /**
+         * Records the latency of a move.
+         *
+         * @param nanos Time from sending the move to the server's answer.
+         */
+        private void addLatency(long nanos) {
+            if (latencyCount == latencies.length)
+                latencies = Arrays.copyOf(latencies, 2 * latencyCount);
+            latencies[latencyCount++] = nanos;
+        }
+
+        /**
+         * Checks if the session plays against the Bot.
+         *
+         * @return true against the Bot, false against another session
+         */
+        public boolean isAgainstBot() {
+            return againstBot;
+        }
+
+        /**
+         * Gets the number of moves timed.
+         *
+         * @return the number of moves
+         */
+        public int getLatencyCount() {
+            return latencyCount;
+        }
+
+        /**
+         * Gets the latencies of the timed moves.
+         *
+         * @return the latencies, in nanoseconds
+         */
+        public long[] getLatencies() {
+            return Arrays.copyOf(latencies, latencyCount);
+        }
+    }
+}
@@ -2,6 +2,6 @@ package ConnectFour;
 
 public class Main {
     public static void main(String[] args) {
-        new ConnectFour();
+        new ConnectFour().runGame();
     }
 }
\ No newline at end of file
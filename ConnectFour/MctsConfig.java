@@ -0,0 +1,115 @@
+package ConnectFour;
+
+/**
+ * Settings of a Monte Carlo Tree Search Bot, used to create as many
+ * independent {@link MctsPlayer}s as needed.
+ */
+public class MctsConfig implements BotFactory {
+    private final String name;
+    private final int skillset;
+    private final int thinkTimeMilli;
+    private final int maxPlayouts;
+    private final int threadCount;
+    private final int poolNodes;
+
+    /**
+     * Constructs a new MCTS Bot configuration. The search stops at whichever
+     * budget runs out first.
+     *
+     * @param name           Name used in reports.
+     * @param skillset       Value between 0 and 100, the likelyhood of the Bot
+     *                       searching for its move instead of playing a random
+     *                       one.
+     * @param thinkTimeMilli Time budget of every move, 0 for no time limit.
+     * @param maxPlayouts    Playout budget of every move, 0 for no playout limit.
+     * @param threadCount    Number of threads growing the tree at the same time.
+     * @param poolNodes      Number of tree nodes allocated by the Bot up front.
+     */
+    public MctsConfig(String name, int skillset, int thinkTimeMilli, int maxPlayouts, int threadCount,
+            int poolNodes) {
+        if (thinkTimeMilli <= 0 && maxPlayouts <= 0)
+            throw new IllegalArgumentException("An MCTS Bot needs a time or playout budget");
+        this.name = name;
+        this.skillset = skillset;
+        this.thinkTimeMilli = thinkTimeMilli;
+        this.maxPlayouts = maxPlayouts;
+        this.threadCount = threadCount;
+        this.poolNodes = poolNodes;
+    }
+
+    /**
+     * Creates a new Bot with these settings.
+     *
+     * @return the Bot, owned by the calling thread
+     */
+    public MctsPlayer createPlayer() {
+        return new MctsPlayer(this);
+    }
+
+    /**
+     * Gets the name used in reports.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the likelyhood, between 0 and 100, of searching instead of playing a
+     * random move.
+     *
+     * @return the skillset
+     */
+    public int getSkillset() {
+        return skillset;
+    }
+
+    /**
+     * Gets the time budget of every move.
+     *
+     * @return the budget in milliseconds, 0 for no time limit
+     */
+    public int getThinkTimeMilli() {
+        return thinkTimeMilli;
+    }
+
+    /**
+     * Gets the playout budget of every move.
+     *
+     * @return the number of playouts, 0 for no playout limit
+     */
+    public int getMaxPlayouts() {
+        return maxPlayouts;
+    }
+
+    /**
+     * Gets the number of threads growing the tree.
+     *
+     * @return the number of threads
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Gets the number of tree nodes allocated up front.
+     *
+     * @return the number of nodes
+     */
+    public int getPoolNodes() {
+        return poolNodes;
+    }
+
+    /**
+     * Describes the settings in reports.
+     *
+     * @return the name and settings of the Bot
+     */
+    public String toString() {
+        String budget = (thinkTimeMilli > 0 ? thinkTimeMilli + " ms" : "")
+                + (thinkTimeMilli > 0 && maxPlayouts > 0 ? ", " : "")
+                + (maxPlayouts > 0 ? maxPlayouts + " playouts" : "");
+        return name + " (skill " + skillset + ", MCTS " + budget + ", " + threadCount + " threads)";
+    }
+}
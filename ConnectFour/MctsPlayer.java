@@ -0,0 +1,518 @@
+package ConnectFour;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A Bot that picks moves with a Monte Carlo Tree Search, using the UCT rule to
+ * pick which branch of the tree to grow.
+ * <p>
+ * Every iteration walks down the tree, grows it by one level on the second
+ * visit of a leaf, and finishes the game with a playout: random moves, except
+ * that a player always wins when it can, blocks the opponent's immediate win,
+ * and avoids playing right below a cell where the opponent would win. The
+ * result is added to every node of the walk. The most visited column is played.
+ * <p>
+ * The nodes live in arrays allocated once, as big as the configured pool, and
+ * playouts run on two bitboards like the {@link Solver}, so growing the tree
+ * and playing out games never allocate. The subtree of the position reached
+ * after the opponent's reply is kept from one move to the next, until the pool
+ * is half full.
+ * <p>
+ * With more than one thread, the threads grow the same tree. Visits are
+ * counted on the way down and results on the way back up, so a node being
+ * searched by a thread looks like a loss to the others (virtual loss), which
+ * spreads the threads over different branches. Threads and time limits make
+ * the search depend on the machine, so a seed only plays the same game again
+ * with a single thread and a playout budget, see {@link Tournament#replay}.
+ */
+public class MctsPlayer implements Bot {
+    private static final int SIZE = Position.COLUMN_COUNT * Position.ROW_COUNT;
+    private static final int STRIDE = Position.ROW_COUNT + 1;
+    private static final int[] COLUMN_ORDER = Solver.centerFirstOrder();
+    // Weight of exploration in the UCT rule, for win rates between 0 and 1
+    private static final double EXPLORATION = 1.0;
+    // Playouts between two looks at the clock
+    private static final int CLOCK_INTERVAL = 64;
+
+    // Expansion state of a node
+    private static final int LEAF = 0;
+    private static final int EXPANDING = 1;
+    private static final int EXPANDED = 2;
+
+    // Known outcome of a node, for the player who moved into it
+    private static final byte UNKNOWN = 0;
+    private static final byte WIN = 1;
+    private static final byte TIE = 2;
+
+    private final MctsConfig config;
+    private final int capacity;
+
+    // The tree, one entry per node. The children of a node are next to each other
+    private final int[] firstChild;
+    private final byte[] childCount;
+    private final byte[] columnOf;
+    private final byte[] outcome;
+    private final AtomicIntegerArray expansion;
+    private final AtomicIntegerArray visits;
+    // Half points of the player who moved into the node: 2 per win, 1 per tie
+    private final AtomicIntegerArray points;
+    private final AtomicInteger nodesUsed = new AtomicInteger();
+
+    // The root of the tree, and the position it stands for
+    private int root;
+    private long rootCurrent;
+    private long rootMask;
+
+    private final Worker[] workers;
+    private final ExecutorService pool;
+    private final List<Future<?>> running = new ArrayList<>();
+    private final AtomicInteger playouts = new AtomicInteger();
+    private int playoutLimit;
+    private long deadline;
+    private volatile boolean stopped;
+
+    private final int[] moves = new int[Position.COLUMN_COUNT];
+    private SplittableRandom rand = new SplittableRandom();
+
+    private long nodeCount;
+    private long searchNanos;
+
+    /**
+     * Constructs a new Bot, see {@link MctsConfig#createPlayer()}.
+     *
+     * @param config Settings of the Bot.
+     */
+    MctsPlayer(MctsConfig config) {
+        this.config = config;
+        // Room for a root and its children, even once the pool is half full
+        capacity = Math.max(config.getPoolNodes(), 2 * (Position.COLUMN_COUNT + 1));
+        firstChild = new int[capacity];
+        childCount = new byte[capacity];
+        columnOf = new byte[capacity];
+        outcome = new byte[capacity];
+        expansion = new AtomicIntegerArray(capacity);
+        visits = new AtomicIntegerArray(capacity);
+        points = new AtomicIntegerArray(capacity);
+
+        workers = new Worker[Math.max(1, config.getThreadCount())];
+        for (int i = 0; i < workers.length; i++)
+            workers[i] = new Worker();
+        // The calling thread is the first worker
+        pool = workers.length > 1 ? Executors.newFixedThreadPool(workers.length - 1, task -> {
+            Thread thread = new Thread(task, "mcts-worker");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        newGame(rand.nextLong());
+    }
+
+    /**
+     * Prepares the Bot for a new game.
+     *
+     * @param seed Seed of the Bot's random decisions during the game.
+     */
+    public void newGame(long seed) {
+        rand = new SplittableRandom(seed);
+        SplittableRandom seeds = rand.split();
+        for (Worker worker : workers)
+            worker.state = seeds.nextLong() | 1; // xorshift never leaves 0
+        resetTree(0, 0);
+    }
+
+    /**
+     * Picks the column to play.
+     * Does this by generating a value between 0 and 99. If this value is greater
+     * than the Bot's skillset, the Bot picks a random column. Otherwise, the Bot
+     * picks a column with a tree search.
+     *
+     * @param position Current state of the board, of the standard geometry, left
+     *                 unchanged.
+     * @param player   Player about to move.
+     * @return The column to play.
+     * @throws IllegalArgumentException If the board isn't the standard one.
+     */
+    public int chooseMove(Position position, int player) {
+        if (!position.getGeometry().isStandard())
+            throw new IllegalArgumentException("MCTS only plays on the standard board, not "
+                    + position.getGeometry());
+        int action = rand.nextInt(100);
+        if (action > config.getSkillset())
+            return randomMove(position);
+        return bestMove(position, player);
+    }
+
+    /**
+     * Picks a random column that isn't full.
+     *
+     * @param position Current state of the board.
+     * @return The column to play.
+     */
+    private int randomMove(Position position) {
+        int moveCount = 0;
+        for (int col = 0; col < Position.COLUMN_COUNT; col++) {
+            if (position.canPlay(col))
+                moves[moveCount++] = col;
+        }
+        return moves[rand.nextInt(moveCount)];
+    }
+
+    /**
+     * Grows the tree until the budget runs out, and picks the most visited
+     * column.
+     *
+     * @param position Current state of the board.
+     * @param player   Player about to move.
+     * @return The column to play.
+     */
+    private int bestMove(Position position, int player) {
+        long startTime = System.nanoTime();
+        long current = position.getPieces(player);
+        long mask = position.getMask();
+        long possible = Solver.possibleMoves(mask);
+
+        // A win needs no search
+        long winningMoves = Solver.winningCells(current, mask) & possible;
+        if (winningMoves != 0) {
+            searchNanos += System.nanoTime() - startTime;
+            return Long.numberOfTrailingZeros(winningMoves) / STRIDE;
+        }
+
+        reuseTree(current, mask);
+        playouts.set(0);
+        playoutLimit = config.getMaxPlayouts() > 0 ? config.getMaxPlayouts() : Integer.MAX_VALUE;
+        deadline = config.getThinkTimeMilli() > 0 ? startTime + config.getThinkTimeMilli() * 1_000_000L
+                : Long.MAX_VALUE;
+        stopped = false;
+        search();
+
+        int best = firstChild[root];
+        for (int child = best + 1; child < firstChild[root] + childCount[root]; child++) {
+            if (visits.get(child) > visits.get(best))
+                best = child;
+        }
+        int col = columnOf[best];
+
+        // Keep the subtree of the move for the next one
+        root = best;
+        rootCurrent = current ^ mask;
+        rootMask = mask | (possible & Solver.columnMask(col));
+
+        nodeCount += Math.min(playouts.get(), playoutLimit);
+        searchNanos += System.nanoTime() - startTime;
+        return col;
+    }
+
+    /**
+     * Runs every worker until the budget runs out, the first one on the calling
+     * thread.
+     */
+    private void search() {
+        running.clear();
+        for (int i = 1; i < workers.length; i++)
+            running.add(pool.submit(workers[i]));
+        workers[0].run();
+        try {
+            for (Future<?> worker : running)
+                worker.get();
+        } catch (InterruptedException e) {
+            stopped = true;
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("An MCTS worker failed", e.getCause());
+        }
+    }
+
+    /**
+     * Moves the root of the tree to the current position, if the tree holds it,
+     * or starts a new tree.
+     *
+     * @param current Pieces of the player to move.
+     * @param mask    Every piece on the board.
+     */
+    private void reuseTree(long current, long mask) {
+        // The same Bot may play both sides
+        if (current == rootCurrent && mask == rootMask)
+            return;
+        boolean opponentMoved = (mask & rootMask) == rootMask && Long.bitCount(mask ^ rootMask) == 1
+                && current == (rootCurrent ^ rootMask);
+        if (opponentMoved && nodesUsed.get() <= capacity / 2 && expansion.get(root) == EXPANDED) {
+            int col = Long.numberOfTrailingZeros(mask ^ rootMask) / STRIDE;
+            for (int child = firstChild[root]; child < firstChild[root] + childCount[root]; child++) {
+                if (columnOf[child] == col) {
+                    root = child;
+                    rootCurrent = current;
+                    rootMask = mask;
+                    return;
+                }
+            }
+        }
+        resetTree(current, mask);
+    }
+
+    /**
+     * Empties the tree, leaving only a root.
+     *
+     * @param current Pieces of the player to move at the root.
+     * @param mask    Every piece on the board at the root.
+     */
+    private void resetTree(long current, long mask) {
+        root = 0;
+        rootCurrent = current;
+        rootMask = mask;
+        initNode(root, 0, UNKNOWN);
+        nodesUsed.set(1);
+    }
+
+    /**
+     * Resets a node taken from the pool.
+     *
+     * @param node   Index of the node.
+     * @param col    Column played to reach the node.
+     * @param result Known outcome of the node.
+     */
+    private void initNode(int node, int col, byte result) {
+        columnOf[node] = (byte) col;
+        outcome[node] = result;
+        childCount[node] = 0;
+        visits.set(node, 0);
+        points.set(node, 0);
+        expansion.set(node, LEAF);
+    }
+
+    /**
+     * Adds the children of a node to the tree, unless another thread is already
+     * doing it or the pool is full.
+     *
+     * @param node    Index of the node.
+     * @param current Pieces of the player to move.
+     * @param mask    Every piece on the board.
+     * @param moves   Number of pieces on the board.
+     * @return true if the node has children
+     */
+    private boolean expand(int node, long current, long mask, int moves) {
+        if (!expansion.compareAndSet(node, LEAF, EXPANDING))
+            return expansion.get(node) == EXPANDED;
+        long possible = Solver.possibleMoves(mask);
+        int count = Long.bitCount(possible);
+        if (nodesUsed.get() + count > capacity) {
+            expansion.set(node, LEAF);
+            return false;
+        }
+        int first = nodesUsed.getAndAdd(count);
+        if (first + count > capacity) {
+            expansion.set(node, LEAF);
+            return false;
+        }
+
+        long wins = Solver.winningCells(current, mask);
+        int child = first;
+        for (int col : COLUMN_ORDER) {
+            long move = possible & Solver.columnMask(col);
+            if (move == 0)
+                continue;
+            byte result = (move & wins) != 0 ? WIN : (moves + 1 == SIZE ? TIE : UNKNOWN);
+            initNode(child++, col, result);
+        }
+        firstChild[node] = first;
+        childCount[node] = (byte) count;
+        // Publishes the children to the other threads
+        expansion.set(node, EXPANDED);
+        return true;
+    }
+
+    /**
+     * Picks the child of a node to walk to, with the UCT rule. Children that
+     * were never visited come first, center first, and a winning move is always
+     * taken.
+     *
+     * @param node Index of the node, with children.
+     * @return the index of the child
+     */
+    private int select(int node) {
+        int first = firstChild[node];
+        int last = first + childCount[node];
+        double logVisits = Math.log(visits.get(node));
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < last; child++) {
+            if (outcome[child] == WIN)
+                return child;
+            int childVisits = visits.get(child);
+            if (childVisits == 0)
+                return child;
+            double value = points.get(child) / (2.0 * childVisits)
+                    + EXPLORATION * Math.sqrt(logVisits / childVisits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gets the number of playouts since the Bot was built.
+     *
+     * @return the number of playouts
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Gets the time the Bot spent searching so far.
+     *
+     * @return the time, in nanoseconds
+     */
+    public long getSearchNanos() {
+        return searchNanos;
+    }
+
+    /**
+     * Gets the number of nodes of the pool in use, including the ones left
+     * behind by earlier moves.
+     *
+     * @return the number of nodes
+     */
+    public int getTreeSize() {
+        return Math.min(nodesUsed.get(), capacity);
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void close() {
+        if (pool != null)
+            pool.shutdownNow();
+    }
+
+    /**
+     * Grows the tree from one thread, with its own random numbers and buffers.
+     */
+    private class Worker implements Runnable {
+        private final int[] path = new int[SIZE + 1];
+        private long state;
+
+        /**
+         * Runs iterations until the budget runs out, at least one.
+         */
+        public void run() {
+            int iterations = 0;
+            do {
+                iterate();
+                if (++iterations % CLOCK_INTERVAL == 0 && System.nanoTime() >= deadline)
+                    stopped = true;
+            } while (!stopped && playouts.incrementAndGet() < playoutLimit);
+        }
+
+        /**
+         * Walks down the tree, finishes the game with a playout and backs up its
+         * result.
+         */
+        private void iterate() {
+            int node = root;
+            long current = rootCurrent;
+            long mask = rootMask;
+            int moves = Long.bitCount(mask);
+            int depth = 0;
+            path[depth++] = node;
+            visits.incrementAndGet(node);
+
+            // Half points of the player to move at the last node
+            int result;
+            while (true) {
+                if (outcome[node] != UNKNOWN) {
+                    result = outcome[node] == WIN ? 0 : 1;
+                    break;
+                }
+                if (expansion.get(node) != EXPANDED) {
+                    boolean grow = node == root || visits.get(node) >= 2;
+                    if (!grow || !expand(node, current, mask, moves)) {
+                        result = playout(current, mask, moves);
+                        break;
+                    }
+                }
+                node = select(node);
+                long move = Solver.possibleMoves(mask) & Solver.columnMask(columnOf[node]);
+                long next = current ^ mask;
+                mask |= move;
+                current = next;
+                moves++;
+                path[depth++] = node;
+                visits.incrementAndGet(node);
+            }
+
+            // Every level belongs to the other player
+            for (int i = depth - 1; i >= 0; i--) {
+                points.addAndGet(path[i], 2 - result);
+                result = 2 - result;
+            }
+        }
+
+        /**
+         * Finishes a game with random moves.
+         *
+         * @param current Pieces of the player to move.
+         * @param mask    Every piece on the board.
+         * @param moves   Number of pieces on the board.
+         * @return the half points of the player to move: 2 for a win, 1 for a tie
+         */
+        private int playout(long current, long mask, int moves) {
+            boolean startingPlayer = true;
+            while (moves < SIZE) {
+                long possible = Solver.possibleMoves(mask);
+                if ((Solver.winningCells(current, mask) & possible) != 0)
+                    return startingPlayer ? 2 : 0;
+                long opponentWins = Solver.winningCells(current ^ mask, mask);
+                long forced = possible & opponentWins;
+                long choices = forced != 0 ? forced : possible;
+                long safe = choices & ~(opponentWins >> 1);
+                if (safe != 0)
+                    choices = safe;
+
+                long move = randomBit(choices);
+                long next = current ^ mask;
+                mask |= move;
+                current = next;
+                moves++;
+                startingPlayer = !startingPlayer;
+            }
+            return 1;
+        }
+
+        /**
+         * Picks one of the bits of a mask at random.
+         *
+         * @param bits The mask, not empty.
+         * @return the picked bit
+         */
+        private long randomBit(long bits) {
+            for (int skip = nextInt(Long.bitCount(bits)); skip > 0; skip--)
+                bits &= bits - 1;
+            return Long.lowestOneBit(bits);
+        }
+
+        /**
+         * Draws a random number with xorshift64*, which keeps its whole state in a
+         * long.
+         *
+         * @param bound Number of possible values.
+         * @return a number between 0 and bound - 1
+         */
+        private int nextInt(int bound) {
+            state ^= state >>> 12;
+            state ^= state << 25;
+            state ^= state >>> 27;
+            long random = (state * 0x2545F4914F6CDD1DL) >>> 32;
+            return (int) ((random * bound) >>> 32);
+        }
+    }
+}
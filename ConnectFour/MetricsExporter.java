@@ -0,0 +1,29 @@
+package ConnectFour;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the {@link SearchMetrics} of every searched move, to profile the
+ * Bots without printing to the console. Exporting is off when no exporter is
+ * set, which costs a single null check per move. Exporters must be thread safe,
+ * since a {@link Tournament} exports the moves of all its games.
+ */
+public interface MetricsExporter extends Closeable {
+    /**
+     * Exports the metrics of a move.
+     *
+     * @param engine  Name of the engine that searched.
+     * @param ply     Number of pieces on the board before the move.
+     * @param metrics Metrics of the move, only valid during the call.
+     */
+    void export(String engine, int ply, SearchMetrics metrics);
+
+    /**
+     * Flushes what was exported and releases the exporter.
+     *
+     * @throws IOException If the metrics can't be written.
+     */
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,190 @@
+package ConnectFour;
+
+import java.util.Arrays;
+
+/**
+ * Decides in which order the alpha-beta search tries the columns of a position.
+ * The earlier a good move is searched, the more of the other moves get pruned.
+ * Every heuristic can be turned off to measure what it is worth:
+ * <ul>
+ * <li>threats first: a move that wins right away, then a move that blocks the
+ * opponent's immediate win</li>
+ * <li>the best move stored in the transposition table</li>
+ * <li>killer moves: the last two moves that caused a cutoff at the same ply</li>
+ * <li>history: how much each player's columns caused cutoffs so far</li>
+ * <li>center first: columns from the center out, as they belong to the most
+ * lines of four</li>
+ * </ul>
+ */
+public class MoveOrdering {
+    // Allows every column, whatever the size of the board
+    public static final long ALL_CELLS = -1L;
+
+    private static final int MAX_COLUMN_COUNT = Geometry.MAX_COLUMN_COUNT;
+    private static final int MAX_PLY = Geometry.MAX_CELL_COUNT;
+
+    // Ordering keys, each heuristic outweighs all the ones below it
+    private static final int WINNING_MOVE = 1 << 30;
+    private static final int BLOCKING_MOVE = 1 << 29;
+    private static final int TABLE_MOVE = 1 << 28;
+    private static final int FIRST_KILLER = 1 << 27;
+    private static final int SECOND_KILLER = 1 << 26;
+    private static final int MAX_HISTORY = 1 << 21;
+    private static final int HISTORY_SHIFT = 4; // Leaves room for the center bonus
+
+    private final boolean threatsFirst;
+    private final boolean killerMoves;
+    private final boolean history;
+    private final boolean centerFirst;
+
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][] historyScores = new int[2][MAX_COLUMN_COUNT];
+    private final int[] keys = new int[MAX_COLUMN_COUNT];
+
+    /**
+     * Constructs a new move ordering with the given heuristics.
+     *
+     * @param threatsFirst Search immediate wins, then blocks, before other moves.
+     * @param killerMoves  Search the moves that caused cutoffs at the same ply.
+     * @param history      Search the columns that caused the most cutoffs.
+     * @param centerFirst  Search the center columns before the edges, otherwise
+     *                     columns go from left to right.
+     */
+    public MoveOrdering(boolean threatsFirst, boolean killerMoves, boolean history, boolean centerFirst) {
+        this.threatsFirst = threatsFirst;
+        this.killerMoves = killerMoves;
+        this.history = history;
+        this.centerFirst = centerFirst;
+        for (int[] plyKillers : killers)
+            Arrays.fill(plyKillers, TranspositionTable.NO_MOVE);
+    }
+
+    /**
+     * Lists the playable columns of a position, best candidates first.
+     *
+     * @param position Current state of the board.
+     * @param player   Player about to move, {@link Position#PLAYER_1} or
+     *                 {@link Position#PLAYER_2}.
+     * @param ttMove   Best move stored in the transposition table, or
+     *                 {@link TranspositionTable#NO_MOVE}.
+     * @param moves    Buffer receiving the columns.
+     * @return The number of columns written to the buffer.
+     */
+    public int order(Position position, int player, int ttMove, int[] moves) {
+        return order(position, player, ttMove, moves, ALL_CELLS);
+    }
+
+    /**
+     * Lists the playable columns of a position whose piece would land in one of
+     * the given cells, best candidates first. The cells come from a threat
+     * analysis of the caller, which already found the wins and the blocks, so
+     * only the other heuristics order them.
+     *
+     * @param position     Current state of the board.
+     * @param player       Player about to move, {@link Position#PLAYER_1} or
+     *                     {@link Position#PLAYER_2}.
+     * @param ttMove       Best move stored in the transposition table, or
+     *                     {@link TranspositionTable#NO_MOVE}.
+     * @param moves        Buffer receiving the columns.
+     * @param allowedCells Bitboard of the cells that can be played, see
+     *                     {@link Position#landingCell(int)}, or {@link #ALL_CELLS}.
+     * @return The number of columns written to the buffer.
+     */
+    public int order(Position position, int player, int ttMove, int[] moves, long allowedCells) {
+        int ply = position.getMoveCount();
+        int columnCount = position.getColumnCount();
+        boolean threatKeys = threatsFirst && allowedCells == ALL_CELLS;
+        int moveCount = 0;
+        for (int col = 0; col < columnCount; col++) {
+            if (!position.canPlay(col))
+                continue;
+            if (allowedCells != ALL_CELLS && (allowedCells & position.landingCell(col)) == 0)
+                continue;
+            int key = 0;
+            if (threatKeys) {
+                if (position.wouldWin(col, player))
+                    key += WINNING_MOVE;
+                else if (position.wouldWin(col, 1 - player))
+                    key += BLOCKING_MOVE;
+            }
+            if (col == ttMove)
+                key += TABLE_MOVE;
+            if (killerMoves) {
+                if (col == killers[ply][0])
+                    key += FIRST_KILLER;
+                else if (col == killers[ply][1])
+                    key += SECOND_KILLER;
+            }
+            if (history)
+                key += historyScores[player][col] << HISTORY_SHIFT;
+            if (centerFirst)
+                key += columnCount - Math.abs(2 * col - (columnCount - 1));
+
+            // Insertion sort, stable so equal keys keep the left to right order
+            int i = moveCount++;
+            while (i > 0 && keys[i - 1] < key) {
+                keys[i] = keys[i - 1];
+                moves[i] = moves[i - 1];
+                i--;
+            }
+            keys[i] = key;
+            moves[i] = col;
+        }
+        return moveCount;
+    }
+
+    /**
+     * Records a move that caused a beta cutoff.
+     *
+     * @param position       State of the board the move was played from.
+     * @param player         Player that played the move.
+     * @param column         Column of the move.
+     * @param remainingDepth How much deeper the search was going, cutoffs close to
+     *                       the root count more.
+     */
+    public void recordCutoff(Position position, int player, int column, int remainingDepth) {
+        // Wins and blocks are found by the threat check, they would only push
+        // the quiet moves out of the tables
+        if (threatsFirst && (position.wouldWin(column, player) || position.wouldWin(column, 1 - player)))
+            return;
+        if (killerMoves) {
+            int[] plyKillers = killers[position.getMoveCount()];
+            if (plyKillers[0] != column) {
+                plyKillers[1] = plyKillers[0];
+                plyKillers[0] = column;
+            }
+        }
+        if (history) {
+            historyScores[player][column] += remainingDepth * remainingDepth;
+            if (historyScores[player][column] >= MAX_HISTORY)
+                ageHistory();
+        }
+    }
+
+    /**
+     * Prepares for the search of a new move. Older history counts are halved so
+     * that recent cutoffs weigh more.
+     */
+    public void newSearch() {
+        ageHistory();
+    }
+
+    /**
+     * Forgets everything learned, for a new game.
+     */
+    public void clear() {
+        for (int[] plyKillers : killers)
+            Arrays.fill(plyKillers, TranspositionTable.NO_MOVE);
+        for (int[] playerHistory : historyScores)
+            Arrays.fill(playerHistory, 0);
+    }
+
+    /**
+     * Halves every history count.
+     */
+    private void ageHistory() {
+        for (int[] playerHistory : historyScores)
+            for (int col = 0; col < MAX_COLUMN_COUNT; col++)
+                playerHistory[col] >>= 1;
+    }
+}
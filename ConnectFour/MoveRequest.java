@@ -0,0 +1,41 @@
+package ConnectFour;
+
+/**
+ * A position waiting for the {@link Engine} to pick its next move. The
+ * position is copied, so the game it comes from can go on while the request is
+ * pending, and the request can be read by any thread.
+ */
+public class MoveRequest {
+    private final Position position;
+    private final int player;
+
+    /**
+     * Constructs a new request.
+     *
+     * @param position Current state of the board, copied.
+     * @param player   Player about to move, {@link Position#PLAYER_1} or
+     *                 {@link Position#PLAYER_2}.
+     */
+    public MoveRequest(Position position, int player) {
+        this.position = new Position(position);
+        this.player = player;
+    }
+
+    /**
+     * Gets the state of the board to move on. It must not be modified.
+     *
+     * @return the board
+     */
+    public Position getPosition() {
+        return position;
+    }
+
+    /**
+     * Gets the player about to move.
+     *
+     * @return {@link Position#PLAYER_1} or {@link Position#PLAYER_2}
+     */
+    public int getPlayer() {
+        return player;
+    }
+}
@@ -0,0 +1,413 @@
+package ConnectFour;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exact scores of every opening position up to a given ply, as computed by
+ * the {@link Solver}, so the first moves of a game cost a lookup instead of a
+ * search.
+ * <p>
+ * The book is a binary file, read through a memory mapping so that it is never
+ * loaded into the heap:
+ *
+ * <pre>
+ * int    magic, "C4BK"
+ * int    version
+ * int    maxPly, deepest ply of the book
+ * int    count, number of positions
+ * long[] keys, sorted, see {@link #canonicalKey(long)}
+ * byte[] scores, in the order of the keys, from the point of view of the player to move
+ * </pre>
+ *
+ * Positions where the game is over aren't stored. A position and its mirror
+ * image have the same score, so only the one with the smallest key is stored,
+ * which about halves the book. A book is thread safe once opened.
+ * <p>
+ * Usage: java ConnectFour.OpeningBook book-file max-ply [threads] [moves]
+ * <br>
+ * The optional moves are the columns played before the book starts, one digit
+ * per move, to only cover the positions that follow them.
+ */
+public class OpeningBook {
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    private static final int MAGIC = 0x4334424B;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+    private static final int SOLVER_TABLE_MEGABYTES = 64;
+    private static final int STRIDE = Position.ROW_COUNT + 1;
+    private static final long COLUMN_BITS = (1L << STRIDE) - 1;
+
+    private final MappedByteBuffer buffer;
+    private final int maxPly;
+    private final int count;
+    private final int scoresOffset;
+
+    /**
+     * Constructs a book over a mapped file.
+     *
+     * @param buffer Contents of the file.
+     * @throws IOException If the file isn't a book.
+     */
+    private OpeningBook(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IOException("Not an opening book");
+        maxPly = buffer.getInt(8);
+        count = buffer.getInt(12);
+        scoresOffset = HEADER_BYTES + count * Long.BYTES;
+        if (buffer.capacity() != scoresOffset + count)
+            throw new IOException("Truncated opening book");
+    }
+
+    /**
+     * Maps a book file in memory.
+     *
+     * @param file Path of the book.
+     * @return the book
+     * @throws IOException If the file can't be read, or isn't a book.
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Opening book too large to map");
+            // The mapping stays valid once the channel is closed
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Gets the deepest ply covered by the book.
+     *
+     * @return the number of pieces on the board of the deepest positions
+     */
+    public int getMaxPly() {
+        return maxPly;
+    }
+
+    /**
+     * Gets the number of positions in the book.
+     *
+     * @return the number of positions
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Looks up the exact score of a position.
+     *
+     * @param position Current state of the board.
+     * @param player   Player about to move.
+     * @return the score for the player to move, see {@link Solver}, or
+     *         {@link #NOT_FOUND}, always for boards other than the standard one
+     */
+    public int lookup(Position position, int player) {
+        if (position.getMoveCount() > maxPly || !position.getGeometry().isStandard())
+            return NOT_FOUND;
+        return lookup(keyOf(position, player));
+    }
+
+    /**
+     * Looks up the exact score of a position by binary search.
+     *
+     * @param key Key of the position, or of its mirror image, see
+     *            {@link #keyOf(Position, int)}.
+     * @return the score for the player to move, or {@link #NOT_FOUND}
+     */
+    int lookup(long key) {
+        key = canonicalKey(key);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = buffer.getLong(HEADER_BYTES + middle * Long.BYTES);
+            if (middleKey < key)
+                low = middle + 1;
+            else if (middleKey > key)
+                high = middle - 1;
+            else
+                return buffer.get(scoresOffset + middle);
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Scores every column of a position from the book.
+     *
+     * @param position Current state of the board, left unchanged.
+     * @param player   Player about to move.
+     * @param scores   Receives the exact score of every playable column, for the
+     *                 player about to move.
+     * @return false if a column leads out of the book, or if the board isn't the
+     *         standard one, the scores must then be ignored
+     */
+    public boolean analyze(Position position, int player, int[] scores) {
+        if (position.getMoveCount() >= maxPly || !position.getGeometry().isStandard())
+            return false;
+        int winScore = (Position.COLUMN_COUNT * Position.ROW_COUNT + 1 - position.getMoveCount()) / 2;
+        for (int col = 0; col < Position.COLUMN_COUNT; col++) {
+            if (!position.canPlay(col))
+                continue;
+            if (position.wouldWin(col, player)) {
+                scores[col] = winScore;
+                continue;
+            }
+            position.play(col, player);
+            int score = lookup(keyOf(position, 1 - player));
+            position.undo(col);
+            if (score == NOT_FOUND)
+                return false;
+            scores[col] = -score;
+        }
+        return true;
+    }
+
+    /**
+     * Computes the key of a position: the pieces of the player to move plus
+     * every piece, which is unique to the position since the player to move
+     * follows from the number of pieces.
+     *
+     * @param position Current state of the board.
+     * @param player   Player about to move.
+     * @return the key
+     */
+    static long keyOf(Position position, int player) {
+        return position.getPieces(player) + position.getMask();
+    }
+
+    /**
+     * Computes the key stored in the book for a position: the smallest of its key
+     * and the key of its mirror image.
+     *
+     * @param key Key of the position.
+     * @return the key shared by the position and its mirror image
+     */
+    static long canonicalKey(long key) {
+        long mirrored = 0;
+        for (int col = 0; col < Position.COLUMN_COUNT; col++) {
+            long column = (key >>> (col * STRIDE)) & COLUMN_BITS;
+            mirrored |= column << ((Position.COLUMN_COUNT - 1 - col) * STRIDE);
+        }
+        return Math.min(key, mirrored);
+    }
+
+    /**
+     * Generates a book file.
+     *
+     * @param args The book file, the deepest ply, then optionally the number of
+     *             threads and the moves played before the book starts.
+     * @throws IOException          If the book can't be written.
+     * @throws InterruptedException If interrupted while solving.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: java ConnectFour.OpeningBook book-file max-ply [threads] [moves]");
+            return;
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        String moves = args.length > 3 ? args[3] : "";
+        long startTime = System.nanoTime();
+        int count = generate(Paths.get(args[0]), Integer.parseInt(args[1]), threads, moves);
+        System.out.println(count + " positions in " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Solves every position reachable up to a ply and writes them to a book.
+     * Only the positions at the deepest ply are solved, the shallower ones are
+     * scored from their children with a plain negamax.
+     *
+     * @param file    Path of the book to write.
+     * @param maxPly  Deepest ply of the book.
+     * @param threads Number of positions solved at the same time.
+     * @param moves   Columns played before the book starts, one digit per move,
+     *                player_1 first.
+     * @return the number of positions in the book
+     * @throws IOException          If the book can't be written.
+     * @throws InterruptedException If interrupted while solving.
+     */
+    public static int generate(Path file, int maxPly, int threads, String moves)
+            throws IOException, InterruptedException {
+        Position root = new Position();
+        int player = Position.PLAYER_1;
+        for (int i = 0; i < moves.length(); i++) {
+            int col = moves.charAt(i) - '0';
+            if (!root.canPlay(col))
+                throw new IllegalArgumentException("Column " + col + " can't be played in " + moves);
+            root.play(col, player);
+            if (root.lastMoveWon(col))
+                throw new IllegalArgumentException("The game is already over after " + moves);
+            player = 1 - player;
+        }
+
+        // The positions of every ply, sorted by key
+        long[][] levels = new long[maxPly + 1][];
+        byte[][] levelScores = new byte[maxPly + 1][];
+        levels[root.getMoveCount()] = new long[] { canonicalKey(keyOf(root, player)) };
+        for (int ply = root.getMoveCount(); ply < maxPly; ply++)
+            levels[ply + 1] = expand(levels[ply]);
+
+        levelScores[maxPly] = solve(levels[maxPly], maxPly, threads);
+        for (int ply = maxPly - 1; ply >= root.getMoveCount(); ply--)
+            levelScores[ply] = backUp(levels[ply], ply, levels[ply + 1], levelScores[ply + 1]);
+
+        int count = 0;
+        for (int ply = root.getMoveCount(); ply <= maxPly; ply++)
+            count += levels[ply].length;
+        long[] keys = new long[count];
+        count = 0;
+        for (int ply = root.getMoveCount(); ply <= maxPly; ply++) {
+            System.arraycopy(levels[ply], 0, keys, count, levels[ply].length);
+            count += levels[ply].length;
+        }
+        Arrays.sort(keys);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(maxPly);
+            out.writeInt(count);
+            for (long key : keys)
+                out.writeLong(key);
+            for (long key : keys) {
+                int ply = Long.bitCount(maskOf(key));
+                out.writeByte(levelScores[ply][Arrays.binarySearch(levels[ply], key)]);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the positions that follow the positions of a ply, where the game
+     * isn't over, one of every position and its mirror image.
+     *
+     * @param keys Positions of a ply, sorted by canonical key.
+     * @return the positions of the next ply, sorted by canonical key
+     */
+    private static long[] expand(long[] keys) {
+        long[] children = new long[keys.length * Position.COLUMN_COUNT];
+        int count = 0;
+        for (long key : keys) {
+            long mask = maskOf(key);
+            long current = key - mask;
+            long wins = Solver.winningCells(current, mask);
+            long possible = Solver.possibleMoves(mask);
+            for (int col = 0; col < Position.COLUMN_COUNT; col++) {
+                long move = possible & Solver.columnMask(col);
+                if (move != 0 && (move & wins) == 0)
+                    children[count++] = canonicalKey((current ^ mask) + (mask | move));
+            }
+        }
+        Arrays.sort(children, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || children[i] != children[unique - 1])
+                children[unique++] = children[i];
+        }
+        return Arrays.copyOf(children, unique);
+    }
+
+    /**
+     * Solves positions on a pool of threads, each with its own solver.
+     *
+     * @param keys    Positions to solve.
+     * @param ply     Number of pieces of the positions.
+     * @param threads Number of positions solved at the same time.
+     * @return the score of every position
+     * @throws InterruptedException If interrupted while solving.
+     */
+    private static byte[] solve(long[] keys, int ply, int threads) throws InterruptedException {
+        byte[] scores = new byte[keys.length];
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int worker = 0; worker < threads; worker++) {
+                workers.add(pool.submit(() -> {
+                    Solver solver = new Solver(SOLVER_TABLE_MEGABYTES);
+                    for (int i = next.getAndIncrement(); i < keys.length; i = next.getAndIncrement()) {
+                        long mask = maskOf(keys[i]);
+                        scores[i] = (byte) solver.solve(keys[i] - mask, mask, ply);
+                    }
+                }));
+            }
+            for (Future<?> worker : workers)
+                worker.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Solving the book failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return scores;
+    }
+
+    /**
+     * Scores positions from the scores of the positions that follow them.
+     *
+     * @param keys       Positions to score, sorted by canonical key.
+     * @param ply        Number of pieces of the positions.
+     * @param childKeys  Positions of the next ply, sorted by canonical key.
+     * @param childScores Scores of the positions of the next ply.
+     * @return the score of every position
+     */
+    private static byte[] backUp(long[] keys, int ply, long[] childKeys, byte[] childScores) {
+        byte[] scores = new byte[keys.length];
+        int winScore = (Position.COLUMN_COUNT * Position.ROW_COUNT + 1 - ply) / 2;
+        for (int i = 0; i < keys.length; i++) {
+            long mask = maskOf(keys[i]);
+            long current = keys[i] - mask;
+            long wins = Solver.winningCells(current, mask);
+            long possible = Solver.possibleMoves(mask);
+            int best = -winScore;
+            for (int col = 0; col < Position.COLUMN_COUNT; col++) {
+                long move = possible & Solver.columnMask(col);
+                if (move == 0)
+                    continue;
+                if ((move & wins) != 0) {
+                    best = winScore;
+                    break;
+                }
+                int child = Arrays.binarySearch(childKeys, canonicalKey((current ^ mask) + (mask | move)));
+                best = Math.max(best, -childScores[child]);
+            }
+            scores[i] = (byte) best;
+        }
+        return scores;
+    }
+
+    /**
+     * Recovers every piece of a position from its key. Every column of the key
+     * holds the pieces of the player to move plus the column's pieces, so with h
+     * pieces in the column, its value lies between 2^h - 1 and 2^(h+1) - 2.
+     *
+     * @param key Key of the position.
+     * @return the bits of the cells holding a piece
+     */
+    private static long maskOf(long key) {
+        long mask = 0;
+        for (int col = 0; col < Position.COLUMN_COUNT; col++) {
+            int shift = col * STRIDE;
+            long column = (key >>> shift) & COLUMN_BITS;
+            int height = 63 - Long.numberOfLeadingZeros(column + 1);
+            mask |= ((1L << height) - 1) << shift;
+        }
+        return mask;
+    }
+}
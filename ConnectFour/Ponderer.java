@@ -0,0 +1,238 @@
+package ConnectFour;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Searches on the opponent's time: while a human thinks about their move, the
+ * Bot's replies to every column they could play are searched on a background
+ * thread, with a growing depth, until the human moves.
+ * <p>
+ * The best reply found for every human column is kept, so the Bot can answer
+ * at once when the column the human picked was searched deep enough. Otherwise
+ * the Bot still searches faster, since the transposition table shared with
+ * its own search was filled with the positions that follow the human's move.
+ * <p>
+ * The ponderer must be started and stopped by the thread that plays the game.
+ * Its results can only be read while it is stopped.
+ */
+public class Ponderer {
+    private static final int MAX_COLUMN_COUNT = Geometry.MAX_COLUMN_COUNT;
+
+    private final AlphaBetaSearch searcher;
+    private final ExecutorService thread = Executors.newSingleThreadExecutor(task -> {
+        Thread ponderThread = new Thread(task, "ponder");
+        ponderThread.setDaemon(true);
+        return ponderThread;
+    });
+    private final Position position = new Position();
+    private final int[] humanMoves = new int[MAX_COLUMN_COUNT];
+    private final int[] replies = new int[MAX_COLUMN_COUNT];
+    private final int[] iterationScores = new int[MAX_COLUMN_COUNT];
+    // For every human column, the scores of the Bot's replies at the deepest
+    // completed depth, and that depth, -1 if none
+    private final int[][] replyScores = new int[MAX_COLUMN_COUNT][MAX_COLUMN_COUNT];
+    private final int[] replyDepths = new int[MAX_COLUMN_COUNT];
+    private final int[] bestReplies = new int[MAX_COLUMN_COUNT];
+    private int humanPlayer;
+    private int maxDepth;
+    private volatile boolean stopped = true;
+    private Future<?> task;
+
+    /**
+     * Constructs a new ponderer.
+     *
+     * @param transpositionTable Table shared with the Bot's own search.
+     * @param moveOrdering       Move ordering owned by the ponderer.
+     * @param evaluation         Scores the positions where the search stops.
+     */
+    public Ponderer(TranspositionTable transpositionTable, MoveOrdering moveOrdering, Evaluation evaluation) {
+        searcher = new AlphaBetaSearch(transpositionTable, moveOrdering, evaluation);
+    }
+
+    /**
+     * Looks up the late positions in an endgame database instead of searching
+     * them.
+     *
+     * @param endgameDatabase Database of the board, or null to always search.
+     */
+    public void setEndgameDatabase(EndgameDatabase endgameDatabase) {
+        searcher.setEndgameDatabase(endgameDatabase);
+    }
+
+    /**
+     * Starts searching the Bot's replies to every move of the human.
+     *
+     * @param current     Current state of the board, copied.
+     * @param humanPlayer Player about to move, the human.
+     * @param maxDepth    Deepest depth to search the replies to.
+     */
+    public void start(Position current, int humanPlayer, int maxDepth) {
+        stop();
+        position.copyFrom(current);
+        this.humanPlayer = humanPlayer;
+        this.maxDepth = maxDepth;
+        for (int col = 0; col < MAX_COLUMN_COUNT; col++) {
+            replyDepths[col] = -1;
+            bestReplies[col] = TranspositionTable.NO_MOVE;
+        }
+        searcher.newSearch();
+        stopped = false;
+        task = thread.submit(this::ponder);
+    }
+
+    /**
+     * Stops the search and waits for the background thread to be done with it.
+     * Does nothing if the ponderer isn't running.
+     */
+    public void stop() {
+        if (stopped)
+            return;
+        stopped = true;
+        searcher.abort();
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Pondering failed", e.getCause());
+        }
+    }
+
+    /**
+     * Gets the depth the replies to a human move were searched to.
+     *
+     * @param current   Current state of the board, after the human move.
+     * @param humanMove Column the human played.
+     * @return the deepest completed depth, or -1 if the move wasn't pondered
+     */
+    public int getReplyDepth(Position current, int humanMove) {
+        if (!stopped || !position.canPlay(humanMove))
+            return -1;
+        position.play(humanMove, humanPlayer);
+        boolean pondered = position.getHash() == current.getHash()
+                && position.getMoveCount() == current.getMoveCount();
+        position.undo(humanMove);
+        return pondered ? replyDepths[humanMove] : -1;
+    }
+
+    /**
+     * Gets the best reply found to a human move.
+     *
+     * @param humanMove Column the human played.
+     * @return the column of the reply, or {@link TranspositionTable#NO_MOVE}
+     */
+    public int getBestReply(int humanMove) {
+        return bestReplies[humanMove];
+    }
+
+    /**
+     * Copies the scores of the replies to a human move, from the point of view of
+     * player_2 like the search. The scores of full columns are meaningless.
+     *
+     * @param humanMove Column the human played.
+     * @param scores    Buffer receiving the score of every column.
+     */
+    public void getReplyScores(int humanMove, int[] scores) {
+        System.arraycopy(replyScores[humanMove], 0, scores, 0, position.getColumnCount());
+    }
+
+    /**
+     * Gets the number of nodes searched since the ponderer was last started.
+     *
+     * @return the number of nodes
+     */
+    public long getNodeCount() {
+        return searcher.getNodeCount();
+    }
+
+    /**
+     * Stops pondering and releases the background thread.
+     */
+    public void close() {
+        stop();
+        thread.shutdownNow();
+    }
+
+    /**
+     * Deepens the search of the replies to every human move in turn, until
+     * stopped or until the end of the game is reached.
+     */
+    private void ponder() {
+        int openSpots = position.getGeometry().getCellCount() - position.getMoveCount();
+        // On a symmetric board, the replies to a move are the mirror of the replies to its mirror
+        boolean symmetric = position.isSymmetric();
+        int humanCount = searcher.orderRootMoves(position, humanPlayer, TranspositionTable.NO_MOVE, humanMoves);
+        for (int depth = 0; depth <= maxDepth; depth++) {
+            for (int i = 0; i < humanCount; i++) {
+                int humanMove = humanMoves[i];
+                position.play(humanMove, humanPlayer);
+                if (!position.lastMoveWon(humanMove) && !position.isFull())
+                    searchReplies(humanMove, depth);
+                position.undo(humanMove);
+                if (stopped)
+                    return;
+                if (symmetric)
+                    mirrorReplies(humanMove);
+            }
+            // The human move, the reply and the moves at depth 0 to depth reach the end of the game
+            if (depth + 3 >= openSpots)
+                return;
+        }
+    }
+
+    /**
+     * Scores every reply to a human move, and keeps the scores if the search
+     * wasn't stopped in the middle.
+     *
+     * @param humanMove Column the human played, already on the board.
+     * @param depth     Depth to search the replies to.
+     */
+    private void searchReplies(int humanMove, int depth) {
+        int botPlayer = 1 - humanPlayer;
+        // player_2 maximizes the score, player_1 minimizes it
+        boolean isMaximizing = (botPlayer == Position.PLAYER_1);
+        int sign = (botPlayer == Position.PLAYER_2) ? 1 : -1;
+        int bestScore = Integer.MIN_VALUE;
+        int bestReply = TranspositionTable.NO_MOVE;
+
+        searcher.setLimits(depth, Long.MAX_VALUE);
+        int replyCount = searcher.orderMoves(position, botPlayer, bestReplies[humanMove], replies);
+        for (int i = 0; i < replyCount; i++) {
+            int col = replies[i];
+            position.play(col, botPlayer);
+            int score = searcher.minimaxAlphaBetaPruning(position, col, 0, Integer.MIN_VALUE, Integer.MAX_VALUE,
+                    isMaximizing);
+            position.undo(col);
+            if (searcher.isAborted())
+                return;
+            iterationScores[col] = score;
+            if (sign * score > bestScore) {
+                bestScore = sign * score;
+                bestReply = col;
+            }
+        }
+        System.arraycopy(iterationScores, 0, replyScores[humanMove], 0, MAX_COLUMN_COUNT);
+        bestReplies[humanMove] = bestReply;
+        replyDepths[humanMove] = depth;
+    }
+
+    /**
+     * Copies the replies to a human move to the mirrored move, on a symmetric
+     * board.
+     *
+     * @param humanMove Column the human played, whose replies were searched.
+     */
+    private void mirrorReplies(int humanMove) {
+        int mirror = position.mirrorColumn(humanMove);
+        if (mirror == humanMove)
+            return;
+        for (int col = 0; col < position.getColumnCount(); col++)
+            replyScores[mirror][position.mirrorColumn(col)] = replyScores[humanMove][col];
+        int bestReply = bestReplies[humanMove];
+        bestReplies[mirror] = bestReply == TranspositionTable.NO_MOVE ? bestReply : position.mirrorColumn(bestReply);
+        replyDepths[mirror] = replyDepths[humanMove];
+    }
+}
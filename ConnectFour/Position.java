@@ -0,0 +1,635 @@
+package ConnectFour;
+
+import java.util.Arrays;
+
+/**
+ * Bitboard representation of a Connect Four board.
+ * Each player's pieces are packed column after column, with one spare bit on
+ * top of every column so that shifted masks never wrap from one column into
+ * the next. On the standard board they fit a single long:
+ *
+ * <pre>
+ *  .  .  .  .  .  .  .
+ *  5 12 19 26 33 40 47
+ *  4 11 18 25 32 39 46
+ *  3 10 17 24 31 38 45
+ *  2  9 16 23 30 37 44
+ *  1  8 15 22 29 36 43
+ *  0  7 14 21 28 35 42
+ * </pre>
+ *
+ * Other sizes and connect lengths are set by a {@link Geometry}. Boards of up
+ * to 64 bits keep the single long and its shift-and-mask win checks, boards of
+ * up to 128 bits add a second long, and larger ones the words beyond in an
+ * array; those check wins against the lines precomputed by the geometry.
+ * <p>
+ * The height of every column is stored in a byte, so finding the row that a
+ * piece lands in is a constant time lookup. A Zobrist hash of the position is
+ * updated along with every move, to be used as a transposition table key,
+ * together with the hash of its mirror image: the board flipped left to right
+ * plays the same game with mirrored columns, so both share a canonical hash.
+ */
+public class Position {
+    // Size of the standard board, see Geometry#STANDARD
+    public static final int COLUMN_COUNT = 7;
+    public static final int ROW_COUNT = 6;
+
+    public static final int PLAYER_1 = 0;
+    public static final int PLAYER_2 = 1;
+    public static final int EMPTY = -1;
+
+    // Number of bits used by a column on the standard board
+    private static final int STANDARD_STRIDE = ROW_COUNT + 1;
+
+    // The geometry, and what the hot paths need of it
+    private Geometry geometry;
+    private boolean standard;
+    private boolean singleWord;
+    private int columnCount;
+    private int rowCount;
+    private int cellCount;
+    // Number of bits used by a column, including the spare bit on top
+    private int stride;
+    private int connectLength;
+    // For every cell, the cells sharing a winning line with it, on single word boards
+    private long[] linesThroughCell;
+    // Every cell of the board and the bottom cell of every column, on boards
+    // fitting a single long
+    private long boardMask;
+    private long bottomRow;
+    // Scratch buffer of winningCells, one entry per cell of a line
+    private final long[] linesAfterGap = new long[Math.max(Geometry.MAX_COLUMN_COUNT, Geometry.MAX_ROW_COUNT)];
+    // One random key per player and per cell
+    private long[][] zobristKeys;
+
+    // Bits 0 to 63, 64 to 127, and the words beyond if any
+    private long player1Pieces;
+    private long player2Pieces;
+    private long player1High;
+    private long player2High;
+    private long[] player1Words;
+    private long[] player2Words;
+    private final byte[] heights = new byte[Geometry.MAX_COLUMN_COUNT];
+    private int moveCount;
+    private long hash;
+    // Hash of the board flipped left to right
+    private long mirrorHash;
+
+    /**
+     * Constructs an empty standard board.
+     */
+    public Position() {
+        this(Geometry.STANDARD);
+    }
+
+    /**
+     * Constructs an empty board of any size.
+     *
+     * @param geometry Size of the board and length of the winning lines.
+     */
+    public Position(Geometry geometry) {
+        setGeometry(geometry);
+    }
+
+    /**
+     * Constructs a copy of a board, that can be played on independently.
+     *
+     * @param other The board to copy.
+     */
+    public Position(Position other) {
+        copyFrom(other);
+    }
+
+    /**
+     * Overwrites this board with a copy of another one, without allocating.
+     *
+     * @param other The board to copy.
+     */
+    public void copyFrom(Position other) {
+        if (other.geometry != geometry)
+            setGeometry(other.geometry);
+        player1Pieces = other.player1Pieces;
+        player2Pieces = other.player2Pieces;
+        player1High = other.player1High;
+        player2High = other.player2High;
+        if (player1Words != null) {
+            System.arraycopy(other.player1Words, 0, player1Words, 0, player1Words.length);
+            System.arraycopy(other.player2Words, 0, player2Words, 0, player2Words.length);
+        }
+        System.arraycopy(other.heights, 0, heights, 0, heights.length);
+        moveCount = other.moveCount;
+        hash = other.hash;
+        mirrorHash = other.mirrorHash;
+    }
+
+    /**
+     * Switches to an empty board of another geometry.
+     *
+     * @param newGeometry Size of the board and length of the winning lines.
+     */
+    private void setGeometry(Geometry newGeometry) {
+        geometry = newGeometry;
+        standard = newGeometry.isStandard();
+        singleWord = newGeometry.getWordCount() == 1;
+        columnCount = newGeometry.getColumnCount();
+        rowCount = newGeometry.getRowCount();
+        cellCount = newGeometry.getCellCount();
+        stride = newGeometry.getStride();
+        connectLength = newGeometry.getConnectLength();
+        linesThroughCell = newGeometry.getLinesThroughCells();
+        boardMask = newGeometry.getAlternateRowsMask(0, 0) | newGeometry.getAlternateRowsMask(1, 0);
+        bottomRow = newGeometry.getBottomRowMask(0);
+        zobristKeys = newGeometry.getZobristKeys();
+        int extraWords = newGeometry.getWordCount() - 2;
+        player1Words = extraWords > 0 ? new long[extraWords] : null;
+        player2Words = extraWords > 0 ? new long[extraWords] : null;
+        player1Pieces = player2Pieces = player1High = player2High = 0;
+        Arrays.fill(heights, (byte) 0);
+        moveCount = 0;
+        hash = 0;
+        mirrorHash = 0;
+    }
+
+    /**
+     * Gets the size of the board and the length of the winning lines.
+     *
+     * @return the geometry of the board
+     */
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Gets the number of columns of the board.
+     *
+     * @return the number of columns
+     */
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * Checks if a column can still receive a piece.
+     *
+     * @param column Index of the column to check.
+     * @return true if the column is in bounds and isn't full.
+     */
+    public boolean canPlay(int column) {
+        return column >= 0 && column < columnCount && heights[column] < rowCount;
+    }
+
+    /**
+     * Finds the row that a piece would land in for a given column.
+     * Rows are indexed from the top of the board, like in the printed board.
+     *
+     * @param column Index of the column to check.
+     * @return The row index for the given column.
+     */
+    public int dropsToRow(int column) {
+        return rowCount - 1 - heights[column];
+    }
+
+    /**
+     * Drops a piece for the given player in a column. The column must be
+     * playable, see {@link #canPlay(int)}.
+     *
+     * @param column Index of the column to place a piece in to.
+     * @param player Either {@link #PLAYER_1} or {@link #PLAYER_2}.
+     */
+    public void play(int column, int player) {
+        int bit = column * stride + heights[column];
+        if (bit < Long.SIZE) {
+            if (player == PLAYER_1)
+                player1Pieces |= 1L << bit;
+            else
+                player2Pieces |= 1L << bit;
+        } else {
+            setWideBit(player, bit);
+        }
+        hash ^= zobristKeys[player][bit];
+        mirrorHash ^= zobristKeys[player][bit + (columnCount - 1 - 2 * column) * stride];
+        heights[column]++;
+        moveCount++;
+    }
+
+    /**
+     * Removes the top piece of a column, reverting the last {@link #play} made in
+     * that column.
+     *
+     * @param column Index of the column to remove a piece from.
+     */
+    public void undo(int column) {
+        heights[column]--;
+        moveCount--;
+        int bit = column * stride + heights[column];
+        long[] keys;
+        if (bit < Long.SIZE) {
+            keys = zobristKeys[((player1Pieces >>> bit) & 1) != 0 ? PLAYER_1 : PLAYER_2];
+            player1Pieces &= ~(1L << bit);
+            player2Pieces &= ~(1L << bit);
+        } else {
+            keys = zobristKeys[isSet(PLAYER_1, bit) ? PLAYER_1 : PLAYER_2];
+            clearWideBit(bit);
+        }
+        hash ^= keys[bit];
+        mirrorHash ^= keys[bit + (columnCount - 1 - 2 * column) * stride];
+    }
+
+    /**
+     * Gets the piece found in a cell of the board.
+     *
+     * @param column Index of the column.
+     * @param row    Index of the row, counted from the top of the board.
+     * @return {@link #PLAYER_1}, {@link #PLAYER_2} or {@link #EMPTY}.
+     */
+    public int pieceAt(int column, int row) {
+        int bit = column * stride + rowCount - 1 - row;
+        if (isSet(PLAYER_1, bit))
+            return PLAYER_1;
+        if (isSet(PLAYER_2, bit))
+            return PLAYER_2;
+        return EMPTY;
+    }
+
+    /**
+     * Checks if a player has connected enough pieces in a row, column, or
+     * diagonal.
+     *
+     * @param player Either {@link #PLAYER_1} or {@link #PLAYER_2}.
+     * @return true if the player has a winning line.
+     */
+    public boolean hasWon(int player) {
+        if (singleWord)
+            return hasLine(player == PLAYER_1 ? player1Pieces : player2Pieces);
+        for (int line = 0; line < geometry.getLineCount(); line++) {
+            if (holdsLine(player, line, -1))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the top piece of a column completed a winning line. Only the
+     * lines going through that piece are looked at, so this is meant to be called
+     * right after {@link #play}, on a board that had no winner before the move.
+     *
+     * @param column Index of the column the last piece was dropped in.
+     * @return true if the last piece dropped in the column won the game.
+     */
+    public boolean lastMoveWon(int column) {
+        int bit = column * stride + heights[column] - 1;
+        if (singleWord) {
+            long pieces = ((player1Pieces >>> bit) & 1) != 0 ? player1Pieces : player2Pieces;
+            // The masked cells form a star around the piece, which is too narrow to
+            // hold any winning line that doesn't go through its center.
+            return hasLine(pieces & linesThroughCell[bit]);
+        }
+        return completesLine(isSet(PLAYER_1, bit) ? PLAYER_1 : PLAYER_2, bit);
+    }
+
+    /**
+     * Checks if dropping a piece in a column would win the game, without playing
+     * it. The column must be playable, see {@link #canPlay(int)}.
+     *
+     * @param column Index of the column to check.
+     * @param player Either {@link #PLAYER_1} or {@link #PLAYER_2}.
+     * @return true if the move would connect four pieces.
+     */
+    public boolean wouldWin(int column, int player) {
+        int bit = column * stride + heights[column];
+        if (singleWord) {
+            long pieces = (player == PLAYER_1 ? player1Pieces : player2Pieces) | (1L << bit);
+            return hasLine(pieces & linesThroughCell[bit]);
+        }
+        return completesLine(player, bit);
+    }
+
+    /**
+     * Finds the empty cells that would complete a line for a player, playable now
+     * or not. Only boards fitting a single long have them.
+     *
+     * @param player Either {@link #PLAYER_1} or {@link #PLAYER_2}.
+     * @return the bits of the winning cells.
+     * @throws IllegalStateException If the board needs more than 64 bits.
+     */
+    public long winningCells(int player) {
+        long pieces = getPieces(player);
+        if (standard)
+            return Solver.winningCells(pieces, player1Pieces | player2Pieces);
+        long cells = 0;
+        for (int d = 0; d < geometry.getDirectionCount(); d++) {
+            long starts = geometry.getLineStarts(d, 0);
+            int step = geometry.getDirectionStep(d);
+            if (starts == 0)
+                continue;
+            // The lines holding every cell after a gap, then every cell before it
+            long after = starts;
+            for (int i = connectLength - 1; i >= 0; i--) {
+                linesAfterGap[i] = after;
+                after &= pieces >>> (i * step);
+            }
+            long before = starts;
+            for (int gap = 0; gap < connectLength; gap++) {
+                cells |= (before & linesAfterGap[gap]) << (gap * step);
+                before &= pieces >>> (gap * step);
+            }
+        }
+        return cells & boardMask & ~(player1Pieces | player2Pieces);
+    }
+
+    /**
+     * Finds the cells where a piece can be dropped. Only boards fitting a single
+     * long have them.
+     *
+     * @return the lowest empty cell of every column that isn't full.
+     * @throws IllegalStateException If the board needs more than 64 bits.
+     */
+    public long playableCells() {
+        return (getMask() + bottomRow) & boardMask;
+    }
+
+    /**
+     * Gets the cell a piece dropped in a column would land in, on boards fitting
+     * a single long.
+     *
+     * @param column Index of the column.
+     * @return the bit of the cell, outside of the board if the column is full.
+     */
+    public long landingCell(int column) {
+        return 1L << (column * stride + heights[column]);
+    }
+
+    /**
+     * Gets the number of pieces on the board, i.e. the current ply.
+     *
+     * @return the number of pieces played so far.
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Gets the bitboard of a player's pieces, laid out as described in the class
+     * comment. Only boards fitting a single long have one.
+     *
+     * @param player Either {@link #PLAYER_1} or {@link #PLAYER_2}.
+     * @return the bits of the cells holding the player's pieces.
+     * @throws IllegalStateException If the board needs more than 64 bits.
+     */
+    public long getPieces(int player) {
+        if (!singleWord)
+            throw new IllegalStateException(geometry + " doesn't fit a single bitboard");
+        return player == PLAYER_1 ? player1Pieces : player2Pieces;
+    }
+
+    /**
+     * Gets the bitboard of every piece on the board. Only boards fitting a single
+     * long have one.
+     *
+     * @return the bits of the cells holding a piece.
+     * @throws IllegalStateException If the board needs more than 64 bits.
+     */
+    public long getMask() {
+        if (!singleWord)
+            throw new IllegalStateException(geometry + " doesn't fit a single bitboard");
+        return player1Pieces | player2Pieces;
+    }
+
+    /**
+     * Gets a word of the bitboard of a player's pieces, on boards of any size.
+     *
+     * @param player Either {@link #PLAYER_1} or {@link #PLAYER_2}.
+     * @param word   Index of the word, see {@link Geometry#getWordCount()}.
+     * @return the bits of the cells holding the player's pieces in that word.
+     */
+    public long getPiecesWord(int player, int word) {
+        if (word == 0)
+            return player == PLAYER_1 ? player1Pieces : player2Pieces;
+        if (word == 1)
+            return player == PLAYER_1 ? player1High : player2High;
+        return (player == PLAYER_1 ? player1Words : player2Words)[word - 2];
+    }
+
+    /**
+     * Checks if a cell holds a piece of a player, on boards of any size.
+     *
+     * @param player Either {@link #PLAYER_1} or {@link #PLAYER_2}.
+     * @param bit    Bit of the cell.
+     * @return true if the player has a piece in the cell.
+     */
+    public boolean isSet(int player, int bit) {
+        return ((getPiecesWord(player, bit / Long.SIZE) >>> bit) & 1) != 0;
+    }
+
+    /**
+     * Gets the Zobrist hash of the position, which only depends on the pieces on
+     * the board and not on the order they were played in.
+     *
+     * @return the hash of the position.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Gets the hash shared by the position and its mirror image, the smallest of
+     * their two hashes. Moves stored along with it must be mirrored when
+     * {@link #isMirrored()}, see {@link #mirrorColumn(int)}.
+     *
+     * @return the canonical hash of the position.
+     */
+    public long getCanonicalHash() {
+        return Math.min(hash, mirrorHash);
+    }
+
+    /**
+     * Checks if the canonical hash is the one of the mirror image.
+     *
+     * @return true if the columns of the canonical position are mirrored.
+     */
+    public boolean isMirrored() {
+        return mirrorHash < hash;
+    }
+
+    /**
+     * Gets the column a column becomes when the board is flipped left to right.
+     *
+     * @param column Index of the column.
+     * @return the index of the mirrored column.
+     */
+    public int mirrorColumn(int column) {
+        return columnCount - 1 - column;
+    }
+
+    /**
+     * Checks if the board is its own mirror image, in which case a column and
+     * its mirror lead to the same game and only one of them needs a search.
+     *
+     * @return true if the board is left-right symmetric.
+     */
+    public boolean isSymmetric() {
+        if (hash != mirrorHash)
+            return false;
+        // Equal hashes are only very likely to be equal boards
+        for (int col = 0; col < columnCount / 2; col++) {
+            int mirror = mirrorColumn(col);
+            if (heights[col] != heights[mirror])
+                return false;
+            for (int height = 0; height < heights[col]; height++) {
+                if (isSet(PLAYER_1, col * stride + height) != isSet(PLAYER_1, mirror * stride + height))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if every cell of the board holds a piece.
+     *
+     * @return true if no more pieces can be played.
+     */
+    public boolean isFull() {
+        return moveCount == cellCount;
+    }
+
+    /**
+     * Sets a bit beyond the first word.
+     *
+     * @param player Either {@link #PLAYER_1} or {@link #PLAYER_2}.
+     * @param bit    Bit of the cell, at least 64.
+     */
+    private void setWideBit(int player, int bit) {
+        int word = bit / Long.SIZE;
+        if (word == 1) {
+            if (player == PLAYER_1)
+                player1High |= 1L << bit;
+            else
+                player2High |= 1L << bit;
+        } else {
+            (player == PLAYER_1 ? player1Words : player2Words)[word - 2] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Clears a bit beyond the first word, for both players.
+     *
+     * @param bit Bit of the cell, at least 64.
+     */
+    private void clearWideBit(int bit) {
+        int word = bit / Long.SIZE;
+        if (word == 1) {
+            player1High &= ~(1L << bit);
+            player2High &= ~(1L << bit);
+        } else {
+            player1Words[word - 2] &= ~(1L << bit);
+            player2Words[word - 2] &= ~(1L << bit);
+        }
+    }
+
+    /**
+     * Checks if a cell completes a winning line of a player, whether or not the
+     * cell already holds a piece, with the lines precomputed by the geometry.
+     *
+     * @param player Either {@link #PLAYER_1} or {@link #PLAYER_2}.
+     * @param bit    Bit of the cell.
+     * @return true if a line through the cell is the player's once it is filled.
+     */
+    private boolean completesLine(int player, int bit) {
+        int end = geometry.getCellLineStart(bit + 1);
+        for (int i = geometry.getCellLineStart(bit); i < end; i++) {
+            if (holdsLine(player, geometry.getCellLine(i), bit))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a player holds every cell of a winning line.
+     *
+     * @param player Either {@link #PLAYER_1} or {@link #PLAYER_2}.
+     * @param line   Index of the line in the geometry.
+     * @param extra  Bit of a cell counted as the player's, or -1.
+     * @return true if the line is complete.
+     */
+    private boolean holdsLine(int player, int line, int extra) {
+        for (int word = 0; word < geometry.getWordCount(); word++) {
+            long pieces = getPiecesWord(player, word);
+            if (extra / Long.SIZE == word && extra >= 0)
+                pieces |= 1L << extra;
+            long lineWord = geometry.getLineWord(line, word);
+            if ((pieces & lineWord) != lineWord)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Shift-and-mask check for aligned bits, on boards fitting a single long.
+     * Shifting by the stride of a direction and masking leaves the pairs of
+     * neighbours, doing it again with twice the shift leaves the runs of four, and
+     * so on until the runs are as long as a winning line.
+     *
+     * @param pieces Bitboard of a single player.
+     * @return true if enough bits are aligned in any direction.
+     */
+    private boolean hasLine(long pieces) {
+        if (standard)
+            return hasFour(pieces);
+        // Horizontal -, diagonal \, diagonal /, vertical |
+        return hasRun(pieces, stride) || hasRun(pieces, stride - 1) || hasRun(pieces, stride + 1)
+                || hasRun(pieces, 1);
+    }
+
+    /**
+     * Checks for aligned bits in a single direction.
+     *
+     * @param pieces Bitboard of a single player.
+     * @param step   Shift between two neighbours in the direction.
+     * @return true if a run of bits is as long as a winning line.
+     */
+    private boolean hasRun(long pieces, int step) {
+        // A line that long can't fit in that direction on a single word board
+        if ((connectLength - 1) * step >= Long.SIZE)
+            return false;
+        // runs holds the first bit of every run of the given length
+        long runs = pieces;
+        int length = 1;
+        while (2 * length <= connectLength) {
+            runs &= runs >> (length * step);
+            length *= 2;
+        }
+        if (length < connectLength)
+            runs &= runs >> ((connectLength - length) * step);
+        return runs != 0;
+    }
+
+    /**
+     * Shift-and-mask check for four aligned bits on the standard board, with
+     * constant shifts. Shifting by the stride of a direction and masking leaves
+     * the pairs of neighbours, doing it once more with twice the stride leaves the
+     * lines of four.
+     *
+     * @param pieces Bitboard of a single player.
+     * @return true if four bits are aligned in any direction.
+     */
+    private static boolean hasFour(long pieces) {
+        // Horizontal -
+        long pairs = pieces & (pieces >> STANDARD_STRIDE);
+        if ((pairs & (pairs >> (2 * STANDARD_STRIDE))) != 0)
+            return true;
+
+        // Diagonal \
+        pairs = pieces & (pieces >> (STANDARD_STRIDE - 1));
+        if ((pairs & (pairs >> (2 * (STANDARD_STRIDE - 1)))) != 0)
+            return true;
+
+        // Diagonal /
+        pairs = pieces & (pieces >> (STANDARD_STRIDE + 1));
+        if ((pairs & (pairs >> (2 * (STANDARD_STRIDE + 1)))) != 0)
+            return true;
+
+        // Vertical |
+        pairs = pieces & (pieces >> 1);
+        return (pairs & (pairs >> 2)) != 0;
+    }
+}
@@ -0,0 +1,117 @@
+package ConnectFour;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Set of position keys, to find out on the fly if a position was already seen.
+ * The keys are kept off the heap, in a direct buffer of longs, so that sets of
+ * up to a hundred million positions cost the garbage collector nothing.
+ * <p>
+ * The set is an open addressing table with linear probing. It is thread safe
+ * without locks: a key is added by a compare-and-set of an empty slot, and keys
+ * are never removed. Like the solver's table, keys are spread over the slots by
+ * multiplying them with a large odd constant.
+ */
+public class PositionSet {
+    // Slots hold the key plus one, so the empty board's key is never mistaken
+    // for an empty slot
+    private static final long EMPTY = 0;
+    private static final VarHandle SLOTS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+    // Direct buffers are indexed by int, in bytes
+    private static final int MAX_CAPACITY = 1 << 27;
+
+    private final ByteBuffer slots;
+    private final int slotMask;
+    private final int shift;
+    private final int maxSize;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Constructs an empty set.
+     *
+     * @param maxSize Number of keys the set must hold. The table is sized for
+     *                at most three quarters of its slots to be used.
+     */
+    public PositionSet(int maxSize) {
+        long wanted = Math.max(2, (long) maxSize * 4 / 3 + 1);
+        if (wanted > MAX_CAPACITY)
+            throw new IllegalArgumentException("A position set holds at most " + MAX_CAPACITY * 3L / 4 + " keys");
+        int capacity = Integer.highestOneBit((int) wanted - 1) << 1;
+        slots = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder());
+        slotMask = capacity - 1;
+        shift = Long.SIZE - Integer.numberOfTrailingZeros(capacity);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Adds a key, unless the set already holds it.
+     *
+     * @param key Key of the position, any value but -1.
+     * @return true if the key was added, false if it was already there
+     * @throws IllegalStateException If the set is full, see {@link #isFull()}.
+     */
+    public boolean add(long key) {
+        long stored = key + 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+        while (true) {
+            int offset = slot * Long.BYTES;
+            long current = (long) SLOTS.getVolatile(slots, offset);
+            if (current == stored)
+                return false;
+            if (current == EMPTY) {
+                if (size.get() >= slotMask)
+                    throw new IllegalStateException("The position set is full");
+                if (SLOTS.compareAndSet(slots, offset, EMPTY, stored)) {
+                    size.incrementAndGet();
+                    return true;
+                }
+                // Another thread filled the slot first, it may have added the same key
+                continue;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    /**
+     * Checks if the set holds a key.
+     *
+     * @param key Key of the position.
+     * @return true if the key was added
+     */
+    public boolean contains(long key) {
+        long stored = key + 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+        while (true) {
+            long current = (long) SLOTS.getVolatile(slots, slot * Long.BYTES);
+            if (current == stored)
+                return true;
+            if (current == EMPTY)
+                return false;
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    /**
+     * Gets the number of keys in the set.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Checks if the set holds the number of keys it was sized for. Keys can still
+     * be added, but lookups slow down as the table fills up.
+     *
+     * @return true if no more keys should be added
+     */
+    public boolean isFull() {
+        return size.get() >= maxSize;
+    }
+}
@@ -0,0 +1,62 @@
+package ConnectFour;
+
+/**
+ * Limits of the search of a single move by the {@link Engine}: the search
+ * deepens one ply at a time until it reaches the maximum depth or runs out of
+ * time, and plays the best column of the deepest completed depth.
+ */
+public class SearchBudget {
+    private final int maxDepth;
+    private final long timeLimitMillis;
+
+    /**
+     * Constructs a new budget.
+     *
+     * @param maxDepth        Depth at which the search stops.
+     * @param timeLimitMillis Time after which the search stops, 0 to always
+     *                        search to the maximum depth.
+     */
+    public SearchBudget(int maxDepth, long timeLimitMillis) {
+        if (maxDepth < 0 || timeLimitMillis < 0)
+            throw new IllegalArgumentException("Invalid search budget: depth " + maxDepth + ", "
+                    + timeLimitMillis + " ms");
+        this.maxDepth = maxDepth;
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    /**
+     * Gets the depth at which the search stops.
+     *
+     * @return the depth
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Gets the time after which the search stops.
+     *
+     * @return the time, in milliseconds, or 0 without a time limit
+     */
+    public long getTimeLimitMillis() {
+        return timeLimitMillis;
+    }
+
+    /**
+     * Computes when a search started now must stop.
+     *
+     * @return the {@link System#nanoTime()} of the deadline, or Long.MAX_VALUE
+     */
+    long deadline() {
+        return timeLimitMillis == 0 ? Long.MAX_VALUE : System.nanoTime() + timeLimitMillis * 1_000_000;
+    }
+
+    /**
+     * Describes the budget in reports.
+     *
+     * @return the depth and time limit
+     */
+    public String toString() {
+        return "depth " + maxDepth + (timeLimitMillis == 0 ? "" : ", " + timeLimitMillis + " ms");
+    }
+}
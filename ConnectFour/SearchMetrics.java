@@ -0,0 +1,315 @@
+package ConnectFour;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measurements of minimax searches, either of a single move or added up over
+ * many moves, e.g. a whole match:
+ * <ul>
+ * <li>nodes visited, and nodes per second</li>
+ * <li>cutoffs by the index of the move that caused them, to measure the move
+ * ordering: the higher the share of the first move, the better</li>
+ * <li>effective branching factor, the number of children a node would need to
+ * reach the node count of the deepest iteration</li>
+ * <li>depth reached, and the time and nodes spent on every depth</li>
+ * <li>transposition table hit rate</li>
+ * </ul>
+ * Recording only adds to counters, so metrics are always on; exporting them is
+ * left to a {@link MetricsExporter}.
+ */
+public class SearchMetrics {
+    private static final int MAX_DEPTH = Geometry.MAX_CELL_COUNT;
+
+    private long moves;
+    private long nodes;
+    private final long[] cutoffsByIndex = new long[Geometry.MAX_COLUMN_COUNT];
+    private long tableHits;
+    private long tableMisses;
+    private long tableCollisions;
+    private long depthSum;
+    private double branchingFactorSum;
+    private final long[] depthNanos = new long[MAX_DEPTH + 1];
+    private final long[] depthNodes = new long[MAX_DEPTH + 1];
+    private long nanos;
+
+    // Deepest iteration of the move being recorded
+    private int lastDepth = -1;
+
+    /**
+     * Forgets everything, to record a new move.
+     */
+    public void reset() {
+        moves = 0;
+        nodes = 0;
+        Arrays.fill(cutoffsByIndex, 0);
+        tableHits = 0;
+        tableMisses = 0;
+        tableCollisions = 0;
+        depthSum = 0;
+        branchingFactorSum = 0;
+        Arrays.fill(depthNanos, 0);
+        Arrays.fill(depthNodes, 0);
+        nanos = 0;
+        lastDepth = -1;
+    }
+
+    /**
+     * Records a completed iteration of the move being searched.
+     *
+     * @param depth     Depth of the iteration.
+     * @param iterNodes Nodes visited by the iteration.
+     * @param iterNanos Time taken by the iteration.
+     */
+    public void recordDepth(int depth, long iterNodes, long iterNanos) {
+        depthNodes[depth] += iterNodes;
+        depthNanos[depth] += iterNanos;
+        lastDepth = depth;
+    }
+
+    /**
+     * Adds the counters of a search, since its last
+     * {@link AlphaBetaSearch#newSearch()}, to the move being searched.
+     *
+     * @param searcher Search that took part in the move.
+     */
+    public void addSearch(AlphaBetaSearch searcher) {
+        nodes += searcher.getNodeCount();
+        tableHits += searcher.getTableHits();
+        tableMisses += searcher.getTableMisses();
+        tableCollisions += searcher.getTableCollisions();
+        for (int i = 0; i < cutoffsByIndex.length; i++)
+            cutoffsByIndex[i] += searcher.getCutoffs(i);
+    }
+
+    /**
+     * Completes the record of the move being searched.
+     *
+     * @param moveNanos Time taken by the move.
+     */
+    public void finishMove(long moveNanos) {
+        moves = 1;
+        nanos = moveNanos;
+        depthSum = Math.max(lastDepth, 0);
+        // The root move and the plies 0 to lastDepth below it
+        long deepestNodes = lastDepth >= 0 ? depthNodes[lastDepth] : nodes;
+        branchingFactorSum = Math.pow(Math.max(deepestNodes, 1), 1.0 / (depthSum + 2));
+    }
+
+    /**
+     * Adds the metrics of other moves to these ones.
+     *
+     * @param other Metrics to add.
+     */
+    public void add(SearchMetrics other) {
+        moves += other.moves;
+        nodes += other.nodes;
+        for (int i = 0; i < cutoffsByIndex.length; i++)
+            cutoffsByIndex[i] += other.cutoffsByIndex[i];
+        tableHits += other.tableHits;
+        tableMisses += other.tableMisses;
+        tableCollisions += other.tableCollisions;
+        depthSum += other.depthSum;
+        branchingFactorSum += other.branchingFactorSum;
+        for (int depth = 0; depth <= MAX_DEPTH; depth++) {
+            depthNanos[depth] += other.depthNanos[depth];
+            depthNodes[depth] += other.depthNodes[depth];
+        }
+        nanos += other.nanos;
+    }
+
+    /**
+     * Gets the number of moves recorded.
+     *
+     * @return the number of moves
+     */
+    public long getMoves() {
+        return moves;
+    }
+
+    /**
+     * Gets the number of nodes visited.
+     *
+     * @return the number of nodes
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Gets the number of cutoffs caused by the move searched at a given index.
+     *
+     * @param moveIndex Index of the move in the search order, from 0.
+     * @return the number of cutoffs
+     */
+    public long getCutoffs(int moveIndex) {
+        return cutoffsByIndex[moveIndex];
+    }
+
+    /**
+     * Gets the share of the cutoffs caused by the first move searched.
+     *
+     * @return the share, between 0 and 1
+     */
+    public double getFirstMoveCutoffRate() {
+        long cutoffs = 0;
+        for (long count : cutoffsByIndex)
+            cutoffs += count;
+        return cutoffs == 0 ? 0 : (double) cutoffsByIndex[0] / cutoffs;
+    }
+
+    /**
+     * Gets the effective branching factor, averaged over the moves.
+     *
+     * @return the branching factor
+     */
+    public double getEffectiveBranchingFactor() {
+        return moves == 0 ? 0 : branchingFactorSum / moves;
+    }
+
+    /**
+     * Gets the depth reached, averaged over the moves.
+     *
+     * @return the depth
+     */
+    public double getDepth() {
+        return moves == 0 ? 0 : (double) depthSum / moves;
+    }
+
+    /**
+     * Gets the share of transposition table probes that found their position.
+     *
+     * @return the hit rate, between 0 and 1
+     */
+    public double getTableHitRate() {
+        long probes = tableHits + tableMisses;
+        return probes == 0 ? 0 : (double) tableHits / probes;
+    }
+
+    /**
+     * Gets the number of transposition table misses where the bucket was holding
+     * other positions.
+     *
+     * @return the number of collisions
+     */
+    public long getTableCollisions() {
+        return tableCollisions;
+    }
+
+    /**
+     * Gets the time spent on the iterations of a depth.
+     *
+     * @param depth Depth of the iterations.
+     * @return the time, in nanoseconds
+     */
+    public long getDepthNanos(int depth) {
+        return depthNanos[depth];
+    }
+
+    /**
+     * Gets the nodes visited by the iterations of a depth.
+     *
+     * @param depth Depth of the iterations.
+     * @return the number of nodes
+     */
+    public long getDepthNodes(int depth) {
+        return depthNodes[depth];
+    }
+
+    /**
+     * Gets the time spent searching.
+     *
+     * @return the time, in nanoseconds
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Gets the search speed.
+     *
+     * @return the number of nodes visited per second
+     */
+    public double getNodesPerSecond() {
+        return nodes * 1e9 / Math.max(1, nanos);
+    }
+
+    /**
+     * Formats the metrics as a single line JSON object.
+     *
+     * @param engine Name of the engine that searched.
+     * @param ply    Number of pieces on the board before the move, or -1 for
+     *               metrics of several moves.
+     * @return the JSON object
+     */
+    public String toJson(String engine, int ply) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT,
+                "{\"engine\": \"%s\", \"ply\": %d, \"moves\": %d, \"nodes\": %d, \"nanos\": %d, "
+                        + "\"nodesPerSecond\": %.0f, \"depth\": %.2f, \"branchingFactor\": %.3f, "
+                        + "\"tableHitRate\": %.4f, \"tableCollisions\": %d, \"cutoffsByIndex\": [",
+                engine.replace("\"", "\\\""), ply, moves, nodes, nanos, getNodesPerSecond(), getDepth(),
+                getEffectiveBranchingFactor(), getTableHitRate(), tableCollisions));
+        int indexCount = cutoffIndexCount();
+        for (int i = 0; i < indexCount; i++)
+            sb.append(i == 0 ? "" : ", ").append(cutoffsByIndex[i]);
+        sb.append("], \"depthNanos\": [");
+        int deepest = deepestDepth();
+        for (int depth = 0; depth <= deepest; depth++)
+            sb.append(depth == 0 ? "" : ", ").append(depthNanos[depth]);
+        sb.append("], \"depthNodes\": [");
+        for (int depth = 0; depth <= deepest; depth++)
+            sb.append(depth == 0 ? "" : ", ").append(depthNodes[depth]);
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Finds how many move indexes to report, up to the last one with a cutoff,
+     * since boards have up to {@link Geometry#MAX_COLUMN_COUNT} columns.
+     *
+     * @return the number of indexes, at least 1
+     */
+    private int cutoffIndexCount() {
+        int count = cutoffsByIndex.length;
+        while (count > 1 && cutoffsByIndex[count - 1] == 0)
+            count--;
+        return count;
+    }
+
+    /**
+     * Finds the deepest depth with a completed iteration.
+     *
+     * @return the depth, or -1
+     */
+    private int deepestDepth() {
+        int deepest = MAX_DEPTH;
+        while (deepest >= 0 && depthNodes[deepest] == 0)
+            deepest--;
+        return deepest;
+    }
+
+    /**
+     * Summarizes the metrics on a few lines.
+     *
+     * @return the summary
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "Nodes: %d (%.0f/s), depth: %.1f, branching factor: %.2f%n", nodes,
+                getNodesPerSecond(), getDepth(), getEffectiveBranchingFactor()));
+        sb.append(String.format(Locale.ROOT, "TT hit rate: %.1f%%, collisions: %d%n", 100 * getTableHitRate(),
+                tableCollisions));
+        sb.append(String.format(Locale.ROOT, "First move cutoffs: %.1f%%, by index:",
+                100 * getFirstMoveCutoffRate()));
+        int indexCount = cutoffIndexCount();
+        for (int i = 0; i < indexCount; i++)
+            sb.append(" " + cutoffsByIndex[i]);
+        int deepest = deepestDepth();
+        if (deepest >= 0) {
+            sb.append("\nms per depth:");
+            for (int depth = 0; depth <= deepest; depth++)
+                sb.append(String.format(Locale.ROOT, " %.1f", depthNanos[depth] / 1e6 / Math.max(1, moves)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,364 @@
+package ConnectFour;
+
+/**
+ * Strong solver: finds the exact outcome of a position under perfect play,
+ * with no depth limit.
+ * <p>
+ * Scores are from the point of view of the player to move. A positive score
+ * is a win, the earlier the win the higher the score: winning with the last
+ * piece of the board scores 1, and every two plies sooner add 1. A negative
+ * score is a loss in the same way, and 0 is a draw. See
+ * {@link #pliesToEnd(int, int)} to turn a score into a number of moves.
+ * <p>
+ * The search is a negamax with Alpha Beta pruning, driven by null-window
+ * searches that narrow the range of possible scores. It works directly on two
+ * bitboards (the pieces of the player to move, and every piece), with the
+ * layout of {@link Position}, so it never allocates. Moves that would let the
+ * opponent win on the next turn are never explored, and the remaining moves are
+ * tried by the number of winning cells they create, then center first. Upper
+ * bounds are kept in a table so that transpositions are only solved once, and
+ * the positions of an {@link OpeningBook} are never searched.
+ */
+public class Solver {
+    private static final int WIDTH = Position.COLUMN_COUNT;
+    private static final int HEIGHT = Position.ROW_COUNT;
+    private static final int STRIDE = HEIGHT + 1;
+    private static final int SIZE = WIDTH * HEIGHT;
+
+    public static final int MIN_SCORE = -SIZE / 2 + 3;
+    public static final int MAX_SCORE = (SIZE + 1) / 2 - 3;
+
+    private static final long BOTTOM_ROW = bottomRow();
+    private static final long BOARD = BOTTOM_ROW * ((1L << HEIGHT) - 1);
+    private static final int[] COLUMN_ORDER = centerFirstOrder();
+
+    private final long[] tableKeys;
+    private final byte[] tableValues;
+    private final int tableShift;
+
+    // One buffer per ply, so the recursion never allocates
+    private final long[][] sortedMoves = new long[SIZE][WIDTH];
+    private final int[][] sortedScores = new int[SIZE][WIDTH];
+
+    private OpeningBook openingBook;
+    private int bookMaxPly = -1;
+
+    private long nodeCount;
+
+    /**
+     * Constructs a new solver.
+     *
+     * @param megabytes Memory budget of the solver's table, in megabytes.
+     */
+    public Solver(int megabytes) {
+        long budgetEntries = (long) megabytes * 1024 * 1024 / (Long.BYTES + 1);
+        int entries = Integer.highestOneBit((int) Math.max(2, Math.min(budgetEntries, 1 << 30)));
+        tableKeys = new long[entries];
+        tableValues = new byte[entries];
+        tableShift = Long.SIZE - Integer.numberOfTrailingZeros(entries);
+    }
+
+    /**
+     * Solves a position. The game must not be over yet.
+     *
+     * @param position Current state of the board, of the standard geometry.
+     * @param player   Player about to move.
+     * @return the exact score of the position for the player to move.
+     * @throws IllegalArgumentException If the board isn't the standard one.
+     */
+    public int solve(Position position, int player) {
+        checkGeometry(position);
+        return solve(position.getPieces(player), position.getMask(), position.getMoveCount());
+    }
+
+    /**
+     * Scores every column of a position.
+     *
+     * @param position Current state of the board, of the standard geometry,
+     *                 left unchanged.
+     * @param player   Player about to move.
+     * @param scores   Receives the exact score of every playable column, for the
+     *                 player about to move.
+     * @throws IllegalArgumentException If the board isn't the standard one.
+     */
+    public void analyze(Position position, int player, int[] scores) {
+        checkGeometry(position);
+        long current = position.getPieces(player);
+        long mask = position.getMask();
+        int moves = position.getMoveCount();
+        for (int col = 0; col < WIDTH; col++) {
+            if (!position.canPlay(col))
+                continue;
+            long move = (mask + bottomMask(col)) & columnMask(col);
+            if ((winningCells(current, mask) & move) != 0)
+                scores[col] = (SIZE + 1 - moves) / 2;
+            else
+                scores[col] = -solve(current ^ mask, mask | move, moves + 1);
+        }
+    }
+
+    /**
+     * Rejects the boards the solver's bitboards don't describe.
+     *
+     * @param position Board to solve.
+     * @throws IllegalArgumentException If the board isn't the standard one.
+     */
+    private static void checkGeometry(Position position) {
+        if (!position.getGeometry().isStandard())
+            throw new IllegalArgumentException("The solver only plays on the standard board, not "
+                    + position.getGeometry());
+    }
+
+    /**
+     * Converts a score to the number of plies left before the game ends, if both
+     * players play perfectly.
+     *
+     * @param score Score returned by the solver.
+     * @param moves Number of pieces on the board of the solved position.
+     * @return the number of plies left, including the winning move, or -1 for a
+     *         draw.
+     */
+    public static int pliesToEnd(int score, int moves) {
+        if (score == 0)
+            return -1;
+        int plies = SIZE + 2 - 2 * Math.abs(score) - moves;
+        // The player to move plays the odd plies, the opponent the even ones
+        boolean winnerMoves = score > 0;
+        if ((plies % 2 == 1) != winnerMoves)
+            plies--;
+        return plies;
+    }
+
+    /**
+     * Sets the book used to score the positions it covers without searching
+     * them.
+     *
+     * @param openingBook The book, or null to always search.
+     */
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.openingBook = openingBook;
+        bookMaxPly = openingBook == null ? -1 : openingBook.getMaxPly();
+    }
+
+    /**
+     * Empties the solver's table.
+     */
+    public void clear() {
+        java.util.Arrays.fill(tableKeys, 0);
+        java.util.Arrays.fill(tableValues, (byte) 0);
+    }
+
+    /**
+     * Gets the number of nodes visited since the solver was built.
+     *
+     * @return the number of nodes
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Solves a position by narrowing the range of possible scores with
+     * null-window searches, looking at small absolute scores first.
+     *
+     * @param current Pieces of the player to move.
+     * @param mask    Every piece on the board.
+     * @param moves   Number of pieces on the board.
+     * @return the exact score of the position.
+     */
+    int solve(long current, long mask, int moves) {
+        if ((winningCells(current, mask) & possibleMoves(mask)) != 0)
+            return (SIZE + 1 - moves) / 2;
+        int min = -(SIZE - moves) / 2;
+        int max = (SIZE + 1 - moves) / 2;
+        while (min < max) {
+            int median = min + (max - min) / 2;
+            if (median <= 0 && min / 2 < median)
+                median = min / 2;
+            else if (median >= 0 && max / 2 > median)
+                median = max / 2;
+            int score = negamax(current, mask, moves, median, median + 1);
+            if (score <= median)
+                max = score;
+            else
+                min = score;
+        }
+        return min;
+    }
+
+    /**
+     * Negamax with Alpha Beta pruning. The player to move must not be able to win
+     * right away.
+     *
+     * @param current Pieces of the player to move.
+     * @param mask    Every piece on the board.
+     * @param moves   Number of pieces on the board.
+     * @param alpha   Lower bound of the window.
+     * @param beta    Upper bound of the window.
+     * @return the exact score if it is within the window, otherwise a bound of
+     *         it on the side of the window it falls.
+     */
+    private int negamax(long current, long mask, int moves, int alpha, int beta) {
+        nodeCount++;
+        long next = nonLosingMoves(current, mask);
+        if (next == 0) // Every move lets the opponent win
+            return -(SIZE - moves) / 2;
+        if (moves >= SIZE - 2) // Neither player can win with the last two pieces
+            return 0;
+
+        // The opponent can't win on their next move, which bounds the score from below
+        int min = -(SIZE - 2 - moves) / 2;
+        if (alpha < min) {
+            alpha = min;
+            if (alpha >= beta)
+                return alpha;
+        }
+        long key = current + mask;
+        if (moves <= bookMaxPly) {
+            int score = openingBook.lookup(key);
+            if (score != OpeningBook.NOT_FOUND)
+                return score;
+        }
+
+        // We can't win on this move either, which bounds the score from above
+        int max = (SIZE - 1 - moves) / 2;
+        int index = (int) ((key * 0x9E3779B97F4A7C15L) >>> tableShift);
+        if (tableKeys[index] == key)
+            max = tableValues[index] + MIN_SCORE - 1;
+        if (beta > max) {
+            beta = max;
+            if (alpha >= beta)
+                return beta;
+        }
+
+        // Sort the moves by how many winning cells they create, center first on ties
+        long[] candidates = sortedMoves[moves];
+        int[] scores = sortedScores[moves];
+        int count = 0;
+        for (int col : COLUMN_ORDER) {
+            long move = next & columnMask(col);
+            if (move == 0)
+                continue;
+            int score = Long.bitCount(winningCells(current | move, mask));
+            int i = count++;
+            while (i > 0 && scores[i - 1] < score) {
+                candidates[i] = candidates[i - 1];
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            candidates[i] = move;
+            scores[i] = score;
+        }
+
+        for (int i = 0; i < count; i++) {
+            long nextMask = mask | candidates[i];
+            int score = -negamax(current ^ mask, nextMask, moves + 1, -beta, -alpha);
+            if (score >= beta)
+                return score;
+            if (score > alpha)
+                alpha = score;
+        }
+
+        tableKeys[index] = key;
+        tableValues[index] = (byte) (alpha - MIN_SCORE + 1);
+        return alpha;
+    }
+
+    /**
+     * Finds the moves that don't let the opponent win on their next turn.
+     *
+     * @param current Pieces of the player to move.
+     * @param mask    Every piece on the board.
+     * @return the cells of the non losing moves, 0 if every move loses.
+     */
+    private static long nonLosingMoves(long current, long mask) {
+        long possible = possibleMoves(mask);
+        long opponentWins = winningCells(current ^ mask, mask);
+        long forced = possible & opponentWins;
+        if (forced != 0) {
+            if ((forced & (forced - 1)) != 0) // Two threats can't both be blocked
+                return 0;
+            possible = forced;
+        }
+        // Never play right below a cell where the opponent would win
+        return possible & ~(opponentWins >> 1);
+    }
+
+    /**
+     * Finds the empty cells that would complete a line of four for a player,
+     * playable now or not.
+     *
+     * @param pieces Pieces of the player.
+     * @param mask   Every piece on the board.
+     * @return the winning cells.
+     */
+    static long winningCells(long pieces, long mask) {
+        // Vertical
+        long cells = (pieces << 1) & (pieces << 2) & (pieces << 3);
+
+        // Horizontal and both diagonals, the gap can be at either end or inside
+        for (int step = STRIDE - 1; step <= STRIDE + 1; step++) {
+            long pair = (pieces << step) & (pieces << (2 * step));
+            cells |= pair & (pieces << (3 * step));
+            cells |= pair & (pieces >> step);
+            pair = (pieces >> step) & (pieces >> (2 * step));
+            cells |= pair & (pieces << step);
+            cells |= pair & (pieces >> (3 * step));
+        }
+        return cells & (BOARD ^ mask);
+    }
+
+    /**
+     * Finds the cells where a piece can be dropped.
+     *
+     * @param mask Every piece on the board.
+     * @return the lowest empty cell of every column that isn't full.
+     */
+    static long possibleMoves(long mask) {
+        return (mask + BOTTOM_ROW) & BOARD;
+    }
+
+    /**
+     * Gets the bottom cell of a column.
+     *
+     * @param col Index of the column.
+     * @return the bit of the cell.
+     */
+    private static long bottomMask(int col) {
+        return 1L << (col * STRIDE);
+    }
+
+    /**
+     * Gets every playable cell of a column.
+     *
+     * @param col Index of the column.
+     * @return the bits of the cells.
+     */
+    static long columnMask(int col) {
+        return ((1L << HEIGHT) - 1) << (col * STRIDE);
+    }
+
+    /**
+     * Builds the mask of the bottom cell of every column.
+     *
+     * @return the mask
+     */
+    private static long bottomRow() {
+        long mask = 0;
+        for (int col = 0; col < WIDTH; col++)
+            mask |= bottomMask(col);
+        return mask;
+    }
+
+    /**
+     * Lists the columns from the center out.
+     *
+     * @return the columns, e.g. 3, 2, 4, 1, 5, 0, 6
+     */
+    static int[] centerFirstOrder() {
+        int[] order = new int[WIDTH];
+        for (int i = 0; i < WIDTH; i++)
+            order[i] = WIDTH / 2 + (1 - 2 * (i % 2)) * (i + 1) / 2;
+        return order;
+    }
+}
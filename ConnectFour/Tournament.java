@@ -0,0 +1,462 @@
+package ConnectFour;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays many headless games between two Bot configurations, of any kind of
+ * Bot, spread over a pool of threads. Every game has its own board and its own
+ * seed, derived from the tournament's seed, and the Bots take turns playing
+ * first. Recorded games can be played again from their seed, see
+ * {@link #replay}.
+ */
+public class Tournament {
+    private static final int MAX_MOVES = Geometry.MAX_CELL_COUNT;
+
+    private final BotFactory firstConfig;
+    private final BotFactory secondConfig;
+    private final int threadCount;
+    private final Geometry geometry;
+    private MetricsExporter metricsExporter;
+    private GameRecordWriter gameRecorder;
+
+    /**
+     * Constructs a new tournament.
+     *
+     * @param firstConfig  Settings of the first Bot, playing first in even games.
+     * @param secondConfig Settings of the second Bot, playing first in odd games.
+     * @param threadCount  Number of games played at the same time.
+     */
+    public Tournament(BotFactory firstConfig, BotFactory secondConfig, int threadCount) {
+        this(firstConfig, secondConfig, threadCount, Geometry.STANDARD);
+    }
+
+    /**
+     * Constructs a new tournament on a board of any size. Only minimax Bots play
+     * on boards other than the standard one.
+     *
+     * @param firstConfig  Settings of the first Bot, playing first in even games.
+     * @param secondConfig Settings of the second Bot, playing first in odd games.
+     * @param threadCount  Number of games played at the same time.
+     * @param geometry     Size of the board and length of the winning lines.
+     */
+    public Tournament(BotFactory firstConfig, BotFactory secondConfig, int threadCount, Geometry geometry) {
+        this.firstConfig = firstConfig;
+        this.secondConfig = secondConfig;
+        this.threadCount = threadCount;
+        this.geometry = geometry;
+    }
+
+    /**
+     * Exports the metrics of every searched move of the next tournaments.
+     *
+     * @param metricsExporter Receives the metrics, null to stop exporting.
+     */
+    public void setMetricsExporter(MetricsExporter metricsExporter) {
+        this.metricsExporter = metricsExporter;
+    }
+
+    /**
+     * Records the moves of every game of the next tournaments.
+     *
+     * @param gameRecorder Receives the games, null to stop recording.
+     */
+    public void setGameRecorder(GameRecordWriter gameRecorder) {
+        this.gameRecorder = gameRecorder;
+    }
+
+    /**
+     * Plays the games and aggregates their results.
+     *
+     * @param numberOfGames Number of games to play.
+     * @param seed          Seed of the tournament, the same seed plays the same
+     *                      games.
+     * @return The results of all the games.
+     * @throws InterruptedException If interrupted while waiting for the games.
+     */
+    public Result run(int numberOfGames, long seed) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        long startTime = System.nanoTime();
+        try {
+            List<Future<Result>> workers = new ArrayList<>();
+            for (int worker = 0; worker < threadCount; worker++) {
+                int firstGame = worker;
+                workers.add(pool.submit(() -> playGames(firstGame, numberOfGames, seed)));
+            }
+            Result total = new Result();
+            for (Future<Result> worker : workers)
+                total.add(worker.get());
+            total.wallNanos = System.nanoTime() - startTime;
+            return total;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A tournament game failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays the games of an earlier tournament again, each from its own seed, and
+     * checks that every game repeats move for move, with the same number of nodes
+     * searched. Bots repeat their games as long as they don't depend on the
+     * clock: minimax Bots always do, MCTS Bots need a playout budget, no time
+     * limit and a single thread. Replaying the same file with two builds compares
+     * their speed on the very same search trees.
+     *
+     * @param reader Games of the earlier tournament, played by Bots with the same
+     *               settings as this tournament's, shared by the threads.
+     * @return The results of the games played again.
+     * @throws IllegalArgumentException If the file was played on another board or
+     *                                  by other Bots.
+     * @throws IllegalStateException    If a game doesn't repeat.
+     * @throws InterruptedException     If interrupted while waiting for the games.
+     */
+    public Result replay(GameRecordReader reader) throws InterruptedException {
+        Geometry recorded = reader.getGeometry();
+        if (recorded.getColumnCount() != geometry.getColumnCount() || recorded.getRowCount() != geometry.getRowCount()
+                || recorded.getConnectLength() != geometry.getConnectLength())
+            throw new IllegalArgumentException("The games were played on " + recorded + ", not " + geometry);
+        if (!reader.getBot(0).equals(firstConfig.toString()) || !reader.getBot(1).equals(secondConfig.toString()))
+            throw new IllegalArgumentException("The games were played by " + reader.getBot(0) + " and "
+                    + reader.getBot(1));
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        long startTime = System.nanoTime();
+        try {
+            List<Future<Result>> workers = new ArrayList<>();
+            for (int worker = 0; worker < threadCount; worker++)
+                workers.add(pool.submit(() -> replayGames(reader)));
+            Result total = new Result();
+            for (Future<Result> worker : workers)
+                total.add(worker.get());
+            total.wallNanos = System.nanoTime() - startTime;
+            return total;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replaying the games failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays every threadCount-th game, starting from a given one, with Bots owned
+     * by the calling thread.
+     *
+     * @param firstGame     Index of the first game to play.
+     * @param numberOfGames Number of games in the whole tournament.
+     * @param seed          Seed of the tournament.
+     * @return The results of the games played.
+     */
+    private Result playGames(int firstGame, int numberOfGames, long seed) {
+        Bot firstBot = firstConfig.createPlayer();
+        Bot secondBot = secondConfig.createPlayer();
+        Result result = new Result();
+        int[] moves = new int[MAX_MOVES];
+        long[] nodeCounts = new long[2];
+        try {
+            for (int game = firstGame; game < numberOfGames; game += threadCount) {
+                int moveCount = playGame(game, seed, firstBot, secondBot, moves, nodeCounts, result);
+                if (gameRecorder != null)
+                    gameRecorder.write(game, isFirstBotStarting(game), moves, moveCount, nodeCounts);
+            }
+        } finally {
+            firstBot.close();
+            secondBot.close();
+        }
+        result.addBots(firstBot, secondBot);
+        return result;
+    }
+
+    /**
+     * Plays recorded games again until the file runs out, with Bots owned by the
+     * calling thread, and checks them against the record.
+     *
+     * @param reader File to read the games from, shared by the threads.
+     * @return The results of the games played.
+     * @throws IllegalStateException If a game doesn't repeat.
+     */
+    private Result replayGames(GameRecordReader reader) {
+        Bot firstBot = firstConfig.createPlayer();
+        Bot secondBot = secondConfig.createPlayer();
+        Result result = new Result();
+        GameRecord record = new GameRecord();
+        int[] moves = new int[MAX_MOVES];
+        long[] nodeCounts = new long[2];
+        try {
+            while (true) {
+                try {
+                    synchronized (reader) {
+                        if (!reader.next(record))
+                            break;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                int game = record.getGame();
+                if (record.isFirstBotStarting() != isFirstBotStarting(game))
+                    throw new IllegalStateException("Game " + game + " was started by the wrong Bot");
+                int moveCount = playGame(game, reader.getSeed(), firstBot, secondBot, moves, nodeCounts, result);
+                for (int ply = 0; ply < Math.min(moveCount, record.getMoveCount()); ply++) {
+                    if (moves[ply] != record.getMove(ply))
+                        throw new IllegalStateException("Game " + game + " diverges at ply " + ply + ": column "
+                                + moves[ply] + " instead of " + record.getMove(ply));
+                }
+                if (moveCount != record.getMoveCount())
+                    throw new IllegalStateException("Game " + game + " lasts " + moveCount + " moves instead of "
+                            + record.getMoveCount());
+                for (int bot = 0; bot < 2; bot++) {
+                    if (record.getNodeCount(bot) >= 0 && nodeCounts[bot] != record.getNodeCount(bot))
+                        throw new IllegalStateException("Game " + game + ": " + (bot == 0 ? firstConfig : secondConfig)
+                                + " searched " + nodeCounts[bot] + " nodes instead of " + record.getNodeCount(bot));
+                }
+            }
+        } finally {
+            firstBot.close();
+            secondBot.close();
+        }
+        result.addBots(firstBot, secondBot);
+        return result;
+    }
+
+    /**
+     * Checks which Bot plays first in a game, they take turns.
+     *
+     * @param game Index of the game in the tournament.
+     * @return true if the first Bot plays first, as player_1
+     */
+    private static boolean isFirstBotStarting(int game) {
+        return game % 2 == 0;
+    }
+
+    /**
+     * Plays a game of the tournament. Its seed only depends on the tournament's
+     * seed and the index of the game, and the Bots forget everything from their
+     * earlier games, so the game can be played again on its own.
+     *
+     * @param game       Index of the game in the tournament.
+     * @param seed       Seed of the tournament.
+     * @param firstBot   Bot of the first configuration.
+     * @param secondBot  Bot of the second configuration.
+     * @param moves      Receives the columns played.
+     * @param nodeCounts Receives the nodes searched during the game by the first
+     *                   Bot, then the second one.
+     * @param result     Receives the outcome of the game.
+     * @return The number of moves of the game.
+     */
+    private int playGame(int game, long seed, Bot firstBot, Bot secondBot, int[] moves, long[] nodeCounts,
+            Result result) {
+        SplittableRandom gameRandom = new SplittableRandom(seed + game);
+        firstBot.newGame(gameRandom.nextLong());
+        secondBot.newGame(gameRandom.nextLong());
+        long firstBotNodes = firstBot.getNodeCount();
+        long secondBotNodes = secondBot.getNodeCount();
+        boolean firstBotStarts = isFirstBotStarting(game);
+        int moveCount = playGame(firstBotStarts ? firstBot : secondBot, firstBotStarts ? secondBot : firstBot,
+                firstBotStarts, moves, result);
+        nodeCounts[0] = firstBot.getNodeCount() - firstBotNodes;
+        nodeCounts[1] = secondBot.getNodeCount() - secondBotNodes;
+        return moveCount;
+    }
+
+    /**
+     * Plays a single game until a Bot wins or the board is full.
+     *
+     * @param redBot         Bot playing first, as player_1.
+     * @param yellowBot      Bot playing second, as player_2.
+     * @param firstBotStarts Whether the red Bot is the first configuration.
+     * @param moves          Receives the columns played.
+     * @param result         Receives the outcome of the game.
+     * @return The number of moves of the game.
+     */
+    private int playGame(Bot redBot, Bot yellowBot, boolean firstBotStarts, int[] moves, Result result) {
+        Position position = new Position(geometry);
+        int player = Position.PLAYER_1;
+        while (true) {
+            Bot bot = (player == Position.PLAYER_1) ? redBot : yellowBot;
+            int col = bot.chooseMove(position, player);
+            boolean firstBotMoved = (player == Position.PLAYER_1) == firstBotStarts;
+            result.moves[firstBotMoved ? 0 : 1]++;
+            if (metricsExporter != null) {
+                SearchMetrics metrics = bot.getLastMoveMetrics();
+                if (metrics != null)
+                    metricsExporter.export((firstBotMoved ? firstConfig : secondConfig).toString(),
+                            position.getMoveCount(), metrics);
+            }
+            moves[position.getMoveCount()] = col;
+            position.play(col, player);
+            if (position.lastMoveWon(col)) {
+                boolean firstBotWon = (player == Position.PLAYER_1) == firstBotStarts;
+                if (firstBotWon)
+                    result.firstWins++;
+                else
+                    result.secondWins++;
+                break;
+            }
+            if (position.isFull()) {
+                result.ties++;
+                break;
+            }
+            player = 1 - player;
+        }
+        result.gameLengths[position.getMoveCount()]++;
+        return position.getMoveCount();
+    }
+
+    /**
+     * Aggregated results of a tournament.
+     */
+    public class Result {
+        private long firstWins;
+        private long secondWins;
+        private long ties;
+        private final long[] gameLengths = new long[MAX_MOVES + 1];
+        private final long[] nodes = new long[2];
+        private final long[] searchNanos = new long[2];
+        private final long[] moves = new long[2];
+        private final SearchMetrics[] metrics = { new SearchMetrics(), new SearchMetrics() };
+        private long wallNanos;
+
+        /**
+         * Adds the results of other games to these ones.
+         *
+         * @param other Results to add.
+         */
+        private void add(Result other) {
+            firstWins += other.firstWins;
+            secondWins += other.secondWins;
+            ties += other.ties;
+            for (int moves = 0; moves <= MAX_MOVES; moves++)
+                gameLengths[moves] += other.gameLengths[moves];
+            for (int bot = 0; bot < 2; bot++) {
+                nodes[bot] += other.nodes[bot];
+                searchNanos[bot] += other.searchNanos[bot];
+                moves[bot] += other.moves[bot];
+                metrics[bot].add(other.metrics[bot]);
+            }
+        }
+
+        /**
+         * Adds the searches of both Bots, once they played their games.
+         *
+         * @param firstBot  Bot of the first configuration.
+         * @param secondBot Bot of the second configuration.
+         */
+        private void addBots(Bot firstBot, Bot secondBot) {
+            nodes[0] = firstBot.getNodeCount();
+            nodes[1] = secondBot.getNodeCount();
+            searchNanos[0] = firstBot.getSearchNanos();
+            searchNanos[1] = secondBot.getSearchNanos();
+            addMetrics(0, firstBot.getTotalMetrics());
+            addMetrics(1, secondBot.getTotalMetrics());
+        }
+
+        /**
+         * Adds the search metrics of a Bot to these results.
+         *
+         * @param bot          0 for the first Bot, 1 for the second one.
+         * @param totalMetrics Metrics of the Bot, or null if it records none.
+         */
+        private void addMetrics(int bot, SearchMetrics totalMetrics) {
+            if (totalMetrics != null)
+                metrics[bot].add(totalMetrics);
+        }
+
+        /**
+         * Gets the search metrics of a Bot, over all its searched moves.
+         *
+         * @param bot 0 for the first Bot, 1 for the second one.
+         * @return the metrics, with no moves for Bots that don't record any
+         */
+        public SearchMetrics getMetrics(int bot) {
+            return metrics[bot];
+        }
+
+        /**
+         * Gets the number of games won by the first Bot.
+         *
+         * @return the number of wins
+         */
+        public long getFirstWins() {
+            return firstWins;
+        }
+
+        /**
+         * Gets the number of games won by the second Bot.
+         *
+         * @return the number of wins
+         */
+        public long getSecondWins() {
+            return secondWins;
+        }
+
+        /**
+         * Gets the number of tied games.
+         *
+         * @return the number of ties
+         */
+        public long getTies() {
+            return ties;
+        }
+
+        /**
+         * Gets the number of games that lasted a given number of moves.
+         *
+         * @param moves Length of the games.
+         * @return the number of games
+         */
+        public long getGameCount(int moves) {
+            return gameLengths[moves];
+        }
+
+        /**
+         * Gets the search speed of a Bot.
+         *
+         * @param bot 0 for the first Bot, 1 for the second one.
+         * @return the number of nodes searched per second
+         */
+        public double getNodesPerSecond(int bot) {
+            return nodes[bot] * 1e9 / Math.max(1, searchNanos[bot]);
+        }
+
+        /**
+         * Gets the average time a Bot spent on a move, to compare Bots at equal
+         * budgets.
+         *
+         * @param bot 0 for the first Bot, 1 for the second one.
+         * @return the time per move, in milliseconds
+         */
+        public double getMillisPerMove(int bot) {
+            return searchNanos[bot] / 1e6 / Math.max(1, moves[bot]);
+        }
+
+        /**
+         * Print a summary of the results
+         */
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            long games = firstWins + secondWins + ties;
+            sb.append(games + " games on " + geometry + " in " + (wallNanos / 1_000_000) + " ms\n");
+            sb.append(firstConfig + " wins: " + firstWins + "\n");
+            sb.append(secondConfig + " wins: " + secondWins + "\n");
+            sb.append("Ties: " + ties + "\n");
+            sb.append(String.format("Nodes/sec: %.0f vs %.0f%n", getNodesPerSecond(0), getNodesPerSecond(1)));
+            sb.append(String.format("Search ms/move: %.2f vs %.2f%n", getMillisPerMove(0), getMillisPerMove(1)));
+            for (int bot = 0; bot < 2; bot++) {
+                if (metrics[bot].getMoves() > 0)
+                    sb.append((bot == 0 ? firstConfig : secondConfig) + " searches:\n" + metrics[bot] + "\n");
+            }
+            sb.append("Game lengths:");
+            for (int moves = 0; moves <= MAX_MOVES; moves++) {
+                if (gameLengths[moves] > 0)
+                    sb.append("\n" + moves + " moves: " + gameLengths[moves]);
+            }
+            return sb.toString();
+        }
+    }
+}
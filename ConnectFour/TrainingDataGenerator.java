@@ -0,0 +1,292 @@
+package ConnectFour;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates labeled positions from self-play games between Bots of varying
+ * skill, the likelyhood of searching instead of playing at random, like the
+ * simulated humans of {@link ConnectFour}. Every position reached by the games
+ * is labeled with a minimax search, the first time it is seen: the positions
+ * seen so far are kept in a {@link PositionSet} shared by every worker.
+ * <p>
+ * Every worker thread appends its positions to its own shard, shard-N.c4d in the
+ * output directory, so the workers never wait for each other. Shards are a
+ * plain sequence of fixed size entries, without header, so running the
+ * generator again appends to them:
+ *
+ * <pre>
+ * long  pieces of player_1
+ * long  pieces of player_2
+ * byte  player to move
+ * byte  best column
+ * short score of the search, from the point of view of the player to move
+ * </pre>
+ *
+ * Only the positions of a single run are deduplicated.
+ * <p>
+ * Usage: java ConnectFour.TrainingDataGenerator output-dir games [threads]
+ * [label-depth] [max-positions] [seed]
+ */
+public class TrainingDataGenerator {
+    public static final int ENTRY_BYTES = 2 * Long.BYTES + 2 + Short.BYTES;
+
+    private static final int[] SKILL_LEVELS = { 40, 60, 80, 100 };
+    private static final int SELF_PLAY_DEPTH = 4;
+    private static final int SELF_PLAY_TABLE_MEGABYTES = 1;
+    private static final int LABEL_TABLE_MEGABYTES = 16;
+    private static final int DEFAULT_LABEL_DEPTH = 8;
+    private static final int DEFAULT_MAX_POSITIONS = 10_000_000;
+
+    private final Path outputDirectory;
+    private final int threadCount;
+    private final int labelDepth;
+    private final PositionSet seen;
+    private final AtomicLong positionCount = new AtomicLong();
+    private final AtomicLong duplicateCount = new AtomicLong();
+
+    /**
+     * Constructs a new generator.
+     *
+     * @param outputDirectory Directory of the shards, created if needed.
+     * @param threadCount     Number of games played at the same time, and of
+     *                        shards.
+     * @param labelDepth      Depth of the search labeling every position.
+     * @param maxPositions    Number of positions after which the games stop.
+     */
+    public TrainingDataGenerator(Path outputDirectory, int threadCount, int labelDepth, int maxPositions) {
+        this.outputDirectory = outputDirectory;
+        this.threadCount = threadCount;
+        this.labelDepth = labelDepth;
+        seen = new PositionSet(maxPositions);
+    }
+
+    /**
+     * Generates a data set.
+     *
+     * @param args The output directory and the number of games, then optionally
+     *             the number of threads, the depth of the labels, the maximum
+     *             number of positions and the seed.
+     * @throws IOException          If the shards can't be written.
+     * @throws InterruptedException If interrupted while playing.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: java ConnectFour.TrainingDataGenerator output-dir games [threads]"
+                    + " [label-depth] [max-positions] [seed]");
+            return;
+        }
+        int games = Integer.parseInt(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int labelDepth = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_LABEL_DEPTH;
+        int maxPositions = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_MAX_POSITIONS;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : System.nanoTime();
+        TrainingDataGenerator generator = new TrainingDataGenerator(Paths.get(args[0]), threads, labelDepth,
+                maxPositions);
+        long startTime = System.nanoTime();
+        generator.run(games, seed);
+        long millis = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+        System.out.println(generator.getPositionCount() + " positions (" + generator.getDuplicateCount()
+                + " duplicates skipped) in " + millis + " ms, "
+                + generator.getPositionCount() * 3_600_000 / millis + " positions/hour");
+    }
+
+    /**
+     * Plays the games, spread over the worker threads, until they are all played
+     * or the maximum number of positions is reached.
+     *
+     * @param numberOfGames Number of games to play.
+     * @param seed          Seed of the games, the same seed plays the same games
+     *                      with a single thread.
+     * @throws IOException          If the shards can't be written.
+     * @throws InterruptedException If interrupted while playing.
+     */
+    public void run(int numberOfGames, long seed) throws IOException, InterruptedException {
+        Files.createDirectories(outputDirectory);
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int worker = 0; worker < threadCount; worker++) {
+                int shard = worker;
+                workers.add(pool.submit(() -> {
+                    playGames(shard, numberOfGames, seed);
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers)
+                worker.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            throw new IllegalStateException("Generating the data failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays every threadCount-th game, starting from a given one, and writes the
+     * new positions to the worker's shard.
+     *
+     * @param shard         Index of the worker, and of its first game.
+     * @param numberOfGames Number of games in the whole run.
+     * @param seed          Seed of the run.
+     */
+    private void playGames(int shard, int numberOfGames, long seed) {
+        BotPlayer[] bots = new BotPlayer[SKILL_LEVELS.length];
+        for (int i = 0; i < bots.length; i++)
+            bots[i] = new BotConfig("Skill " + SKILL_LEVELS[i], SKILL_LEVELS[i], SELF_PLAY_DEPTH,
+                    SELF_PLAY_TABLE_MEGABYTES).createPlayer();
+        // The labels don't depend on the game, the labeler keeps its table from one game to the next
+        BotPlayer labeler = new BotConfig("Label", 100, labelDepth, LABEL_TABLE_MEGABYTES).createPlayer();
+        labeler.newGame(seed + shard);
+        Position position = new Position();
+        int[] moves = new int[Position.COLUMN_COUNT * Position.ROW_COUNT];
+        try (Shard out = new Shard(outputDirectory.resolve("shard-" + shard + ".c4d"))) {
+            for (int game = shard; game < numberOfGames && !seen.isFull(); game += threadCount) {
+                SplittableRandom gameRandom = new SplittableRandom(seed + game);
+                BotPlayer red = bots[gameRandom.nextInt(bots.length)];
+                BotPlayer yellow = bots[gameRandom.nextInt(bots.length)];
+                red.newGame(gameRandom.nextLong());
+                yellow.newGame(gameRandom.nextLong());
+                playGame(red, yellow, labeler, position, moves, out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Plays a single game, labeling the positions seen for the first time.
+     *
+     * @param red      Bot playing first, as player_1.
+     * @param yellow   Bot playing second, as player_2.
+     * @param labeler  Bot searching the labels.
+     * @param position Empty board to play on, emptied again once done.
+     * @param moves    Buffer receiving the columns played.
+     * @param out      Shard receiving the labeled positions.
+     * @throws IOException If the shard can't be written.
+     */
+    private void playGame(BotPlayer red, BotPlayer yellow, BotPlayer labeler, Position position, int[] moves,
+            Shard out) throws IOException {
+        int player = Position.PLAYER_1;
+        while (true) {
+            long key = position.getPieces(player) + position.getMask();
+            if (seen.add(key)) {
+                int bestCol = labeler.chooseMove(position, player);
+                out.write(position, player, bestCol, labeler.getLastMoveScore());
+                positionCount.incrementAndGet();
+            } else {
+                duplicateCount.incrementAndGet();
+            }
+            int col = (player == Position.PLAYER_1 ? red : yellow).chooseMove(position, player);
+            moves[position.getMoveCount()] = col;
+            position.play(col, player);
+            if (position.lastMoveWon(col) || position.isFull() || seen.isFull())
+                break;
+            player = 1 - player;
+        }
+        for (int ply = position.getMoveCount() - 1; ply >= 0; ply--)
+            position.undo(moves[ply]);
+    }
+
+    /**
+     * Gets the number of positions written so far.
+     *
+     * @return the number of positions
+     */
+    public long getPositionCount() {
+        return positionCount.get();
+    }
+
+    /**
+     * Gets the number of positions reached again, and not written, so far.
+     *
+     * @return the number of positions
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * Append-only file of labeled positions, owned by a single worker. Entries
+     * are gathered in a direct buffer and written to the file channel once it is
+     * full.
+     */
+    private static class Shard implements Closeable {
+        private static final int BUFFER_BYTES = 1 << 16;
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        /**
+         * Opens a shard, creating it if needed.
+         *
+         * @param file Path of the shard.
+         * @throws IOException If the file can't be opened.
+         */
+        Shard(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+
+        /**
+         * Appends a labeled position.
+         *
+         * @param position Current state of the board.
+         * @param player   Player about to move.
+         * @param bestCol  Best column found by the search.
+         * @param score    Score of the search, for the player about to move.
+         * @throws IOException If the shard can't be written.
+         */
+        void write(Position position, int player, int bestCol, int score) throws IOException {
+            if (buffer.remaining() < ENTRY_BYTES)
+                flush();
+            buffer.putLong(position.getPieces(Position.PLAYER_1));
+            buffer.putLong(position.getPieces(Position.PLAYER_2));
+            buffer.put((byte) player);
+            buffer.put((byte) bestCol);
+            buffer.putShort((short) score);
+        }
+
+        /**
+         * Writes the buffered entries to the file.
+         *
+         * @throws IOException If the shard can't be written.
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        /**
+         * Writes the remaining entries and closes the shard.
+         *
+         * @throws IOException If the shard can't be written.
+         */
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ConnectFour;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size transposition table for the alpha-beta search.
+ * The table is split in buckets of two entries: the first one keeps the result
+ * of the deepest search made on the positions mapped to the bucket, the second
+ * one is always replaced. Every entry is two longs, the full Zobrist key of the
+ * position and its packed data (score, remaining depth, bound type, best move),
+ * all preallocated when the table is built.
+ * <p>
+ * The table can be shared by searches running on several threads without any
+ * lock: the key is stored XORed with the data, so an entry torn by two threads
+ * writing it at the same time no longer matches its key and reads as a miss.
+ */
+public class TranspositionTable {
+    // Bound types, never 0 so a stored entry is never mistaken for an empty one
+    public static final int EXACT = 1;
+    public static final int LOWER_BOUND = 2;
+    public static final int UPPER_BOUND = 3;
+
+    public static final long NOT_FOUND = 0;
+    public static final long COLLISION = -1; // Not found, the bucket holds other positions
+    public static final int NO_MOVE = 15;
+
+    private static final int BYTES_PER_ENTRY = 2 * Long.BYTES;
+    private static final int ENTRIES_PER_BUCKET = 2;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int bucketMask;
+
+    /**
+     * Constructs a new table using at most the given amount of memory.
+     * The number of buckets is rounded down to a power of two.
+     *
+     * @param megabytes Memory budget of the table, in megabytes.
+     */
+    public TranspositionTable(int megabytes) {
+        long budgetEntries = (long) megabytes * 1024 * 1024 / BYTES_PER_ENTRY;
+        int buckets = Integer.highestOneBit((int) Math.max(1, Math.min(budgetEntries / ENTRIES_PER_BUCKET,
+                Integer.MAX_VALUE / ENTRIES_PER_BUCKET)));
+        bucketMask = buckets - 1;
+        keys = new long[buckets * ENTRIES_PER_BUCKET];
+        data = new long[buckets * ENTRIES_PER_BUCKET];
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param key Zobrist key of the position.
+     * @return the packed data of the entry, or {@link #NOT_FOUND} if the bucket is
+     *         empty, or {@link #COLLISION} if it holds other positions.
+     */
+    public long probe(long key) {
+        int slot = bucketOf(key);
+        long firstEntry = data[slot];
+        if ((keys[slot] ^ firstEntry) == key && firstEntry != NOT_FOUND)
+            return firstEntry;
+        long secondEntry = data[slot + 1];
+        if ((keys[slot + 1] ^ secondEntry) == key && secondEntry != NOT_FOUND)
+            return secondEntry;
+        if (firstEntry != NOT_FOUND || secondEntry != NOT_FOUND)
+            return COLLISION;
+        return NOT_FOUND;
+    }
+
+    /**
+     * Stores the result of a search.
+     * The depth-preferred entry is replaced if it holds the same position or if
+     * the new search is at least as deep, otherwise the result goes to the
+     * always-replace entry.
+     *
+     * @param key   Zobrist key of the position.
+     * @param score Score of the position.
+     * @param depth Remaining depth the position was searched to.
+     * @param bound {@link #EXACT}, {@link #LOWER_BOUND} or {@link #UPPER_BOUND}.
+     * @param move  Best column found, or {@link #NO_MOVE}.
+     */
+    public void store(long key, int score, int depth, int bound, int move) {
+        int slot = bucketOf(key);
+        long firstEntry = data[slot];
+        if ((keys[slot] ^ firstEntry) != key && firstEntry != NOT_FOUND && depth < depth(firstEntry))
+            slot++;
+        long entry = (score & 0xFFFFL) | ((long) (depth & 0xFF) << 16) | ((long) bound << 24) | ((long) move << 26);
+        data[slot] = entry;
+        keys[slot] = key ^ entry;
+    }
+
+    /**
+     * Empties the table, keeping its memory.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, NOT_FOUND);
+    }
+
+    /**
+     * Unpacks the score of an entry.
+     *
+     * @param entry Packed data returned by {@link #probe(long)}.
+     * @return the score of the entry.
+     */
+    public static int score(long entry) {
+        return (short) entry;
+    }
+
+    /**
+     * Unpacks the search depth of an entry.
+     *
+     * @param entry Packed data returned by {@link #probe(long)}.
+     * @return the remaining depth the position was searched to.
+     */
+    public static int depth(long entry) {
+        return (int) (entry >>> 16) & 0xFF;
+    }
+
+    /**
+     * Unpacks the bound type of an entry.
+     *
+     * @param entry Packed data returned by {@link #probe(long)}.
+     * @return the bound type of the score.
+     */
+    public static int bound(long entry) {
+        return (int) (entry >>> 24) & 0x3;
+    }
+
+    /**
+     * Unpacks the best move of an entry.
+     *
+     * @param entry Packed data returned by {@link #probe(long)}.
+     * @return the best column found, or {@link #NO_MOVE}.
+     */
+    public static int move(long entry) {
+        return (int) (entry >>> 26) & 0xF;
+    }
+
+    /**
+     * Maps a key to the first entry of its bucket.
+     *
+     * @param key Zobrist key of a position.
+     * @return index of the bucket's depth-preferred entry.
+     */
+    private int bucketOf(long key) {
+        return ((int) (key ^ (key >>> 32)) & bucketMask) * ENTRIES_PER_BUCKET;
+    }
+}
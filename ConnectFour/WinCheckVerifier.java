@@ -0,0 +1,137 @@
+package ConnectFour;
+
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+/**
+ * Differential check of the incremental win detection against the full board
+ * scan, over seeded random games. After every move:
+ * <ul>
+ * <li>{@link Position#lastMoveWon(int)} must agree with
+ * {@link Position#hasWon(int)} for the player who moved, on boards of one and
+ * of several words, and the other player must not have won</li>
+ * <li>the outcome of {@link ConnectFour}'s last move check must be the one of
+ * its full board check, checkWinner</li>
+ * </ul>
+ * The first disagreement is printed with the columns played so far, and the
+ * process exits with status 1.
+ * <p>
+ * Usage: java ConnectFour.WinCheckVerifier [games] [seed]
+ */
+public class WinCheckVerifier {
+    private static final int DEFAULT_GAMES = 2_000;
+    // The standard board, a full 64 bit word, several words and small boards
+    private static final Geometry[] GEOMETRIES = { Geometry.STANDARD, new Geometry(7, 7, 4),
+            new Geometry(8, 7, 5), new Geometry(9, 7, 4), new Geometry(12, 10, 6), new Geometry(4, 4, 3),
+            new Geometry(5, 1, 2) };
+
+    /**
+     * Plays the random games and checks every move.
+     *
+     * @param args Optionally the number of games on every board, and the seed.
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+        SplittableRandom random = new SplittableRandom(seed);
+        long moves = 0;
+        for (Geometry geometry : GEOMETRIES) {
+            Position position = new Position(geometry);
+            int[] columns = new int[geometry.getCellCount()];
+            for (int game = 0; game < games; game++)
+                moves += checkPosition(position, columns, random);
+        }
+        ConnectFour connectFour = new ConnectFour();
+        int[] columns = new int[Geometry.STANDARD.getCellCount()];
+        for (int game = 0; game < games; game++)
+            moves += checkConnectFour(connectFour, columns, random);
+        System.out.println("Seed " + seed + ": " + moves + " moves checked in " + games
+                + " games on every board, no disagreement");
+    }
+
+    /**
+     * Plays a random game on a board, checking the win detection of every move.
+     *
+     * @param position Empty board to play on, emptied again once done.
+     * @param columns  Buffer receiving the columns played.
+     * @param random   Source of the moves.
+     * @return the number of moves played
+     */
+    private static int checkPosition(Position position, int[] columns, SplittableRandom random) {
+        int player = Position.PLAYER_1;
+        int ply = 0;
+        while (true) {
+            int col = randomColumn(position, random);
+            position.play(col, player);
+            columns[ply++] = col;
+            boolean lastMoveWon = position.lastMoveWon(col);
+            if (lastMoveWon != position.hasWon(player) || position.hasWon(1 - player))
+                fail(position.getGeometry() + ": lastMoveWon " + lastMoveWon + ", hasWon " + position.hasWon(player)
+                        + " for the player who moved, " + position.hasWon(1 - player) + " for the other one",
+                        columns, ply);
+            if (lastMoveWon || position.isFull())
+                break;
+            player = 1 - player;
+        }
+        for (int i = ply - 1; i >= 0; i--)
+            position.undo(columns[i]);
+        return ply;
+    }
+
+    /**
+     * Plays a random game of {@link ConnectFour}, checking the outcome of every
+     * move.
+     *
+     * @param connectFour Game to play, reset first.
+     * @param columns     Buffer receiving the columns played.
+     * @param random      Source of the moves.
+     * @return the number of moves played
+     */
+    private static int checkConnectFour(ConnectFour connectFour, int[] columns, SplittableRandom random) {
+        connectFour.resetGame();
+        Position position = new Position();
+        int ply = 0;
+        while (true) {
+            int col = randomColumn(position, random);
+            position.play(col, ply % 2 == 0 ? Position.PLAYER_1 : Position.PLAYER_2);
+            connectFour.putPiece(col);
+            columns[ply++] = col;
+            String lastMove = connectFour.checkLastMove();
+            String fullBoard = connectFour.checkWinner();
+            if (!Objects.equals(lastMove, fullBoard))
+                fail("ConnectFour: checkLastMove " + lastMove + ", checkWinner " + fullBoard, columns, ply);
+            if (fullBoard != null)
+                return ply;
+        }
+    }
+
+    /**
+     * Picks a column that isn't full.
+     *
+     * @param position Board with at least one column that isn't full.
+     * @param random   Source of the moves.
+     * @return the column
+     */
+    private static int randomColumn(Position position, SplittableRandom random) {
+        int col;
+        do {
+            col = random.nextInt(position.getColumnCount());
+        } while (!position.canPlay(col));
+        return col;
+    }
+
+    /**
+     * Reports a disagreement and exits with status 1.
+     *
+     * @param message What disagreed.
+     * @param columns Columns played since the empty board.
+     * @param ply     Number of columns played.
+     */
+    private static void fail(String message, int[] columns, int ply) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < ply; i++)
+            sb.append(i == 0 ? "" : " ").append(columns[i]);
+        System.err.println(message + ", after columns " + sb);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,253 @@
+package ConnectFour;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks of the engine's hot paths, over the corpus of
+ * {@link EngineBenchmark}: the win checks and {@link Position#dropsToRow(int)}
+ * on every drop of a phase, the minimax search at a fixed depth with the
+ * number of nodes per second, the time to complete an iterative deepening
+ * search, and full headless games between two Bots. Allocation rates come from
+ * JMH's gc profiler.
+ * <p>
+ * Usage, from the directory of pom.xml:
+ *
+ * <pre>
+ * mvn -B -Pjmh package
+ * java -jar target/benchmarks.jar -prof gc -rf json -rff jmh-results.json
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EngineJmhBenchmark {
+
+    /**
+     * The positions of a phase of the corpus.
+     */
+    @State(Scope.Thread)
+    public static class Corpus {
+        @Param({ "opening", "midgame", "endgame" })
+        public String phase;
+
+        private Position[] positions;
+
+        /**
+         * Builds the positions of the phase.
+         */
+        @Setup
+        public void setUp() {
+            positions = EngineBenchmark.corpus(phase);
+        }
+    }
+
+    /**
+     * A search and its transposition table, emptied before every search so that
+     * all of them search the same tree. Searches take milliseconds, long enough
+     * for a setup at every invocation.
+     */
+    @State(Scope.Thread)
+    public static class Search {
+        @Param({ "" + EngineBenchmark.SEARCH_DEPTH })
+        public int depth;
+
+        private TranspositionTable table;
+        private AlphaBetaSearch searcher;
+
+        /**
+         * Creates the search.
+         */
+        @Setup
+        public void setUp() {
+            table = new TranspositionTable(EngineBenchmark.TABLE_MEGABYTES);
+            searcher = new AlphaBetaSearch(table, new MoveOrdering(true, false, false, true), Evaluation.DEFAULT);
+        }
+
+        /**
+         * Empties the table, outside of the measured time.
+         */
+        @Setup(Level.Invocation)
+        public void clear() {
+            table.clear();
+            searcher.newSearch();
+        }
+    }
+
+    /**
+     * Nodes searched, reported by JMH as nodes per second next to the searches
+     * per second, in throughput mode only.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes {
+        public long nodes;
+
+        /**
+         * Starts every iteration from 0.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+    }
+
+    /**
+     * Two Bots searching to a shallow depth.
+     */
+    @State(Scope.Thread)
+    public static class Bots {
+        private BotPlayer redBot;
+        private BotPlayer yellowBot;
+        private final Position position = new Position();
+        private final int[] moves = new int[Position.COLUMN_COUNT * Position.ROW_COUNT];
+        private int game;
+
+        /**
+         * Creates the Bots.
+         */
+        @Setup
+        public void setUp() {
+            redBot = new BotConfig("Red", 100, EngineBenchmark.GAME_DEPTH, EngineBenchmark.TABLE_MEGABYTES)
+                    .createPlayer();
+            yellowBot = new BotConfig("Yellow", 100, EngineBenchmark.GAME_DEPTH, EngineBenchmark.TABLE_MEGABYTES)
+                    .createPlayer();
+        }
+    }
+
+    /**
+     * Checks the full board for a winner after every drop of the phase.
+     *
+     * @param corpus    Positions of the phase.
+     * @param blackhole Keeps the results alive.
+     */
+    @Benchmark
+    public void checkWinner(Corpus corpus, Blackhole blackhole) {
+        for (Position position : corpus.positions) {
+            for (int col = 0; col < Position.COLUMN_COUNT; col++) {
+                if (position.canPlay(col)) {
+                    position.play(col, position.getMoveCount() % 2);
+                    blackhole.consume(position.hasWon(Position.PLAYER_1) || position.hasWon(Position.PLAYER_2));
+                    position.undo(col);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the lines through the last piece after every drop of the phase.
+     *
+     * @param corpus    Positions of the phase.
+     * @param blackhole Keeps the results alive.
+     */
+    @Benchmark
+    public void lastMoveWon(Corpus corpus, Blackhole blackhole) {
+        for (Position position : corpus.positions) {
+            for (int col = 0; col < Position.COLUMN_COUNT; col++) {
+                if (position.canPlay(col)) {
+                    position.play(col, position.getMoveCount() % 2);
+                    blackhole.consume(position.lastMoveWon(col));
+                    position.undo(col);
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks up the landing row of every column of the phase's positions.
+     *
+     * @param corpus    Positions of the phase.
+     * @param blackhole Keeps the results alive.
+     */
+    @Benchmark
+    public void dropsToRow(Corpus corpus, Blackhole blackhole) {
+        for (Position position : corpus.positions) {
+            for (int col = 0; col < Position.COLUMN_COUNT; col++)
+                blackhole.consume(position.dropsToRow(col));
+        }
+    }
+
+    /**
+     * Searches every column of a position at a fixed depth, one position of the
+     * phase after the other.
+     *
+     * @param corpus Positions of the phase.
+     * @param search The search, with an empty table.
+     * @param nodes  Receives the number of nodes searched.
+     * @return the sum of the scores
+     */
+    @Benchmark
+    public int search(Corpus corpus, Search search, Nodes nodes) {
+        search.searcher.setLimits(search.depth, Long.MAX_VALUE);
+        int total = 0;
+        for (Position position : corpus.positions)
+            total += EngineBenchmark.searchRoot(search.searcher, position);
+        nodes.nodes += search.searcher.getNodeCount();
+        return total;
+    }
+
+    /**
+     * Searches every position of the phase one depth at a time, up to the
+     * search's depth, like the Bots' iterative deepening.
+     *
+     * @param corpus Positions of the phase.
+     * @param search The search, with an empty table.
+     * @return the sum of the scores
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int timeToDepth(Corpus corpus, Search search) {
+        int total = 0;
+        for (Position position : corpus.positions) {
+            for (int depth = 0; depth <= search.depth; depth++) {
+                search.searcher.setLimits(depth, Long.MAX_VALUE);
+                total += EngineBenchmark.searchRoot(search.searcher, position);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Plays a full game between the two Bots, a different seed every game.
+     *
+     * @param bots The Bots.
+     * @return the number of moves of the game
+     */
+    @Benchmark
+    public int fullGame(Bots bots) {
+        bots.redBot.newGame(2 * bots.game);
+        bots.yellowBot.newGame(2 * bots.game + 1);
+        bots.game++;
+        Position position = bots.position;
+        int player = Position.PLAYER_1;
+        while (true) {
+            int col = (player == Position.PLAYER_1 ? bots.redBot : bots.yellowBot).chooseMove(position, player);
+            bots.moves[position.getMoveCount()] = col;
+            position.play(col, player);
+            if (position.lastMoveWon(col) || position.isFull())
+                break;
+            player = 1 - player;
+        }
+        int moveCount = position.getMoveCount();
+        for (int ply = moveCount - 1; ply >= 0; ply--)
+            position.undo(bots.moves[ply]);
+        return moveCount;
+    }
+}